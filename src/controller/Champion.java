@@ -0,0 +1,42 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class Champion.java
+ */
+
+package controller;
+
+import robocode.BattleEndedEvent;
+
+/**
+ * <p>
+ * A champion of the hall of fame of the genetic algorithm, used as an opponent of the new individuals.
+ * It fights exactly like Darwini, with the perceptron written in its own data directory (Champion.data) by the
+ * evaluator before the battle: the class is compiled once, only the perceptron changes from a champion to another.
+ * </p>
+ * <p>
+ * It does not write the counters of the battle, they are the ones of the Darwini tested.
+ * </p>
+ *
+ * @see model.evaluation.BattleConfiguration#withChampion(model.perceptron.NeuralNetwork)
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class Champion extends Darwini {
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Nothing is written at the end of the battle.
+		 * </p>
+		 *
+		 * @param event the end of the battle
+		 */
+		@Override
+		public void onBattleEnded(BattleEndedEvent event) {
+		}
+
+}
@@ -9,6 +9,7 @@
 package controller;
 
 import model.acquisition.AcquisitionData;
+import model.genetic.Score;
 import model.perceptron.OutputData;
 import model.perceptron.NeuralNetwork;
 
@@ -68,6 +69,48 @@ public class Darwini extends InitialRobot {
 		 */
 		public static int nbHitWall = 0;
 
+		/**
+		 * <p>
+		 *     The turns Darwini has been alive, where its behaviour is measured
+		 * </p>
+		 */
+		public static int nbTurns = 0;
+
+		/**
+		 * <p>
+		 *     The turns spent in every cell of the battlefield, row after row from the bottom left corner
+		 * </p>
+		 */
+		public static int[] nbTurnsInCells = new int[Score.GRID * Score.GRID];
+
+		/**
+		 * <p>
+		 *     The total of bullets fired
+		 * </p>
+		 */
+		public static int nbFired = 0;
+
+		/**
+		 * <p>
+		 *     The sum over the turns of the distance to the last enemy scanned
+		 * </p>
+		 */
+		public static double sumDistance = 0;
+
+		/**
+		 * <p>
+		 *     The sum over the turns of the speed of Darwini
+		 * </p>
+		 */
+		public static double sumSpeed = 0;
+
+		/**
+		 * <p>
+		 *     The distance to the last enemy scanned in the round, -1 before the first scan
+		 * </p>
+		 */
+		private double lastDistance = -1;
+
 		/**
 		 * The NeuralNetwork xml file
 		 *
@@ -80,6 +123,26 @@ public class Darwini extends InitialRobot {
 		 * @see controller.Darwini#run()
 		 */
 		public static final String PERCEPTRON_FILE = "Perceptron.xml";
+
+		/**
+		 * The NeuralNetwork binary file
+		 *
+		 * <p>
+		 * The file written by the genetic algorithm before every battle, in the data directory of the robot tested.
+		 * It is preferred to the XML file when it is not older, because it is read without any parsing.
+		 * </p>
+		 *
+		 * @see NeuralNetwork#writeBinary(File)
+		 * @see controller.Darwini#loadPerceptron()
+		 */
+		public static final String PERCEPTRON_BINARY = "Perceptron.bin";
+
+		/**
+		 * <p>
+		 *     The system property asking the robot to write its counters in files at the end of the battle.
+		 * </p>
+		 */
+		public static final String COUNTERS_PROPERTY = "darwini.counters";
 		
 		/**
 		 * The object "AcquisitionData"
@@ -111,6 +174,18 @@ public class Darwini extends InitialRobot {
 		 * @see controller.Darwini#onScannedRobot(ScannedRobotEvent)
 		 */
 		private NeuralNetwork perceptron;
+
+		/**
+		 * The perceptron loaded for the battle
+		 *
+		 * <p>
+		 * A new robot is created for every round, but Robocode loads the robot classes again for every battle:
+		 * the perceptron is read once per battle and shared by the rounds.
+		 * </p>
+		 *
+		 * @see controller.Darwini#loadPerceptron()
+		 */
+		private static NeuralNetwork battlePerceptron;
 		
 		/**
 		 * The OutputData "decisions"
@@ -143,12 +218,42 @@ public class Darwini extends InitialRobot {
 		 */
 		@Override
 		public void run() {
-			perceptron = new NeuralNetwork( getDataFile(PERCEPTRON_FILE) ); // gets the perceptron given in the population directory (was in "out/...") directory before)
+			perceptron = loadPerceptron();
             acquisitionData = new AcquisitionData(this);
 			// MUST be called after because the initial strategy can have an infinite loop.
 			super.run();
 		}
 		
+		/**
+		 * Load the perceptron of the battle
+		 *
+		 * <p>
+		 * The binary file written by the genetic algorithm is read if it is not older than the XML file,
+		 * otherwise the XML file is parsed (a perceptron installed by hand, or from the supervised process).
+		 * </p>
+		 *
+		 * @return the perceptron of the battle
+		 *
+		 * @see controller.Darwini#PERCEPTRON_BINARY
+		 * @see controller.Darwini#PERCEPTRON_FILE
+		 */
+		private NeuralNetwork loadPerceptron() {
+			if (battlePerceptron == null) {
+				File binary = getDataFile(PERCEPTRON_BINARY);
+				File xml = getDataFile(PERCEPTRON_FILE);
+				if (binary.exists() && binary.lastModified() >= xml.lastModified())
+					try {
+						battlePerceptron = NeuralNetwork.readBinary(binary);
+					} catch (IOException | RuntimeException e) {
+						out.println(binary.getAbsolutePath() + " cannot be read, the XML perceptron is used (" + e + ")");
+					}
+
+				if (battlePerceptron == null)
+					battlePerceptron = new NeuralNetwork(xml);
+			}
+			return battlePerceptron;
+		}
+
 	/**
 		 * The reaction of Darwini when it has scanned an enemy
 		 * 
@@ -166,13 +271,11 @@ public class Darwini extends InitialRobot {
 		@Override
 		public void onScannedRobot(ScannedRobotEvent e) {
 			decisions = perceptron.train( acquisitionData.acquisition(e));
+			lastDistance = e.getDistance();
 
-<<<<<<< HEAD
-=======
-			System.out.println(decisions.getShoot() + " " + 2 * Math.PI * sigmoid(decisions.getTurnRight()) + " " + decisions.getTurnLeft() + " " + decisions.getTurnRadarRight() + " " + decisions.getTurnRadarLeft() + " " + decisions.getTurnGunRight() + " " + decisions.getTurnGunLeft() + " " + decisions.getMoveAhead());
->>>>>>> origin/Martin
 			if (decisions.getShoot() > 0) {
-				fire(3);
+				if (fireBullet(3) != null)
+					nbFired++;
 			}
 
 			if (decisions.getTurnRight() > 0)
@@ -220,40 +323,26 @@ public class Darwini extends InitialRobot {
 				ahead(10 * sigmoid(decisions.getMoveAhead()));
 		}
 
-<<<<<<< HEAD
-	@Override
-	public void onBulletHit(BulletHitEvent e) {
-		super.onBulletHit(e);
-		nbHits++;
-	}
-
-	@Override
-	public void onBulletMissed(BulletMissedEvent e) {
-		super.onBulletMissed(e);
-		nbMissed++;
-	}
-
-	@Override
-	public void onBattleEnded(BattleEndedEvent event) {
-		super.onBattleEnded(event);
-		System.out.println("nbShot: "+nbHits+"//nbMissed: "+nbMissed);
-
-		try(FileWriter fw = new FileWriter("accuracy.txt");
-			BufferedWriter bw = new BufferedWriter(fw);
-			PrintWriter out = new PrintWriter(bw))
-		{
-			out.println("accuracy"+"\t"+nbHits+" "+nbMissed+"\n");
-			if (bw != null)
-				bw.close();
-
-			if (fw != null)
-				fw.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+		/**
+		 * <p>
+		 *     Measure the behaviour of Darwini every turn: its cell, its distance to the last enemy scanned and its speed.
+		 * </p>
+		 *
+		 * @param e the status of Darwini in the turn
+		 */
+		@Override
+		public void onStatus(StatusEvent e){
+			super.onStatus(e);
+			RobotStatus status = e.getStatus();
+			nbTurns++;
+			int column = Math.min(Score.GRID - 1, Math.max(0, (int) (Score.GRID * status.getX() / getBattleFieldWidth())));
+			int row = Math.min(Score.GRID - 1, Math.max(0, (int) (Score.GRID * status.getY() / getBattleFieldHeight())));
+			nbTurnsInCells[row * Score.GRID + column]++;
+			sumSpeed += Math.abs(status.getVelocity());
+			if (lastDistance >= 0)
+				sumDistance += lastDistance;
 		}
-	}
 
-=======
 		@Override
 		public void onHitByBullet(HitByBulletEvent e){
 			super.onHitByBullet(e);
@@ -278,36 +367,47 @@ public class Darwini extends InitialRobot {
 			nbMissed++;
 		}
 
+		/**
+		 * <p>
+		 *     Write the counters of the battle, for the Robocode process which cannot give them to the genetic algorithm.
+		 *     The Robocode engine counts them itself, so nothing is written without -Ddarwini.counters=true.
+		 * </p>
+		 *
+		 * @param event the end of the battle
+		 */
 		@Override
 		public void onBattleEnded(BattleEndedEvent event){
 			super.onBattleEnded(event);
+			try {
+				if (!Boolean.getBoolean(COUNTERS_PROPERTY))
+					return;
+			} catch (SecurityException e) {
+				// The robot is not allowed to read the properties outside of the genetic algorithm
+				return;
+			}
 
-			try(FileWriter fw = new FileWriter("accuracy.txt");
-				BufferedWriter bw = new BufferedWriter(fw);
-				PrintWriter out = new PrintWriter(bw);){
+			try(PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter("accuracy.txt")))){
 				out.println("accuracy"+"\t"+nbHits+" "+nbMissed+"\n");
-				if(bw != null)
-					bw.close();
-				if(fw != null)
-					fw.close();
-
 			} catch(IOException e){
-					e.printStackTrace();
+				e.printStackTrace();
 			}
 
-			try(FileWriter fw = new FileWriter("dodge.txt");
-				BufferedWriter bw = new BufferedWriter(fw);
-				PrintWriter out = new PrintWriter(bw);){
+			try(PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter("dodge.txt")))){
 				out.println("dodge"+"\t"+nbHitWall+" "+nbHitByBullet+"\n");
-				if(bw != null)
-					bw.close();
-				if(fw != null)
-					fw.close();
+			} catch(IOException e){
+				e.printStackTrace();
+			}
+
+			try(PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter("behaviour.txt")))){
+				StringBuilder cells = new StringBuilder();
+				for (int turns : nbTurnsInCells)
+					cells.append(turns).append(" ");
+				out.println("behaviour"+"\t"+nbTurns+" "+cells+nbFired+" "+Math.round(sumDistance)+" "+Math.round(sumSpeed)+"\n");
 			} catch(IOException e){
 				e.printStackTrace();
 			}
 		}
->>>>>>> origin/Martin
+
 		/**
 		 * <p>
 		 *     Apply the sigmoid on the specified value.
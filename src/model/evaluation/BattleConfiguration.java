@@ -0,0 +1,393 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class BattleConfiguration.java
+ */
+
+package model.evaluation;
+
+import model.perceptron.NeuralNetwork;
+
+import robocode.control.BattleSpecification;
+import robocode.control.BattlefieldSpecification;
+import robocode.control.RobotSpecification;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Properties;
+
+/**
+ * <p>
+ *     The settings of a battle, loaded from a Robocode ".battle" file (like data/test.battle).
+ *     It is used by the external Robocode process as a file, and by the embedded Robocode engine
+ *     as a BattleSpecification.
+ * </p>
+ *
+ * <p>
+ *     A battle against a champion of the hall of fame carries the champion's perceptron in its properties, so it goes
+ *     with the battle to every evaluator (battle file, remote worker). The evaluator gives it to the Champion robot.
+ * </p>
+ *
+ * @see Evaluator
+ * @see controller.Champion
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class BattleConfiguration {
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     The robot fighting with the perceptron of a champion.
+		 * </p>
+		 */
+		public static final String CHAMPION_ROBOT = "controller.Champion*";
+
+		/**
+		 * <p>
+		 *     The property holding the binary perceptron of the champion, in Base64. Robocode ignores it.
+		 * </p>
+		 */
+		private static final String CHAMPION_PROPERTY = "darwini.champion";
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The ".battle" file this configuration comes from.
+		 * </p>
+		 */
+		private File file;
+
+		/**
+		 * <p>
+		 *     All the properties of the battle file, kept to write it again.
+		 * </p>
+		 */
+		private Properties properties;
+
+		/**
+		 * <p>
+		 *     The number of rounds of the battle.
+		 * </p>
+		 */
+		private int numRounds;
+
+		/**
+		 * <p>
+		 *     The width of the battlefield.
+		 * </p>
+		 */
+		private int width;
+
+		/**
+		 * <p>
+		 *     The height of the battlefield.
+		 * </p>
+		 */
+		private int height;
+
+		/**
+		 * <p>
+		 *     The gun cooling rate of the robots.
+		 * </p>
+		 */
+		private double gunCoolingRate;
+
+		/**
+		 * <p>
+		 *     The number of turns without any damage before the robots start losing energy.
+		 * </p>
+		 */
+		private long inactivityTime;
+
+		/**
+		 * <p>
+		 *     The size of the border where the sentry robots stay.
+		 * </p>
+		 */
+		private int sentryBorderSize;
+
+		/**
+		 * <p>
+		 *     If true, the robots do not know the names of their enemies.
+		 * </p>
+		 */
+		private boolean hideEnemyNames;
+
+		/**
+		 * <p>
+		 *     The robots of the battle, separated by commas (ex: "controller.Darwini*,sample.Crazy").
+		 * </p>
+		 */
+		private String selectedRobots;
+
+		/**
+		 * <p>
+		 *     The index of the first round, when this battle is a part of a longer one.
+		 *     It does not change the battle, but the scores of two different parts must not be mixed up.
+		 * </p>
+		 */
+		private int firstRound;
+
+		/**
+		 * <p>
+		 *     The perceptron of the champion fought, null if the battle is not against a champion.
+		 * </p>
+		 */
+		private NeuralNetwork champion;
+
+		/**
+		 * <p>
+		 *     The hash of the champion, which makes the key of the battle.
+		 * </p>
+		 */
+		private String championHash;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * <p>
+		 *     Load a battle configuration from a Robocode ".battle" file.
+		 * </p>
+		 *
+		 * @param file the battle file
+		 *
+		 * @throws IOException if the file cannot be read
+		 */
+		public BattleConfiguration(File file) throws IOException {
+			this(load(file));
+			this.file = file;
+		}
+
+		/**
+		 * <p>
+		 *     Create a battle configuration from the properties of a ".battle" file, for example when it is received
+		 *     by a remote worker. It has no file until it is written.
+		 * </p>
+		 *
+		 * @param properties the properties of the battle
+		 */
+		public BattleConfiguration(Properties properties) {
+			this.properties = (Properties) properties.clone();
+			numRounds = Integer.parseInt(properties.getProperty("robocode.battle.numRounds", "10"));
+			width = Integer.parseInt(properties.getProperty("robocode.battleField.width", "800"));
+			height = Integer.parseInt(properties.getProperty("robocode.battleField.height", "600"));
+			gunCoolingRate = Double.parseDouble(properties.getProperty("robocode.battle.gunCoolingRate", "0.1"));
+			inactivityTime = Long.parseLong(properties.getProperty("robocode.battle.rules.inactivityTime", "450"));
+			sentryBorderSize = Integer.parseInt(properties.getProperty("robocode.battle.sentryBorderSize", "100"));
+			hideEnemyNames = Boolean.parseBoolean(properties.getProperty("robocode.battle.hideEnemyNames", "false"));
+			selectedRobots = properties.getProperty("robocode.battle.selectedRobots");
+
+			String data = properties.getProperty(CHAMPION_PROPERTY);
+			if (data != null) {
+				champion = NeuralNetwork.fromBinary(ByteBuffer.wrap(Base64.getDecoder().decode(data)));
+				championHash = champion.getHash();
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Copy a battle configuration.
+		 * </p>
+		 *
+		 * @param battle the battle to copy
+		 */
+		private BattleConfiguration(BattleConfiguration battle) {
+			file = battle.file;
+			properties = (Properties) battle.properties.clone();
+			numRounds = battle.numRounds;
+			width = battle.width;
+			height = battle.height;
+			gunCoolingRate = battle.gunCoolingRate;
+			inactivityTime = battle.inactivityTime;
+			sentryBorderSize = battle.sentryBorderSize;
+			hideEnemyNames = battle.hideEnemyNames;
+			selectedRobots = battle.selectedRobots;
+			firstRound = battle.firstRound;
+			champion = battle.champion;
+			championHash = battle.championHash;
+		}
+
+
+	/*	----- ACCESSORS -----	*/
+
+		/**
+		 * @return the ".battle" file of this configuration
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return a copy of the properties of the battle, as written in its ".battle" file
+		 */
+		public Properties getProperties() {
+			return (Properties) properties.clone();
+		}
+
+		/**
+		 * @return the number of rounds of the battle
+		 */
+		public int getNumRounds() {
+			return numRounds;
+		}
+
+		/**
+		 * @return the robots of the battle, separated by commas
+		 */
+		public String getSelectedRobots() {
+			return selectedRobots;
+		}
+
+		/**
+		 * @return the perceptron of the champion fought, null if the battle is not against a champion
+		 */
+		public NeuralNetwork getChampion() {
+			return champion;
+		}
+
+		/**
+		 * @return the hash of the champion fought, null if the battle is not against a champion
+		 */
+		public String getChampionHash() {
+			return championHash;
+		}
+
+		/**
+		 * <p>
+		 *     Return a short description of the battle: two battles with the same key give comparable scores.
+		 * </p>
+		 *
+		 * @return the key of the battle (without space)
+		 */
+		public String getKey() {
+			return (selectedRobots + "/" + numRounds + "/" + width + "x" + height + "/" + gunCoolingRate + "/" + inactivityTime
+					+ "/" + sentryBorderSize + "/" + hideEnemyNames + (firstRound == 0 ? "" : "/from" + firstRound)
+					+ (championHash == null ? "" : "/" + championHash)).replace(' ', '_');
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Return a part of this battle: the same battle with fewer rounds, starting at a given round.
+		 * </p>
+		 *
+		 * @param firstRound the index of the first round of the part
+		 * @param rounds the number of rounds of the part
+		 *
+		 * @return a new battle configuration
+		 */
+		public BattleConfiguration withRounds(int firstRound, int rounds) {
+			BattleConfiguration battle = new BattleConfiguration(this);
+			battle.firstRound = firstRound;
+			battle.numRounds = rounds;
+			battle.properties.setProperty("robocode.battle.numRounds", String.valueOf(rounds));
+			return battle;
+		}
+
+		/**
+		 * <p>
+		 *     Return the same battle against other opponents. The first selected robot is the one tested, it is kept.
+		 * </p>
+		 *
+		 * @param opponents the opponents separated by commas (ex: "sample.SpinBot")
+		 *
+		 * @return a new battle configuration
+		 */
+		public BattleConfiguration withOpponents(String opponents) {
+			BattleConfiguration battle = new BattleConfiguration(this);
+			battle.selectedRobots = selectedRobots.split(",")[0] + "," + opponents;
+			battle.properties.setProperty("robocode.battle.selectedRobots", battle.selectedRobots);
+			battle.properties.remove(CHAMPION_PROPERTY);
+			battle.champion = null;
+			battle.championHash = null;
+			return battle;
+		}
+
+		/**
+		 * <p>
+		 *     Return the same battle against a champion: the Champion robot fights with the perceptron of the champion.
+		 * </p>
+		 *
+		 * @param champion the perceptron of the champion
+		 *
+		 * @return a new battle configuration
+		 */
+		public BattleConfiguration withChampion(NeuralNetwork champion) {
+			BattleConfiguration battle = withOpponents(CHAMPION_ROBOT);
+			battle.properties.setProperty(CHAMPION_PROPERTY, Base64.getEncoder().encodeToString(champion.toBinary()));
+			battle.champion = champion;
+			battle.championHash = champion.getHash();
+			return battle;
+		}
+
+		/**
+		 * @return the opponents of the tested robot, separated by commas
+		 */
+		public String getOpponents() {
+			return selectedRobots.substring(selectedRobots.indexOf(',') + 1);
+		}
+
+		/**
+		 * <p>
+		 *     Read the properties of a Robocode ".battle" file.
+		 * </p>
+		 *
+		 * @param file the battle file
+		 *
+		 * @return the properties of the battle
+		 *
+		 * @throws IOException if the file cannot be read
+		 */
+		private static Properties load(File file) throws IOException {
+			Properties properties = new Properties();
+			try (InputStream is = new FileInputStream(file)) {
+				properties.load(is);
+			}
+			return properties;
+		}
+
+		/**
+		 * <p>
+		 *     Write this configuration as a Robocode ".battle" file.
+		 * </p>
+		 *
+		 * @param file the battle file to write
+		 *
+		 * @throws IOException if the file cannot be written
+		 */
+		public void write(File file) throws IOException {
+			try (OutputStream os = new FileOutputStream(file)) {
+				properties.store(os, "Battle Properties");
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Create the Robocode battle specification of this configuration.
+		 * </p>
+		 *
+		 * @param robots the robots found in the Robocode repository for the selected robots
+		 *
+		 * @return the battle specification to give to the Robocode engine
+		 */
+		public BattleSpecification toSpecification(RobotSpecification[] robots) {
+			return new BattleSpecification(new BattlefieldSpecification(width, height), numRounds, inactivityTime,
+					gunCoolingRate, sentryBorderSize, hideEnemyNames, robots);
+		}
+
+}
@@ -0,0 +1,424 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class BattleRecorder.java
+ */
+
+package model.evaluation;
+
+import model.genetic.Score;
+
+import robocode.BattleResults;
+import robocode.control.RobocodeEngine;
+import robocode.control.events.BattleAdaptor;
+import robocode.control.events.BattleCompletedEvent;
+import robocode.control.events.BattleErrorEvent;
+import robocode.control.events.BattleStartedEvent;
+import robocode.control.events.RoundEndedEvent;
+import robocode.control.events.RoundStartedEvent;
+import robocode.control.events.TurnEndedEvent;
+import robocode.control.snapshot.BulletState;
+import robocode.control.snapshot.IBulletSnapshot;
+import robocode.control.snapshot.IRobotSnapshot;
+import robocode.control.snapshot.IScoreSnapshot;
+import robocode.control.snapshot.ITurnSnapshot;
+import robocode.control.snapshot.RobotState;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ *     A battle listener of the Robocode engine which builds the score of the tested robot in memory.
+ *     It keeps the results of the battle, the weighted score of every round, and counts from the turns what the robot
+ *     used to write in files: its bullets which hit or missed, the walls it hit and the bullets which hit it.
+ *     It measures its behaviour as well: where it goes, how often it fires, how far it stays from its enemies
+ *     and how fast it moves.
+ * </p>
+ * <p>
+ *     During a race, the weighted score of every round is also given to the race, and the battle is aborted
+ *     as soon as the race is lost. The score is then built from the scores of the last round.
+ * </p>
+ *
+ * @see EngineEvaluator
+ * @see Score
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class BattleRecorder extends BattleAdaptor {
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The engine running the battles, to abort a lost race.
+		 * </p>
+		 */
+		private RobocodeEngine engine;
+
+		/**
+		 * <p>
+		 *     The name of the tested robot (or a part of it).
+		 * </p>
+		 */
+		private String robotName;
+
+		/**
+		 * <p>
+		 *     The race followed by the running battle, null if the whole battle is fought.
+		 * </p>
+		 */
+		private Race race;
+
+		/**
+		 * <p>
+		 *     The results of the battle, null while it is running or if it has been aborted.
+		 * </p>
+		 */
+		private BattleResults[] results;
+
+		/**
+		 * <p>
+		 *     The last turn of the running battle.
+		 * </p>
+		 */
+		private ITurnSnapshot turn;
+
+		/**
+		 * <p>
+		 *     The scores of the robots when the race has been lost, null while the race goes on.
+		 * </p>
+		 */
+		private IScoreSnapshot[] lostRace;
+
+		/**
+		 * <p>
+		 *     The number of rounds ended.
+		 * </p>
+		 */
+		private int rounds;
+
+		/**
+		 * <p>
+		 *     The sum of the weighted scores of the rounds.
+		 * </p>
+		 */
+		private double roundSum;
+
+		/**
+		 * <p>
+		 *     The sum of the squares of the weighted scores of the rounds.
+		 * </p>
+		 */
+		private double roundSquares;
+
+		/**
+		 * <p>
+		 *     The bullets of the robot which hit an enemy.
+		 * </p>
+		 */
+		private int hits;
+
+		/**
+		 * <p>
+		 *     The bullets of the robot which hit a wall.
+		 * </p>
+		 */
+		private int missed;
+
+		/**
+		 * <p>
+		 *     The turns where the robot hit a wall.
+		 * </p>
+		 */
+		private int hitsWall;
+
+		/**
+		 * <p>
+		 *     The bullets which hit the robot.
+		 * </p>
+		 */
+		private int hitByBullet;
+
+		/**
+		 * <p>
+		 *     The bullets of the round already counted: an ended bullet stays in the turns during its explosion.
+		 *     The identifier of a bullet is only unique for its owner.
+		 * </p>
+		 */
+		private Set<Long> endedBullets;
+
+		/**
+		 * <p>
+		 *     The bullets fired by the robot in the round, already counted.
+		 * </p>
+		 */
+		private Set<Integer> firedBullets;
+
+		/**
+		 * <p>
+		 *     The size of the battlefield, to place the robot in the grid of the position histogram.
+		 * </p>
+		 */
+		private double width, height;
+
+		/**
+		 * <p>
+		 *     The turns the robot was alive.
+		 * </p>
+		 */
+		private int turns;
+
+		/**
+		 * <p>
+		 *     The turns spent in every cell of the battlefield.
+		 * </p>
+		 */
+		private int[] cells;
+
+		/**
+		 * <p>
+		 *     The bullets fired by the robot.
+		 * </p>
+		 */
+		private int fired;
+
+		/**
+		 * <p>
+		 *     The sum over the turns of the distance to the nearest enemy.
+		 * </p>
+		 */
+		private double distance;
+
+		/**
+		 * <p>
+		 *     The sum over the turns of the speed of the robot.
+		 * </p>
+		 */
+		private double speed;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * @param engine the engine running the battles
+		 * @param robotName the name of the tested robot (or a part of it)
+		 */
+		public BattleRecorder(RobocodeEngine engine, String robotName) {
+			this.engine = engine;
+			this.robotName = robotName;
+			endedBullets = new HashSet<>();
+			firedBullets = new HashSet<>();
+			cells = new int[Score.GRID * Score.GRID];
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Forget the last battle before a new one.
+		 * </p>
+		 *
+		 * @param race the race to follow, null to fight the whole battle
+		 */
+		public void start(Race race) {
+			this.race = race;
+			results = null;
+			turn = null;
+			lostRace = null;
+			rounds = 0;
+			roundSum = 0;
+			roundSquares = 0;
+			hits = 0;
+			missed = 0;
+			hitsWall = 0;
+			hitByBullet = 0;
+			turns = 0;
+			cells = new int[Score.GRID * Score.GRID];
+			fired = 0;
+			distance = 0;
+			speed = 0;
+		}
+
+		/**
+		 * <p>
+		 *     Return the score of the tested robot in the last battle.
+		 * </p>
+		 *
+		 * @param numRounds the number of rounds of the battle
+		 *
+		 * @return the score of the robot, on the rounds fought
+		 *
+		 * @throws IOException if the battle has not been completed
+		 */
+		public Score getScore(int numRounds) throws IOException {
+			double deviation = rounds < 2 ? 0 : Math.sqrt(Math.max(0, (roundSquares - roundSum * roundSum / rounds) / (rounds - 1)));
+
+			if (lostRace != null) {
+				double total = 0;
+				IScoreSnapshot robot = null;
+				for (IScoreSnapshot score : lostRace) {
+					total += score.getTotalScore();
+					if (score.getName().contains(robotName))
+						robot = score;
+				}
+
+				return new Score(behaviour(new int[] {(int) Math.round(robot.getTotalScore()),
+						total == 0 ? 0 : (int) Math.round(100.0 * robot.getTotalScore() / total),
+						(int) Math.round(robot.getTotalSurvivalScore()), (int) Math.round(robot.getTotalLastSurvivorBonus()),
+						(int) Math.round(robot.getTotalBulletDamageScore()), (int) Math.round(robot.getTotalBulletKillBonus()),
+						(int) Math.round(robot.getTotalRammingDamageScore()), (int) Math.round(robot.getTotalRammingKillBonus()),
+						hits, missed, hitsWall, hitByBullet, rounds, (int) Math.round(deviation)}));
+			}
+
+			if (results == null)
+				throw new IOException("The battle has not been completed");
+
+			int total = 0;
+			BattleResults robot = null;
+			for (BattleResults result : results) {
+				total += result.getScore();
+				if (result.getTeamLeaderName().contains(robotName))
+					robot = result;
+			}
+
+			return new Score(behaviour(new int[] {robot.getScore(), total == 0 ? 0 : (int) Math.round(100.0 * robot.getScore() / total),
+					robot.getSurvival(), robot.getLastSurvivorBonus(), robot.getBulletDamage(), robot.getBulletDamageBonus(),
+					robot.getRamDamage(), robot.getRamDamageBonus(),
+					hits, missed, hitsWall, hitByBullet, numRounds, (int) Math.round(deviation)}));
+		}
+
+		/**
+		 * <p>
+		 *     Add the behaviour of the robot to the results of the battle.
+		 * </p>
+		 *
+		 * @param results the results of the battle, in the order of {@link Score#getComponents()}
+		 *
+		 * @return all the components of the score
+		 */
+		private int[] behaviour(int[] results) {
+			int[] components = new int[new Score().getComponents().length];
+			System.arraycopy(results, 0, components, 0, results.length);
+			components[results.length] = turns;
+			System.arraycopy(cells, 0, components, results.length + 1, cells.length);
+			components[results.length + 1 + cells.length] = fired;
+			components[results.length + 2 + cells.length] = (int) Math.round(distance);
+			components[results.length + 3 + cells.length] = (int) Math.round(speed);
+			return components;
+		}
+
+		@Override
+		public void onBattleStarted(BattleStartedEvent event) {
+			width = event.getBattleRules().getBattlefieldWidth();
+			height = event.getBattleRules().getBattlefieldHeight();
+		}
+
+		@Override
+		public void onRoundStarted(RoundStartedEvent event) {
+			endedBullets.clear();
+			firedBullets.clear();
+		}
+
+		@Override
+		public void onTurnEnded(TurnEndedEvent event) {
+			turn = event.getTurnSnapshot();
+			if (lostRace != null)
+				return;
+
+			int robot = -1;
+			for (IRobotSnapshot snapshot : turn.getRobots())
+				if (snapshot.getName().contains(robotName)) {
+					robot = snapshot.getRobotIndex();
+					if (snapshot.getState() == RobotState.HIT_WALL)
+						hitsWall++;
+					if (snapshot.getState() != RobotState.DEAD)
+						measure(snapshot);
+				}
+
+			for (IBulletSnapshot bullet : turn.getBullets()) {
+				BulletState state = bullet.getState();
+				if (bullet.getOwnerIndex() == robot && firedBullets.add(bullet.getBulletId()))
+					fired++;
+
+				if ((state != BulletState.HIT_VICTIM && state != BulletState.HIT_WALL) || !endedBullets.add((long) bullet.getOwnerIndex() << 32 | bullet.getBulletId()))
+					continue;
+
+				if (bullet.getOwnerIndex() == robot)
+					if (state == BulletState.HIT_VICTIM)
+						hits++;
+					else
+						missed++;
+				else if (bullet.getVictimIndex() == robot && state == BulletState.HIT_VICTIM)
+					hitByBullet++;
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Measure the behaviour of the robot in a turn: its cell, its distance to the nearest enemy alive and its speed.
+		 * </p>
+		 *
+		 * @param robot the robot in the turn
+		 */
+		private void measure(IRobotSnapshot robot) {
+			turns++;
+			int column = Math.min(Score.GRID - 1, Math.max(0, (int) (Score.GRID * robot.getX() / width)));
+			int row = Math.min(Score.GRID - 1, Math.max(0, (int) (Score.GRID * robot.getY() / height)));
+			cells[row * Score.GRID + column]++;
+			speed += Math.abs(robot.getVelocity());
+
+			double nearest = Double.POSITIVE_INFINITY;
+			for (IRobotSnapshot enemy : turn.getRobots())
+				if (enemy != robot && enemy.getState() != RobotState.DEAD)
+					nearest = Math.min(nearest, Math.hypot(enemy.getX() - robot.getX(), enemy.getY() - robot.getY()));
+			if (nearest != Double.POSITIVE_INFINITY)
+				distance += nearest;
+		}
+
+		@Override
+		public void onRoundEnded(RoundEndedEvent event) {
+			// After an abort, Robocode still ends the current round with empty scores
+			if (lostRace != null)
+				return;
+
+			IScoreSnapshot[] scores = new IScoreSnapshot[turn.getRobots().length];
+			IScoreSnapshot robot = null;
+			for (IRobotSnapshot snapshot : turn.getRobots()) {
+				scores[snapshot.getRobotIndex()] = snapshot.getScoreSnapshot();
+				if (snapshot.getName().contains(robotName))
+					robot = snapshot.getScoreSnapshot();
+			}
+
+			double score = Score.weight(robot.getCurrentSurvivalScore(), robot.getCurrentBulletDamageScore(),
+					robot.getCurrentRammingDamageScore());
+			rounds++;
+			roundSum += score;
+			roundSquares += score * score;
+
+			if (race == null)
+				return;
+
+			race.addRound(score);
+			if (race.isLost()) {
+				lostRace = scores;
+				// The battle cannot be aborted from its own thread, Robocode would wait for itself
+				new Thread(engine::abortCurrentBattle).start();
+			}
+		}
+
+		@Override
+		public void onBattleCompleted(BattleCompletedEvent event) {
+			results = event.getIndexedResults();
+		}
+
+		@Override
+		public void onBattleError(BattleErrorEvent event) {
+			System.out.println("Robocode: " + event.getError());
+		}
+
+}
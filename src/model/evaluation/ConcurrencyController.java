@@ -0,0 +1,452 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class ConcurrencyController.java
+ */
+
+package model.evaluation;
+
+import model.genetic.Score;
+import model.perceptron.NeuralNetwork;
+import model.perceptron.Perturbation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.StringTokenizer;
+
+/**
+ * <p>
+ *     An evaluator choosing how many battles run at the same time, from the throughput it measures.
+ *     A Robocode battle uses several threads, and every worker JVM takes its heap: the best number of battles
+ *     depends on the computer, the battle and the evaluator, so it is searched during the run.
+ * </p>
+ * <p>
+ *     The evaluations wait for a free slot before fighting. After every window of evaluations, the controller compares
+ *     the evaluations per second with the ones of the previous number of slots. The window following a change is not
+ *     measured, it still holds battles started with the previous number of slots.
+ * </p>
+ * <ul>
+ *     <li>if the memory runs out, the number of slots is cut by a quarter (multiplicative decrease);</li>
+ *     <li>if the last slot added has not increased the throughput, it is removed, and the controller holds this level
+ *     for a few windows before trying again, twice longer after every useless slot;</li>
+ *     <li>otherwise, a slot is added while the processors are not saturated and there is memory for one more worker
+ *     (additive increase).</li>
+ * </ul>
+ * <p>
+ *     The level chosen is the concurrency of the telemetry of the run.
+ * </p>
+ *
+ * @see Telemetry
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class ConcurrencyController implements Evaluator {
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     True unless -Ddarwini.adaptive=false: the evaluators which allow it are then wrapped in a controller
+		 *     (see {@link #reasonToSkip(String)}).
+		 * </p>
+		 */
+		public static final boolean ENABLED = !System.getProperty("darwini.adaptive", "true").equals("false");
+
+		/**
+		 * <p>
+		 *     The memory of a worker JVM (-Xmx512M), needed to add a slot (in bytes).
+		 * </p>
+		 */
+		private static final long WORKER_MEMORY = 512L << 20;
+
+		/**
+		 * <p>
+		 *     The load of the processors above which no slot is added.
+		 * </p>
+		 */
+		private static final double CPU_LIMIT = 0.95;
+
+		/**
+		 * <p>
+		 *     The relative gain of throughput a new slot must bring to be kept.
+		 * </p>
+		 */
+		private static final double MIN_GAIN = 0.05;
+
+		/**
+		 * <p>
+		 *     The number of evaluations of a window, per slot.
+		 * </p>
+		 */
+		private static final int WINDOW = 4;
+
+		/**
+		 * <p>
+		 *     The number of windows without any change after a slot has been removed, doubled after every slot removed
+		 *     in a row, up to {@link #MAX_HOLD}.
+		 * </p>
+		 */
+		private static final int HOLD = 2, MAX_HOLD = 32;
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The evaluator running the battles.
+		 * </p>
+		 */
+		private Evaluator evaluator;
+
+		/**
+		 * <p>
+		 *     The largest number of battles at the same time, the number of workers of the evaluator.
+		 * </p>
+		 */
+		private int max;
+
+		/**
+		 * <p>
+		 *     The number of battles allowed at the same time.
+		 * </p>
+		 */
+		private int level;
+
+		/**
+		 * <p>
+		 *     The number of battles being fought.
+		 * </p>
+		 */
+		private int active;
+
+		/**
+		 * <p>
+		 *     The number of evaluations ended in the current window.
+		 * </p>
+		 */
+		private int completed;
+
+		/**
+		 * <p>
+		 *     The start of the current window (System.nanoTime()).
+		 * </p>
+		 */
+		private long windowStart;
+
+		/**
+		 * <p>
+		 *     The throughput measured before the last slot was added (in evaluations per second).
+		 * </p>
+		 */
+		private double baseline;
+
+		/**
+		 * <p>
+		 *     True if the last slot added has not been measured yet.
+		 * </p>
+		 */
+		private boolean probing;
+
+		/**
+		 * <p>
+		 *     True if the current window follows a change, and is not measured.
+		 * </p>
+		 */
+		private boolean settling;
+
+		/**
+		 * <p>
+		 *     The number of windows left before adding a slot again.
+		 * </p>
+		 */
+		private int hold;
+
+		/**
+		 * <p>
+		 *     The number of windows to hold after the next useless slot.
+		 * </p>
+		 */
+		private int nextHold = HOLD;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * <p>
+		 *     Start with one slot, the controller adds the others while they are useful: the level is searched from below,
+		 *     where a slot more is always useful, up to the level where the battles start to slow each other down.
+		 * </p>
+		 *
+		 * @param evaluator the evaluator running the battles
+		 * @param max the number of workers of the evaluator
+		 */
+		public ConcurrencyController(Evaluator evaluator, int max) {
+			this.evaluator = evaluator;
+			this.max = Math.max(1, max);
+			level = 1;
+			// The first window starts the workers
+			settling = true;
+			windowStart = System.nanoTime();
+			Telemetry.setConcurrency(level);
+		}
+
+
+	/*	----- ACCESSORS -----	*/
+
+		/**
+		 * <p>
+		 *     Tell why the number of battles of an evaluator cannot be chosen by a controller. The controller measures
+		 *     the processors and the memory of this computer, so it only fits the evaluators whose battles run here
+		 *     in parallel: "process" and "pool".
+		 * </p>
+		 *
+		 * @param evaluator the name of the evaluator (-Ddarwini.evaluator)
+		 *
+		 * @return null if a controller can choose the number of battles of the evaluator, the reason otherwise
+		 */
+		public static String reasonToSkip(String evaluator) {
+			if (evaluator.equals("process") || evaluator.equals("pool"))
+				return null;
+			if (evaluator.equals("remote"))
+				return "the battles run on the remote workers, but the load and the memory measured are the ones of the coordinator";
+			return "the embedded Robocode engine fights one battle at a time";
+		}
+
+		/**
+		 * @return the number of battles allowed at the same time
+		 */
+		public synchronized int getLevel() {
+			return level;
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Evaluate an individual in a free slot.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 *
+		 * @return the score of the individual
+		 *
+		 * @throws IOException if the battle has failed, or if it has been interrupted while waiting for a slot
+		 */
+		@Override
+		public Score evaluate(NeuralNetwork individual, BattleConfiguration battle) throws IOException {
+			return evaluate(individual, battle, null);
+		}
+
+		/**
+		 * <p>
+		 *     Make an individual race in a free slot.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 * @param race the race to follow, null to fight the whole battle
+		 *
+		 * @return the score of the individual, on the rounds fought
+		 *
+		 * @throws IOException if the battle has failed, or if it has been interrupted while waiting for a slot
+		 */
+		@Override
+		public Score evaluate(NeuralNetwork individual, BattleConfiguration battle, Race race) throws IOException {
+			acquire();
+			try {
+				return evaluator.evaluate(individual, battle, race);
+			} finally {
+				release();
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Evaluate a perturbation in a free slot, the evaluator still receives the compact perturbation.
+		 * </p>
+		 *
+		 * @param perturbation the perturbation to test
+		 * @param battle the battle to fight
+		 *
+		 * @return the score of the perturbation
+		 *
+		 * @throws IOException if the battle has failed, or if it has been interrupted while waiting for a slot
+		 */
+		@Override
+		public Score evaluate(Perturbation perturbation, BattleConfiguration battle) throws IOException {
+			acquire();
+			try {
+				return evaluator.evaluate(perturbation, battle);
+			} finally {
+				release();
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Wait for a free slot.
+		 * </p>
+		 *
+		 * @throws InterruptedIOException if the evaluation is interrupted while waiting
+		 */
+		private synchronized void acquire() throws InterruptedIOException {
+			try {
+				while (active >= level)
+					wait();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("The battle has been interrupted");
+			}
+			active++;
+		}
+
+		/**
+		 * <p>
+		 *     Free the slot of an evaluation which has ended, and adjust the number of slots at the end of a window.
+		 *     A window lasts {@link #WINDOW} evaluations per slot, so every slot has ended several times.
+		 * </p>
+		 */
+		private synchronized void release() {
+			active--;
+			completed++;
+			if (completed >= WINDOW * level)
+				adjust();
+			notifyAll();
+		}
+
+		/**
+		 * <p>
+		 *     Choose the number of slots of the next window from the throughput, the load of the processors
+		 *     and the memory available.
+		 * </p>
+		 */
+		private void adjust() {
+			long now = System.nanoTime();
+			double throughput = completed / ((now - windowStart) / 1e9);
+			double cpu = cpuLoad();
+			long memory = availableMemory();
+			completed = 0;
+			windowStart = now;
+
+			int previousLevel = level;
+			if (memory >= 0 && memory < WORKER_MEMORY / 2) {
+				level = Math.max(1, Math.min(level - 1, 3 * level / 4));
+				probing = false;
+				hold = nextHold;
+			} else if (settling) {
+				settling = false;
+				return;
+			} else if (probing) {
+				probing = false;
+				if (throughput < baseline * (1 + MIN_GAIN)) {
+					// The last slot is not worth it
+					level--;
+					hold = nextHold;
+					nextHold = Math.min(2 * nextHold, MAX_HOLD);
+				} else {
+					baseline = throughput;
+					nextHold = HOLD;
+				}
+			} else {
+				baseline = throughput;
+				if (hold > 0)
+					hold--;
+				else if (level < max && cpu < CPU_LIMIT && (memory < 0 || memory >= WORKER_MEMORY)) {
+					level++;
+					probing = true;
+				}
+			}
+			settling = level != previousLevel || probing;
+
+			if (level != previousLevel) {
+				Telemetry.setConcurrency(level);
+				System.out.println("\tConcurrency: " + level + " battles at the same time (" + String.format(Locale.US,
+						"%.2f evaluations/s with %d, processors %.0f%% busy, %d MB available)", throughput, previousLevel,
+						100 * Math.max(0, cpu), Math.max(0, memory) >> 20));
+			}
+		}
+
+		/**
+		 * @return the load of the processors of the computer, from 0 to 1 (-1 if it is not known)
+		 */
+		private static double cpuLoad() {
+			OperatingSystemMXBean system = ManagementFactory.getOperatingSystemMXBean();
+			double load = measure(system, "getCpuLoad", "getSystemCpuLoad");
+			if (load != -1)
+				return load;
+			return system.getSystemLoadAverage() < 0 ? -1 : system.getSystemLoadAverage() / system.getAvailableProcessors();
+		}
+
+		/**
+		 * <p>
+		 *     Return the memory which can be given to a new process. On Linux, the free memory does not count the caches
+		 *     which can be dropped, the memory available of /proc/meminfo is read instead.
+		 * </p>
+		 *
+		 * @return the memory available (in bytes), -1 if it is not known
+		 */
+		private static long availableMemory() {
+			File meminfo = new File("/proc/meminfo");
+			if (meminfo.exists())
+				try (BufferedReader reader = new BufferedReader(new FileReader(meminfo))) {
+					String line;
+					while ((line = reader.readLine()) != null)
+						if (line.startsWith("MemAvailable:")) {
+							StringTokenizer tokens = new StringTokenizer(line.substring(line.indexOf(':') + 1));
+							return Long.parseLong(tokens.nextToken()) << 10;
+						}
+				} catch (IOException | RuntimeException e) {
+					// The free memory is used instead
+				}
+
+			return (long) measure(ManagementFactory.getOperatingSystemMXBean(), "getFreeMemorySize", "getFreePhysicalMemorySize");
+		}
+
+		/**
+		 * <p>
+		 *     Read a measure of the operating system from the extended MXBean of the JVM. The methods of Java 14 are
+		 *     looked up by their names, the ones they replace are used on the older JVMs.
+		 * </p>
+		 *
+		 * @param system the MXBean of the operating system
+		 * @param name the name of the method since Java 14
+		 * @param deprecatedName the name of the method before Java 14
+		 *
+		 * @return the measure, -1 if it is not known
+		 */
+		private static double measure(OperatingSystemMXBean system, String name, String deprecatedName) {
+			if (!(system instanceof com.sun.management.OperatingSystemMXBean))
+				return -1;
+
+			for (String method : new String[] {name, deprecatedName})
+				try {
+					Method measure = com.sun.management.OperatingSystemMXBean.class.getMethod(method);
+					return ((Number) measure.invoke(system)).doubleValue();
+				} catch (ReflectiveOperationException | RuntimeException e) {
+					// The method does not exist in this JVM
+				}
+			return -1;
+		}
+
+		/**
+		 * <p>
+		 *     Print the number of battles chosen and close the evaluator.
+		 * </p>
+		 */
+		@Override
+		public void close() {
+			System.out.println("Concurrency: " + getLevel() + " battles at the same time out of " + max);
+			evaluator.close();
+		}
+
+}
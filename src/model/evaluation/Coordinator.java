@@ -0,0 +1,757 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class Coordinator.java
+ */
+
+package model.evaluation;
+
+import model.genetic.Score;
+import model.perceptron.NeuralNetwork;
+import model.perceptron.Perturbation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ *     A fitness backend dispatching the battles to remote workers, on this machine or on other ones.
+ *     The coordinator keeps the population: it listens on a port, every RemoteWorker connects to it and receives
+ *     the compact genomes to test, one battle at a time, and sends back the components of their scores.
+ * </p>
+ * <p>
+ *     The battles wait in a queue and are given to the first idle worker, so a fast worker fights more battles.
+ *     When the queue is empty, a straggler, a battle running for much longer than the mean battle, is duplicated
+ *     speculatively on an idle worker: the first score received is kept and the other copy is cancelled, which frees
+ *     its worker. A battle nobody waits for anymore (its thread has been interrupted) is cancelled the same way.
+ * </p>
+ * <p>
+ *     The workers send a heartbeat every {@link #HEARTBEAT_PERIOD} ms. A worker silent for
+ *     {@link #HEARTBEAT_TIMEOUT} ms, or whose connection is lost, is dropped and its battle is dispatched again,
+ *     at most {@link #MAX_ATTEMPTS} times. A worker whose battle passes the deadline given by the Watchdog is
+ *     dropped the same way: its connection is closed, and the RemoteWorker connects again when its heartbeat cannot
+ *     be sent. This battle is not dispatched again but fails, like in the WorkerPool: the optimizer decides whether
+ *     to fight it again.
+ * </p>
+ *
+ * @see RemoteWorker
+ * @see WorkerProtocol
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class Coordinator implements Evaluator {
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     The port of the coordinator, when none is given.
+		 * </p>
+		 */
+		public static final int DEFAULT_PORT = 4815;
+
+		/**
+		 * <p>
+		 *     The time between two heartbeats of a worker, in milliseconds.
+		 * </p>
+		 */
+		public static final long HEARTBEAT_PERIOD = 2000;
+
+		/**
+		 * <p>
+		 *     The time without any message after which a worker is considered dead, in milliseconds.
+		 * </p>
+		 */
+		public static final long HEARTBEAT_TIMEOUT = 5 * HEARTBEAT_PERIOD;
+
+		/**
+		 * <p>
+		 *     The number of workers which can be lost by a battle before it fails.
+		 * </p>
+		 */
+		public static final int MAX_ATTEMPTS = 3;
+
+		/**
+		 * <p>
+		 *     The number of workers fighting the same battle at the same time, with the speculative copies.
+		 * </p>
+		 */
+		private static final int MAX_COPIES = 2;
+
+		/**
+		 * <p>
+		 *     A battle running for longer than this multiple of the mean battle is a straggler.
+		 * </p>
+		 */
+		private static final double STRAGGLER_FACTOR = 1.5;
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The socket waiting for the workers.
+		 * </p>
+		 */
+		private ServerSocket server;
+
+		/**
+		 * <p>
+		 *     The connected workers.
+		 * </p>
+		 */
+		private List<Node> nodes;
+
+		/**
+		 * <p>
+		 *     The workers waiting for a battle.
+		 * </p>
+		 */
+		private Deque<Node> idleNodes;
+
+		/**
+		 * <p>
+		 *     The battles waiting for a worker.
+		 * </p>
+		 */
+		private Deque<Job> pending;
+
+		/**
+		 * <p>
+		 *     The battles fought by at least one worker, by identifier, the oldest first.
+		 * </p>
+		 */
+		private Map<Long, Job> running;
+
+		/**
+		 * <p>
+		 *     The thread dropping the silent workers and duplicating the stragglers on the idle workers.
+		 * </p>
+		 */
+		private ScheduledExecutorService monitor;
+
+		/**
+		 * <p>
+		 *     The last identifier of a battle.
+		 * </p>
+		 */
+		private AtomicLong ids;
+
+		/**
+		 * <p>
+		 *     The deadlines of the battles.
+		 * </p>
+		 */
+		private Watchdog watchdog;
+
+		/**
+		 * <p>
+		 *     The mean duration of a battle, in milliseconds, 0 while no battle has ended.
+		 * </p>
+		 */
+		private double meanDuration;
+
+		/**
+		 * <p>
+		 *     The number of battles fought, dispatched again after a lost worker, and duplicated on an idle worker.
+		 * </p>
+		 */
+		private int battles, redispatched, duplicated;
+
+		/**
+		 * <p>
+		 *     The center of the last perturbations and its message, sent to every worker before its first perturbation.
+		 * </p>
+		 */
+		private Perturbation center;
+		private String centerMessage;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * <p>
+		 *     Listen for the remote workers. The battles wait until a worker is connected.
+		 * </p>
+		 *
+		 * @param port the port of the coordinator
+		 *
+		 * @throws IOException if the port cannot be opened
+		 */
+		public Coordinator(int port) throws IOException {
+			nodes = new ArrayList<>();
+			idleNodes = new ArrayDeque<>();
+			pending = new ArrayDeque<>();
+			running = new LinkedHashMap<>();
+			ids = new AtomicLong();
+			watchdog = new Watchdog();
+
+			server = new ServerSocket(port);
+			Thread acceptor = new Thread(this::accept, "Coordinator");
+			acceptor.setDaemon(true);
+			acceptor.start();
+
+			monitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "Coordinator monitor");
+				thread.setDaemon(true);
+				return thread;
+			});
+			monitor.scheduleAtFixedRate(this::check, HEARTBEAT_PERIOD, HEARTBEAT_PERIOD, TimeUnit.MILLISECONDS);
+
+			System.out.println("Coordinator listening on port " + server.getLocalPort()
+					+ ", start the workers with: java model.evaluation.RemoteWorker <host> " + server.getLocalPort() + " <worker number>");
+		}
+
+
+	/*	----- ACCESSORS -----	*/
+
+		/**
+		 * @return the number of connected workers
+		 */
+		public synchronized int getSize() {
+			return nodes.size();
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Evaluate an individual on the first idle remote worker.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 *
+		 * @return the score of the individual
+		 *
+		 * @throws IOException if the battle has failed, or if it has lost too many workers
+		 */
+		@Override
+		public Score evaluate(NeuralNetwork individual, BattleConfiguration battle) throws IOException {
+			return evaluate(individual, battle, null);
+		}
+
+		/**
+		 * <p>
+		 *     Make an individual race on the first idle remote worker, which aborts the battle when the race is lost.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 * @param race the race to follow, null to fight the whole battle
+		 *
+		 * @return the score of the individual, on the rounds fought
+		 *
+		 * @throws IOException if the battle has failed, or if it has lost too many workers
+		 */
+		@Override
+		public Score evaluate(NeuralNetwork individual, BattleConfiguration battle, Race race) throws IOException {
+			long id = ids.incrementAndGet();
+			return evaluate(new Job(id, battle.getNumRounds(), WorkerProtocol.evaluate(id, individual, battle, race)));
+		}
+
+		/**
+		 * <p>
+		 *     Evaluate a perturbation on the first idle remote worker. The worker receives the center of the perturbation
+		 *     once, then only the offset, the sign and the step size of every perturbation.
+		 * </p>
+		 *
+		 * @param perturbation the perturbation to test
+		 * @param battle the battle to fight
+		 *
+		 * @return the score of the perturbation
+		 *
+		 * @throws IOException if the battle has failed, or if it has lost too many workers
+		 */
+		@Override
+		public Score evaluate(Perturbation perturbation, BattleConfiguration battle) throws IOException {
+			long id = ids.incrementAndGet();
+			Job job = new Job(id, battle.getNumRounds(), WorkerProtocol.perturb(id, perturbation, battle));
+			job.version = perturbation.getVersion();
+			synchronized (this) {
+				// The center is written once for all the workers
+				if (center == null || center.getVersion() != job.version) {
+					center = perturbation;
+					centerMessage = WorkerProtocol.center(perturbation);
+				}
+				job.center = centerMessage;
+			}
+			return evaluate(job);
+		}
+
+		/**
+		 * <p>
+		 *     Wait for the score of a battle fought by the remote workers.
+		 * </p>
+		 *
+		 * @param job the battle
+		 *
+		 * @return the score
+		 *
+		 * @throws IOException if the battle has failed, or if it has lost too many workers
+		 */
+		private Score evaluate(Job job) throws IOException {
+			synchronized (this) {
+				pending.add(job);
+				dispatch();
+			}
+
+			try {
+				return job.score.get();
+			} catch (InterruptedException e) {
+				synchronized (this) {
+					pending.remove(job);
+					// The workers still fighting it are freed
+					if (running.remove(job.id) != null) {
+						job.deadline.cancel();
+						cancel(job);
+					}
+				}
+				throw new InterruptedIOException("The battle has been interrupted");
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+			} finally {
+				// The battle is recorded in the thread which asked for it, from its last dispatch to its end
+				if (job.time != 0)
+					Telemetry.record(Telemetry.Stage.BATTLE, job.time);
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Accept the workers until the coordinator is closed.
+		 * </p>
+		 */
+		private void accept() {
+			while (!server.isClosed())
+				try {
+					Socket socket = server.accept();
+					socket.setTcpNoDelay(true);
+					Node node = new Node(socket);
+					synchronized (this) {
+						nodes.add(node);
+						Telemetry.setConcurrency(nodes.size());
+					}
+					System.out.println("\tRemote worker " + node + "...CONNECTED");
+
+					Thread listener = new Thread(() -> listen(node), "Coordinator " + node);
+					listener.setDaemon(true);
+					listener.start();
+				} catch (IOException e) {
+					if (!server.isClosed())
+						System.out.println("Coordinator: " + e.getMessage());
+				}
+		}
+
+		/**
+		 * <p>
+		 *     Read the messages of a worker until its connection is lost.
+		 * </p>
+		 *
+		 * @param node the worker
+		 */
+		private void listen(Node node) {
+			try (BufferedReader in = new BufferedReader(new InputStreamReader(node.socket.getInputStream(), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					node.lastMessage = System.currentTimeMillis();
+					StringTokenizer tokens = new StringTokenizer(line, " ");
+					String command = tokens.nextToken();
+
+					if (command.equals(WorkerProtocol.READY))
+						ready(node);
+					else if (command.equals(WorkerProtocol.SCORE))
+						finished(node, Long.parseLong(tokens.nextToken()), WorkerProtocol.readScore(tokens), null);
+					else if (command.equals(WorkerProtocol.ERROR))
+						finished(node, Long.parseLong(tokens.nextToken()), null, tokens.hasMoreTokens() ? tokens.nextToken("").trim() : "");
+				}
+			} catch (IOException | RuntimeException e) {
+				// The connection is lost or the worker is broken: both are dropped below
+			}
+			lost(node);
+		}
+
+		/**
+		 * <p>
+		 *     Give a battle to a worker which has loaded Robocode.
+		 * </p>
+		 *
+		 * @param node the worker
+		 */
+		private synchronized void ready(Node node) {
+			if (nodes.contains(node) && node.job == null && !idleNodes.contains(node)) {
+				idleNodes.add(node);
+				dispatch();
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Receive the end of a battle. The first score of a battle is kept and its other copy is cancelled;
+		 *     an error fails the battle if no other worker is fighting it, like the WorkerPool which does not retry
+		 *     a failed battle. The answer of a cancelled copy only frees its worker.
+		 * </p>
+		 *
+		 * @param node the worker
+		 * @param id the identifier of the battle
+		 * @param score the score, null if the battle has failed
+		 * @param error the error, null if the battle has succeeded
+		 */
+		private synchronized void finished(Node node, long id, Score score, String error) {
+			node.job = null;
+			Job job = running.get(id);
+
+			if (job != null) {
+				job.copies.remove(node);
+				if (score != null) {
+					running.remove(id);
+					long duration = System.currentTimeMillis() - job.start;
+					meanDuration = meanDuration == 0 ? duration : 0.9 * meanDuration + 0.1 * duration;
+					battles++;
+					job.deadline.done(score.getRounds());
+					job.score.complete(score);
+					cancel(job);
+				} else if (job.copies.isEmpty()) {
+					running.remove(id);
+					job.deadline.cancel();
+					job.score.completeExceptionally(new IOException("Remote worker " + node + ": " + error));
+				}
+			}
+
+			if (nodes.contains(node)) {
+				idleNodes.add(node);
+				dispatch();
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Drop a dead worker and dispatch its battle again if no other worker is fighting it,
+		 *     unless the battle has passed its deadline.
+		 * </p>
+		 *
+		 * @param node the worker
+		 */
+		private synchronized void lost(Node node) {
+			if (!nodes.remove(node))
+				return;
+
+			idleNodes.remove(node);
+			Telemetry.setConcurrency(nodes.size());
+			node.close();
+			System.out.println("\tRemote worker " + node + "...LOST");
+
+			Job job = node.job;
+			node.job = null;
+			if (job != null && running.containsKey(job.id)) {
+				job.copies.remove(node);
+				if (job.copies.isEmpty()) {
+					running.remove(job.id);
+					job.deadline.cancel();
+					if (job.deadline.isExpired())
+						job.score.completeExceptionally(new IOException("The battle has been stopped after its deadline of "
+								+ job.deadline.getDelay() / 1000 + " s"));
+					else if (++job.attempts >= MAX_ATTEMPTS)
+						job.score.completeExceptionally(new IOException("The battle has lost " + job.attempts + " remote workers"));
+					else {
+						redispatched++;
+						pending.addFirst(job);
+					}
+				}
+			}
+			dispatch();
+		}
+
+		/**
+		 * <p>
+		 *     Drop the silent workers and duplicate the stragglers on the idle workers.
+		 * </p>
+		 */
+		private synchronized void check() {
+			long now = System.currentTimeMillis();
+			for (Node node : nodes)
+				if (now - node.lastMessage > HEARTBEAT_TIMEOUT) {
+					System.out.println("\tRemote worker " + node + "...SILENT for " + (now - node.lastMessage) + " ms");
+					// Its listener gets an exception and drops it
+					node.close();
+				}
+			dispatch();
+		}
+
+		/**
+		 * <p>
+		 *     Drop the workers of a battle which has passed its deadline, so it fails.
+		 * </p>
+		 *
+		 * @param job the battle
+		 */
+		private synchronized void expire(Job job) {
+			if (running.get(job.id) != job)
+				return;
+
+			System.out.println("\tBattle n°" + job.id + "...EXPIRED after " + job.deadline.getDelay() / 1000 + " s");
+			// Their listeners get an exception and drop them
+			for (Node node : job.copies)
+				node.close();
+		}
+
+		/**
+		 * <p>
+		 *     Stop the copies of a battle still fought by some workers, when its score is known or nobody waits for it.
+		 *     Their workers answer with an error or the score of the rounds fought, which only makes them idle again.
+		 * </p>
+		 *
+		 * @param job the battle
+		 */
+		private void cancel(Job job) {
+			for (Node node : job.copies)
+				if (!node.send(WorkerProtocol.CANCEL + " " + job.id))
+					node.close();
+		}
+
+		/**
+		 * <p>
+		 *     Give the waiting battles to the idle workers, then a copy of the stragglers to the workers still idle.
+		 * </p>
+		 */
+		private void dispatch() {
+			while (!idleNodes.isEmpty()) {
+				Node node = idleNodes.peek();
+				Job job = pending.poll();
+				if (job == null) {
+					job = duplicate(node);
+					if (job == null)
+						return;
+					duplicated++;
+				}
+
+				idleNodes.poll();
+				if (job.copies.isEmpty()) {
+					job.start = System.currentTimeMillis();
+					job.time = System.nanoTime();
+					Job expiring = job;
+					job.deadline = watchdog.start(job.rounds, () -> expire(expiring));
+				}
+				job.copies.add(node);
+				running.put(job.id, job);
+				node.job = job;
+				if (job.center != null && node.version != job.version) {
+					node.version = job.version;
+					if (!node.send(job.center))
+						node.close();
+				}
+				if (!node.send(job.message))
+					node.close();
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Find the oldest straggler which can be duplicated on an idle worker.
+		 * </p>
+		 *
+		 * @param node the idle worker
+		 *
+		 * @return the battle to copy, null if there is no straggler
+		 */
+		private Job duplicate(Node node) {
+			if (meanDuration == 0)
+				return null;
+
+			long now = System.currentTimeMillis();
+			for (Job job : running.values())
+				if (job.copies.size() < MAX_COPIES && !job.copies.contains(node) && now - job.start > STRAGGLER_FACTOR * meanDuration)
+					return job;
+			return null;
+		}
+
+		/**
+		 * <p>
+		 *     Stop the workers and print the activity of the coordinator.
+		 * </p>
+		 */
+		@Override
+		public void close() {
+			monitor.shutdownNow();
+			try {
+				server.close();
+			} catch (IOException e) {
+				System.out.println("Coordinator: " + e.getMessage());
+			}
+
+			synchronized (this) {
+				System.out.println("Coordinator: " + battles + " battles fought by remote workers, " + redispatched
+						+ " dispatched again after a lost worker, " + duplicated + " stragglers duplicated, " + watchdog.getExpired() + " expired");
+				for (Node node : nodes) {
+					node.send(WorkerProtocol.QUIT);
+					node.close();
+				}
+				nodes.clear();
+				idleNodes.clear();
+				for (Job job : pending)
+					job.score.completeExceptionally(new IOException("The coordinator is closed"));
+				pending.clear();
+			}
+		}
+
+
+	/*	----- REMOTE WORKERS AND BATTLES -----	*/
+
+		/**
+		 * <p>
+		 *     A connected remote worker, fighting one battle at a time.
+		 * </p>
+		 */
+		private static class Node {
+
+			private Socket socket;
+
+			private PrintWriter out;
+
+			/**
+			 * <p>
+			 *     The battle fought by the worker, null if it is idle.
+			 * </p>
+			 */
+			private Job job;
+
+			/**
+			 * <p>
+			 *     The time of the last message of the worker.
+			 * </p>
+			 */
+			private volatile long lastMessage;
+
+			/**
+			 * <p>
+			 *     The version of the last center sent to the worker, 0 if none.
+			 * </p>
+			 */
+			private long version;
+
+			private Node(Socket socket) throws IOException {
+				this.socket = socket;
+				out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+				lastMessage = System.currentTimeMillis();
+			}
+
+			/**
+			 * @param message the message to send
+			 *
+			 * @return false if the connection is broken
+			 */
+			private synchronized boolean send(String message) {
+				out.println(message);
+				out.flush();
+				return !out.checkError();
+			}
+
+			private void close() {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// Already closed
+				}
+			}
+
+			@Override
+			public String toString() {
+				return socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+			}
+
+		}
+
+		/**
+		 * <p>
+		 *     A battle to fight, with the workers fighting it.
+		 * </p>
+		 */
+		private static class Job {
+
+			private long id;
+
+			private int rounds;
+
+			/**
+			 * <p>
+			 *     The evaluation request, written once for all the workers of the battle.
+			 * </p>
+			 */
+			private String message;
+
+			/**
+			 * <p>
+			 *     The center of a perturbation and its version, null for a battle of a whole genome.
+			 * </p>
+			 */
+			private String center;
+			private long version;
+
+			private CompletableFuture<Score> score;
+
+			private Set<Node> copies;
+
+			/**
+			 * <p>
+			 *     The time when the first copy of the battle has been sent.
+			 * </p>
+			 */
+			private long start;
+
+			/**
+			 * <p>
+			 *     The same time for the telemetry (System.nanoTime()), 0 if the battle has never been sent.
+			 * </p>
+			 */
+			private volatile long time;
+
+			/**
+			 * <p>
+			 *     The number of workers lost while fighting this battle.
+			 * </p>
+			 */
+			private int attempts;
+
+			/**
+			 * <p>
+			 *     The deadline of the battle, started with its first copy.
+			 * </p>
+			 */
+			private Watchdog.Deadline deadline;
+
+			private Job(long id, int rounds, String message) {
+				this.id = id;
+				this.rounds = rounds;
+				this.message = message;
+				score = new CompletableFuture<>();
+				copies = new HashSet<>();
+			}
+
+		}
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class EngineEvaluator.java
+ */
+
+package model.evaluation;
+
+import controller.Darwini;
+import model.genetic.GeneticAlgorithm;
+import model.genetic.Score;
+import model.perceptron.NeuralNetwork;
+
+import robocode.control.RobocodeEngine;
+import robocode.control.RobotSpecification;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ *     A fitness backend keeping a Robocode engine alive inside the genetic algorithm process.
+ *     Robocode is started and the robot repository is scanned only once, then every battle is run
+ *     without display and the score is built in memory by a BattleRecorder: nothing is read from files.
+ * </p>
+ * <p>
+ *     Robocode only supports one running battle per JVM, so the evaluations are done one at a time.
+ * </p>
+ *
+ * @see BattleRecorder
+ * @see ProcessEvaluator
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class EngineEvaluator implements Evaluator {
+
+	/*	----- PATHS -----	*/
+
+		/**
+		 * <p>
+		 *     The Robocode working directory (containing the config and robots directories).
+		 * </p>
+		 */
+		private static final String ROBOCODE_HOME = "data";
+
+		/**
+		 * <p>
+		 *     The data directory of the Champion robot, next to the one of Darwini.
+		 * </p>
+		 */
+		static final String CHAMPION_DATA = "Champion.data/";
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The embedded Robocode engine.
+		 * </p>
+		 */
+		private RobocodeEngine engine;
+
+		/**
+		 * <p>
+		 *     The binary perceptron file loaded by the Darwini robot of the engine.
+		 * </p>
+		 */
+		private File perceptronFile;
+
+		/**
+		 * <p>
+		 *     The binary perceptron file loaded by the Champion robot of the engine, next to the Darwini's one.
+		 * </p>
+		 */
+		private File championFile;
+
+		/**
+		 * <p>
+		 *     The hash of the champion written in its file, null before the first battle against a champion.
+		 *     The file is only written again when the champion changes.
+		 * </p>
+		 */
+		private String champion;
+
+		/**
+		 * <p>
+		 *     The robots already found in the Robocode repository, by selection.
+		 * </p>
+		 */
+		private Map<String, RobotSpecification[]> robots;
+
+		/**
+		 * <p>
+		 *     The listener building the score of the battles.
+		 * </p>
+		 */
+		private BattleRecorder recorder;
+
+		/**
+		 * <p>
+		 *     The deadlines of the battles, a hung battle is aborted.
+		 * </p>
+		 */
+		private Watchdog watchdog;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * <p>
+		 *     Start the Robocode engine of the project (data directory and robots compiled by IntelliJ).
+		 * </p>
+		 */
+		public EngineEvaluator() {
+			this(new File(ROBOCODE_HOME), new File(GeneticAlgorithm.ROBOT_DIRECTORY + Darwini.PERCEPTRON_BINARY));
+		}
+
+		/**
+		 * <p>
+		 *     Start a Robocode engine without display and record its battles.
+		 * </p>
+		 *
+		 * @param robocodeHome the Robocode working directory (containing the config and robots directories)
+		 * @param perceptronFile the binary perceptron file loaded by the Darwini robot of this working directory
+		 */
+		public EngineEvaluator(File robocodeHome, File perceptronFile) {
+			long start = System.nanoTime();
+			this.perceptronFile = perceptronFile;
+			championFile = new File(perceptronFile.getParentFile().getParentFile(), CHAMPION_DATA + perceptronFile.getName());
+
+			// Same options as the Robocode process: the robot must be able to read its perceptron.
+			System.setProperty("NOSECURITY", "true");
+			RobocodeEngine.setLogMessagesEnabled(false);
+
+			robots = new HashMap<>();
+			engine = new RobocodeEngine(robocodeHome);
+			engine.setVisible(false);
+			recorder = new BattleRecorder(engine, "Darwini");
+			engine.addBattleListener(recorder);
+			watchdog = new Watchdog();
+			// The battles of an engine are fought one after another
+			Telemetry.setConcurrency(1);
+			Telemetry.record(Telemetry.Stage.SPAWN, start);
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Evaluate an individual in the embedded Robocode engine.
+		 *     The evaluations are synchronized because Robocode can only run one battle at a time.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 *
+		 * @return the score of the individual
+		 *
+		 * @throws IOException if the perceptron cannot be given to the robot or if the battle does not complete
+		 */
+		@Override
+		public Score evaluate(NeuralNetwork individual, BattleConfiguration battle) throws IOException {
+			return evaluate(individual, battle, null);
+		}
+
+		/**
+		 * <p>
+		 *     Make an individual race in the embedded Robocode engine, aborting the battle when the race is lost.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 * @param race the race to follow, null to fight the whole battle
+		 *
+		 * @return the score of the individual, on the rounds fought
+		 *
+		 * @throws IOException if the perceptron cannot be given to the robot, if the battle does not complete
+		 *                     or if it has been aborted after its deadline
+		 */
+		@Override
+		public synchronized Score evaluate(NeuralNetwork individual, BattleConfiguration battle, Race race) throws IOException {
+			individual.writeBinary(perceptronFile);
+			writeChampion(battle);
+			RobotSpecification[] robots = getRobots(battle.getSelectedRobots());
+
+			recorder.start(race);
+			// The watchdog aborts the battle from its own thread, like a lost race
+			Watchdog.Deadline deadline = watchdog.start(battle.getNumRounds(), engine::abortCurrentBattle);
+			long start = System.nanoTime();
+			try {
+				engine.runBattle(battle.toSpecification(robots), true);
+			} finally {
+				deadline.cancel();
+				Telemetry.record(Telemetry.Stage.BATTLE, start);
+			}
+			if (deadline.isExpired())
+				throw new IOException("The battle has been aborted after its deadline of " + deadline.getDelay() / 1000 + " s");
+
+			start = System.nanoTime();
+			Score score = recorder.getScore(battle.getNumRounds());
+			Telemetry.record(Telemetry.Stage.PARSE, start);
+			deadline.done(score.getRounds());
+			return score;
+		}
+
+		/**
+		 * <p>
+		 *     Stop the battle being fought, from another thread: it ends with the rounds already fought, like a lost race.
+		 *     Nothing happens if no battle is being fought.
+		 * </p>
+		 */
+		public void abort() {
+			engine.abortCurrentBattle();
+		}
+
+		/**
+		 * <p>
+		 *     Give its perceptron to the Champion robot, if the battle is against another champion than the previous one.
+		 * </p>
+		 *
+		 * @param battle the battle to fight
+		 *
+		 * @throws IOException if the perceptron cannot be written
+		 */
+		private void writeChampion(BattleConfiguration battle) throws IOException {
+			if (battle.getChampion() == null || battle.getChampionHash().equals(champion))
+				return;
+
+			championFile.getParentFile().mkdirs();
+			battle.getChampion().writeBinary(championFile);
+			champion = battle.getChampionHash();
+		}
+
+		/**
+		 * <p>
+		 *     Return the robots of a selection, looking for them in the Robocode repository only the first time.
+		 * </p>
+		 *
+		 * @param selectedRobots the robots separated by commas
+		 *
+		 * @return the specifications of the robots
+		 *
+		 * @throws IOException if a robot is not found in the repository
+		 */
+		private RobotSpecification[] getRobots(String selectedRobots) throws IOException {
+			RobotSpecification[] specifications = robots.get(selectedRobots);
+
+			if (specifications == null) {
+				specifications = engine.getLocalRepository(selectedRobots);
+				if (specifications.length != selectedRobots.split(",").length)
+					throw new IOException("Some robots of \"" + selectedRobots + "\" are not in the Robocode repository");
+				robots.put(selectedRobots, specifications);
+			}
+
+			return specifications;
+		}
+
+		/**
+		 * <p>
+		 *     Stop the Robocode engine.
+		 * </p>
+		 */
+		@Override
+		public synchronized void close() {
+			engine.close();
+		}
+
+}
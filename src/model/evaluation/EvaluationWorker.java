@@ -0,0 +1,73 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class EvaluationWorker.java
+ */
+
+package model.evaluation;
+
+import model.perceptron.NeuralNetwork;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.StringTokenizer;
+
+/**
+ * <p>
+ *     A long-lived evaluation JVM, started by the WorkerPool in a sandbox.
+ *     It loads Robocode once, then reads evaluation requests on its standard input and writes the scores on its
+ *     standard output, following the WorkerProtocol.
+ * </p>
+ *
+ * <pre>
+ * java model.evaluation.EvaluationWorker &lt;Robocode working directory&gt; &lt;perceptron file&gt;
+ * </pre>
+ *
+ * @see WorkerPool
+ * @see WorkerProtocol
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class EvaluationWorker {
+
+	public static void main(String[] args) throws IOException {
+		// The standard streams are kept for the protocol, Robocode and the robots write their logs on the error output.
+		// They must be taken before Robocode starts because it replaces them by guarded streams.
+		PrintStream protocol = System.out;
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+		System.setOut(System.err);
+
+		EngineEvaluator evaluator = new EngineEvaluator(new File(args[0]), new File(args[1]));
+		protocol.println(WorkerProtocol.READY);
+		protocol.flush();
+
+		String line;
+		while ((line = in.readLine()) != null && !line.equals(WorkerProtocol.QUIT)) {
+			StringTokenizer tokens = new StringTokenizer(line, " ");
+			String command = tokens.nextToken();
+
+			try {
+				if (!command.equals(WorkerProtocol.EVALUATE))
+					throw new IOException("Unknown command " + command);
+
+				NeuralNetwork individual = WorkerProtocol.readNetwork(tokens);
+				Race race = WorkerProtocol.readRace(tokens);
+				BattleConfiguration battle = new BattleConfiguration(new File(tokens.nextToken("").trim()));
+				protocol.println(WorkerProtocol.score(evaluator.evaluate(individual, battle, race)));
+			} catch (IOException | RuntimeException e) {
+				protocol.println(WorkerProtocol.ERROR + " " + e);
+			}
+			protocol.flush();
+		}
+
+		evaluator.close();
+		// Robocode leaves some threads alive
+		System.exit(0);
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class Evaluator.java
+ */
+
+package model.evaluation;
+
+import model.genetic.Score;
+import model.perceptron.NeuralNetwork;
+import model.perceptron.Perturbation;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ *     A fitness backend: it makes an individual (perceptron) fight in Robocode and returns its score.
+ *     The genetic algorithm does not know how the battle is run, it only asks an evaluator for a score.
+ * </p>
+ *
+ * @see ProcessEvaluator
+ * @see EngineEvaluator
+ * @see model.genetic.GeneticAlgorithm
+ *
+ * @version 1.2 - 18/10/26
+ */
+public interface Evaluator {
+
+	/**
+	 * <p>
+	 *     Make an individual fight the battle described by the configuration and return its score.
+	 * </p>
+	 *
+	 * @param individual the perceptron to test
+	 * @param battle the battle to fight
+	 *
+	 * @return the score of the individual
+	 *
+	 * @throws IOException if the battle could not be run or its results could not be read
+	 */
+	Score evaluate(NeuralNetwork individual, BattleConfiguration battle) throws IOException;
+
+	/**
+	 * <p>
+	 *     Make an individual race against a target: the battle may be stopped before its end if the race is lost.
+	 *     An evaluator which cannot follow the battle round by round fights the whole battle.
+	 * </p>
+	 *
+	 * @param individual the perceptron to test
+	 * @param battle the battle to fight
+	 * @param race the race to follow, null to fight the whole battle
+	 *
+	 * @return the score of the individual, on the rounds fought
+	 *
+	 * @throws IOException if the battle could not be run or its results could not be read
+	 */
+	default Score evaluate(NeuralNetwork individual, BattleConfiguration battle, Race race) throws IOException {
+		return evaluate(individual, battle);
+	}
+
+	/**
+	 * <p>
+	 *     Make a perturbation of a center fight the battle described by the configuration and return its score.
+	 *     An evaluator which sends the battles to other processes may send the perturbation instead of its genome,
+	 *     the others build the genome and fight it.
+	 * </p>
+	 *
+	 * @param perturbation the perturbation to test
+	 * @param battle the battle to fight
+	 *
+	 * @return the score of the perturbation
+	 *
+	 * @throws IOException if the battle could not be run or its results could not be read
+	 */
+	default Score evaluate(Perturbation perturbation, BattleConfiguration battle) throws IOException {
+		return evaluate(perturbation.apply(), battle);
+	}
+
+	/**
+	 * <p>
+	 *     Release the resources (Robocode engine, processes...) held by the evaluator.
+	 * </p>
+	 */
+	void close();
+
+}
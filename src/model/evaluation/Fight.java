@@ -0,0 +1,40 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class Fight.java
+ */
+
+package model.evaluation;
+
+import model.genetic.Score;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ *     A battle to run later by an evaluator, which may fail: the fitness cache runs it only when the score is not known,
+ *     the optimizers run it again when it fails.
+ * </p>
+ *
+ * @see FitnessCache
+ * @see model.genetic.AbstractOptimizer
+ *
+ * @version 1.2 - 18/10/26
+ */
+@FunctionalInterface
+public interface Fight {
+
+	/**
+	 * <p>
+	 *     Run the battle.
+	 * </p>
+	 *
+	 * @return the score of the battle
+	 *
+	 * @throws IOException if the battle has failed
+	 */
+	Score run() throws IOException;
+
+}
@@ -0,0 +1,277 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class FitnessCache.java
+ */
+
+package model.evaluation;
+
+import model.genetic.Score;
+import model.perceptron.NeuralNetwork;
+import model.perceptron.Perturbation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.util.StringTokenizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ *     An evaluator remembering the scores of the neural networks already tested.
+ *     The elite, the children not crossed nor mutated and the population loaded after a restart are identical to networks
+ *     which have already fought: their score is taken from the cache instead of fighting again.
+ * </p>
+ * <p>
+ *     The scores are kept in memory and appended to a file, one line per network and battle:
+ * </p>
+ *
+ * <pre>
+ * &lt;hash of the network&gt; &lt;key of the battle&gt; &lt;components of the score&gt;
+ * </pre>
+ * <p>
+ *     Only the scores of whole battles are kept. A race stopped early, or a score read from an older file with fewer
+ *     rounds than the battle, is a partial score: it is never returned for this battle, the network fights again.
+ * </p>
+ *
+ * @see NeuralNetwork#getHash()
+ * @see BattleConfiguration#getKey()
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class FitnessCache implements Evaluator {
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The evaluator used for the networks which are not in the cache.
+		 * </p>
+		 */
+		private Evaluator evaluator;
+
+		/**
+		 * <p>
+		 *     The file where the scores are saved.
+		 * </p>
+		 */
+		private File file;
+
+		/**
+		 * <p>
+		 *     The known scores, by network and battle. A score still being computed is a future not completed,
+		 *     so two identical networks evaluated at the same time fight only once.
+		 * </p>
+		 */
+		private ConcurrentHashMap<String, CompletableFuture<Score>> scores;
+
+		/**
+		 * <p>
+		 *     The number of evaluations answered by the cache.
+		 * </p>
+		 */
+		private AtomicInteger hits;
+
+		/**
+		 * <p>
+		 *     The number of evaluations which needed a battle.
+		 * </p>
+		 */
+		private AtomicInteger misses;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * <p>
+		 *     Create a cache in front of an evaluator, loading the scores saved in the file.
+		 * </p>
+		 *
+		 * @param evaluator the evaluator used for the networks which are not in the cache
+		 * @param file the file where the scores are saved
+		 *
+		 * @throws IOException if the file exists but cannot be read
+		 */
+		public FitnessCache(Evaluator evaluator, File file) throws IOException {
+			this.evaluator = evaluator;
+			this.file = file;
+			scores = new ConcurrentHashMap<>();
+			hits = new AtomicInteger();
+			misses = new AtomicInteger();
+
+			if (file.getAbsoluteFile().getParentFile() != null)
+				file.getAbsoluteFile().getParentFile().mkdirs();
+
+			if (file.exists())
+				try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						StringTokenizer tokens = new StringTokenizer(line, " ");
+						if (tokens.countTokens() < 3)
+							continue;
+
+						String key = tokens.nextToken() + " " + tokens.nextToken();
+						// The scores saved before a change of the components are ignored
+						if (tokens.countTokens() != new Score().getComponents().length)
+							continue;
+
+						int[] components = new int[tokens.countTokens()];
+						for (int i = 0; i < components.length; i++)
+							components[i] = Integer.parseInt(tokens.nextToken());
+						scores.put(key, CompletableFuture.completedFuture(new Score(components)));
+					}
+				}
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Return the known score of a network, or evaluate it if it has never fought this battle.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 *
+		 * @return the score of the individual
+		 *
+		 * @throws IOException if the battle has failed
+		 */
+		@Override
+		public Score evaluate(NeuralNetwork individual, BattleConfiguration battle) throws IOException {
+			return evaluate(individual, battle, null);
+		}
+
+		/**
+		 * <p>
+		 *     Return the known score of a network, or make it race if it has never fought this battle.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 * @param race the race to follow, null to fight the whole battle
+		 *
+		 * @return the score of the individual
+		 *
+		 * @throws IOException if the battle has failed
+		 */
+		@Override
+		public Score evaluate(NeuralNetwork individual, BattleConfiguration battle, Race race) throws IOException {
+			return cached(individual, battle, () -> evaluator.evaluate(individual, battle, race));
+		}
+
+		/**
+		 * <p>
+		 *     Return the known score of a perturbation, or evaluate it if it has never fought this battle.
+		 *     The genome is built here to find its hash, but the evaluator still receives the compact perturbation.
+		 * </p>
+		 *
+		 * @param perturbation the perturbation to test
+		 * @param battle the battle to fight
+		 *
+		 * @return the score of the perturbation
+		 *
+		 * @throws IOException if the battle has failed
+		 */
+		@Override
+		public Score evaluate(Perturbation perturbation, BattleConfiguration battle) throws IOException {
+			return cached(perturbation.apply(), battle, () -> evaluator.evaluate(perturbation, battle));
+		}
+
+		/**
+		 * <p>
+		 *     Return the known score of a network, or run the battle if it has never fought this battle.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 * @param fight the battle, run by the evaluator
+		 *
+		 * @return the score of the individual
+		 *
+		 * @throws IOException if the battle has failed
+		 */
+		private Score cached(NeuralNetwork individual, BattleConfiguration battle, Fight fight) throws IOException {
+			String key = individual.getHash() + " " + battle.getKey();
+
+			CompletableFuture<Score> future = new CompletableFuture<>();
+			CompletableFuture<Score> known;
+			while ((known = scores.putIfAbsent(key, future)) != null) {
+				Score score;
+				try {
+					score = known.get();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException("The battle has been interrupted");
+				} catch (ExecutionException e) {
+					throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+				}
+				if (score.getRounds() >= battle.getNumRounds()) {
+					hits.incrementAndGet();
+					return score;
+				}
+				// A partial score is replaced by the one of this battle
+				if (scores.replace(key, known, future))
+					break;
+			}
+
+			misses.incrementAndGet();
+			try {
+				Score score = fight.run();
+				if (score.getRounds() < battle.getNumRounds()) {
+					// A race stopped early is not remembered, the battles waiting for it fight again
+					scores.remove(key, future);
+					future.complete(score);
+					return score;
+				}
+				future.complete(score);
+				save(key, score);
+				return score;
+			} catch (IOException | RuntimeException e) {
+				// A failed battle is not remembered, it will be fought again
+				scores.remove(key, future);
+				future.completeExceptionally(e);
+				throw e;
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Append a score to the file.
+		 * </p>
+		 *
+		 * @param key the network and the battle
+		 * @param score the score
+		 */
+		private synchronized void save(String key, Score score) {
+			try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+				StringBuilder sb = new StringBuilder(key);
+				for (int component : score.getComponents())
+					sb.append(' ').append(component);
+				out.println(sb);
+			} catch (IOException e) {
+				System.out.println("The fitness cache " + file.getPath() + " cannot be written");
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Print the efficiency of the cache and close the evaluator.
+		 * </p>
+		 */
+		@Override
+		public void close() {
+			System.out.println("Fitness cache: " + hits.get() + " evaluations skipped, " + misses.get() + " battles fought");
+			evaluator.close();
+		}
+
+}
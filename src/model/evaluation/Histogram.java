@@ -0,0 +1,240 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class Histogram.java
+ */
+
+package model.evaluation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ *     A histogram of durations with a bounded relative error, like an HDR histogram: the durations below 128 ns have
+ *     their own bucket, then every power of two is split in 64 buckets of the same width. A duration is known within
+ *     1.6 % from a nanosecond to centuries, with a fixed array of a few thousand counters.
+ * </p>
+ * <p>
+ *     Recording a duration is a few atomic increments, without any lock: all the threads of the battles record
+ *     into the same histogram.
+ * </p>
+ *
+ * @see Telemetry
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class Histogram {
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     The number of bits of a duration kept in its bucket: a power of two is split in 2^(BITS - 1) buckets.
+		 * </p>
+		 */
+		private static final int BITS = 7;
+
+		/**
+		 * <p>
+		 *     The number of buckets of a power of two.
+		 * </p>
+		 */
+		private static final int HALF = 1 << (BITS - 1);
+
+		/**
+		 * <p>
+		 *     The number of buckets, enough for any positive long.
+		 * </p>
+		 */
+		private static final int BUCKETS = 2 * HALF + (Long.SIZE - BITS) * HALF;
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The number of durations of every bucket.
+		 * </p>
+		 */
+		private AtomicLongArray counts;
+
+		/**
+		 * <p>
+		 *     The number of durations recorded.
+		 * </p>
+		 */
+		private AtomicLong count;
+
+		/**
+		 * <p>
+		 *     The sum of the durations recorded (in nanoseconds).
+		 * </p>
+		 */
+		private AtomicLong total;
+
+		/**
+		 * <p>
+		 *     The longest duration recorded (in nanoseconds).
+		 * </p>
+		 */
+		private AtomicLong max;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		public Histogram() {
+			counts = new AtomicLongArray(BUCKETS);
+			count = new AtomicLong();
+			total = new AtomicLong();
+			max = new AtomicLong();
+		}
+
+
+	/*	----- ACCESSORS -----	*/
+
+		/**
+		 * @return the number of durations recorded
+		 */
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * @return the sum of the durations recorded (in nanoseconds)
+		 */
+		public long getTotal() {
+			return total.get();
+		}
+
+		/**
+		 * @return the longest duration recorded (in nanoseconds)
+		 */
+		public long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * @return the mean duration (in nanoseconds), 0 if nothing has been recorded
+		 */
+		public double getMean() {
+			long count = getCount();
+			return count == 0 ? 0 : (double) getTotal() / count;
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Record a duration.
+		 * </p>
+		 *
+		 * @param nanos the duration (in nanoseconds), a negative duration counts as 0
+		 */
+		public void record(long nanos) {
+			long value = Math.max(0, nanos);
+			counts.incrementAndGet(bucket(value));
+			count.incrementAndGet();
+			total.addAndGet(value);
+			max.accumulateAndGet(value, Math::max);
+		}
+
+		/**
+		 * <p>
+		 *     Return the duration below which a part of the durations recorded are.
+		 * </p>
+		 *
+		 * @param percentile the part of the durations, from 0 to 100
+		 *
+		 * @return the highest duration of the bucket of the percentile (in nanoseconds), 0 if nothing has been recorded
+		 */
+		public long getValueAtPercentile(double percentile) {
+			long count = getCount();
+			if (count == 0)
+				return 0;
+
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts.get(i);
+				if (seen >= rank)
+					return Math.min(highest(i), getMax());
+			}
+			return getMax();
+		}
+
+		/**
+		 * <p>
+		 *     Copy the durations recorded until now. Durations may be recorded at the same time: one of them may be
+		 *     partly copied, but it is whole in the next copy.
+		 * </p>
+		 *
+		 * @return a copy of the histogram
+		 */
+		public Histogram snapshot() {
+			Histogram copy = new Histogram();
+			for (int i = 0; i < BUCKETS; i++)
+				copy.counts.set(i, counts.get(i));
+			copy.count.set(getCount());
+			copy.total.set(getTotal());
+			copy.max.set(getMax());
+			return copy;
+		}
+
+		/**
+		 * <p>
+		 *     Return the durations recorded since an earlier copy of this histogram.
+		 *     The longest of them is only known within the width of its bucket.
+		 * </p>
+		 *
+		 * @param previous the earlier copy
+		 *
+		 * @return the histogram of the durations recorded since the copy
+		 */
+		public Histogram since(Histogram previous) {
+			Histogram interval = new Histogram();
+			int highest = -1;
+			for (int i = 0; i < BUCKETS; i++) {
+				long count = counts.get(i) - previous.counts.get(i);
+				interval.counts.set(i, count);
+				if (count > 0)
+					highest = i;
+			}
+			interval.count.set(getCount() - previous.getCount());
+			interval.total.set(getTotal() - previous.getTotal());
+			interval.max.set(highest < 0 ? 0 : Math.min(highest(highest), getMax()));
+			return interval;
+		}
+
+		/**
+		 * @param value a duration
+		 *
+		 * @return the bucket of the duration
+		 */
+		private static int bucket(long value) {
+			if (value < 2 * HALF)
+				return (int) value;
+
+			// The duration is shifted to keep its BITS highest bits, from HALF to 2 * HALF - 1
+			int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - BITS;
+			return 2 * HALF + (shift - 1) * HALF + (int) ((value >>> shift) - HALF);
+		}
+
+		/**
+		 * @param bucket a bucket
+		 *
+		 * @return the highest duration of the bucket
+		 */
+		private static long highest(int bucket) {
+			if (bucket < 2 * HALF)
+				return bucket;
+
+			int shift = (bucket - 2 * HALF) / HALF + 1;
+			long sub = (bucket - 2 * HALF) % HALF + HALF;
+			return ((sub + 1) << shift) - 1;
+		}
+
+}
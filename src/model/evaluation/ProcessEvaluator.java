@@ -0,0 +1,171 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class ProcessEvaluator.java
+ */
+
+package model.evaluation;
+
+import controller.Darwini;
+import model.genetic.Score;
+import model.perceptron.NeuralNetwork;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>
+ *     The historical fitness backend: every evaluation launches a new Robocode JVM and reads the results file it writes.
+ *     It is slow (JVM startup and robot repository scan for every battle) but it does not need Robocode in the classpath
+ *     of the genetic algorithm. It is kept as a fallback of the EngineEvaluator.
+ * </p>
+ * <p>
+ *     Every Robocode process works in its own sandbox, so as many battles as sandboxes can be run at the same time.
+ *     The results are only known at the end of the process, so the races are not followed: the whole battle is fought.
+ * </p>
+ *
+ * @see EngineEvaluator
+ * @see Sandbox
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class ProcessEvaluator implements Evaluator {
+
+	/*	----- PATHS -----	*/
+
+		/**
+		 * <p>
+		 *     The directory containing the Robocode library.
+		 * </p>
+		 */
+		private static final String ROBOCODE_PATH = "libs/robocode.jar";
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The sandboxes which are not used by a battle.
+		 * </p>
+		 */
+		private BlockingQueue<Sandbox> sandboxes;
+
+		/**
+		 * <p>
+		 *     The deadlines of the battles, a hung Robocode process is killed.
+		 * </p>
+		 */
+		private Watchdog watchdog;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * <p>
+		 *     Create the sandboxes of the workers.
+		 * </p>
+		 *
+		 * @param workers the number of battles which can be run at the same time
+		 *
+		 * @throws IOException if a sandbox cannot be created
+		 */
+		public ProcessEvaluator(int workers) throws IOException {
+			sandboxes = new ArrayBlockingQueue<>(workers);
+			watchdog = new Watchdog();
+			for (int i = 0; i < workers; i++)
+				sandboxes.add(new Sandbox(i + 1));
+			Telemetry.setConcurrency(workers);
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Evaluate an individual in a new Robocode process, in the first free sandbox.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 *
+		 * @return the score of the individual
+		 *
+		 * @throws IOException if the process cannot be launched, if it has been killed after its deadline,
+		 *                     or if it has failed without writing its results
+		 */
+		@Override
+		public Score evaluate(NeuralNetwork individual, BattleConfiguration battle) throws IOException {
+			Sandbox sandbox;
+			try {
+				sandbox = sandboxes.take();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("The battle has been interrupted");
+			}
+
+			try {
+				individual.writeBinary(sandbox.getPerceptronFile());
+				if (battle.getChampion() != null)
+					battle.getChampion().writeBinary(sandbox.getChampionFile());
+				battle.write(sandbox.getBattleFile());
+				sandbox.clearResults();
+
+				// Launch the test in Robocode, in the sandbox directory
+				// The robot writes its counters in the sandbox, they are read with the results
+				long start = System.nanoTime();
+				Process process = new ProcessBuilder("java", "-Xmx512M", "-DNOSECURITY=true", "-D" + Darwini.COUNTERS_PROPERTY + "=true",
+						"-DWORKINGDIRECTORY=" + sandbox.getRobocodeDirectory().getPath(),
+						"-cp", new File(ROBOCODE_PATH).getAbsolutePath(), "robocode.Robocode", "-nosound", "-nodisplay",
+						"-battle", sandbox.getBattleFile().getPath(), "-results", sandbox.getResultsFile().getPath())
+						.directory(sandbox.getDirectory())
+						.redirectErrorStream(true)
+						.redirectOutput(sandbox.getLogFile())
+						.start();
+				Telemetry.record(Telemetry.Stage.SPAWN, start);
+				// The battle includes the loading of Robocode, which cannot be told apart from outside the process
+				start = System.nanoTime();
+				Watchdog.Deadline deadline = watchdog.start(battle.getNumRounds(), process::destroyForcibly);
+				try {
+					process.waitFor();
+				} catch (InterruptedException e) {
+					process.destroyForcibly();
+					throw e;
+				} finally {
+					deadline.cancel();
+					Telemetry.record(Telemetry.Stage.BATTLE, start);
+				}
+				if (deadline.isExpired())
+					throw new IOException("The Robocode process of the sandbox " + sandbox.getWorker() + " has been killed after its deadline of "
+							+ deadline.getDelay() / 1000 + " s, see " + sandbox.getLogFile());
+				// A process which has crashed may have written no results, or only a part of them
+				if (process.exitValue() != 0 || !sandbox.getResultsFile().exists())
+					throw new IOException("The Robocode process of the sandbox " + sandbox.getWorker() + " has failed (exit code "
+							+ process.exitValue() + "), see " + sandbox.getLogFile());
+				deadline.done(battle.getNumRounds());
+
+				// At the end of the battle, the robot saves the number of shot in a txt file.
+				start = System.nanoTime();
+				Score score = new Score(sandbox.getResultsFile().getPath(), "Darwini");
+				Telemetry.record(Telemetry.Stage.PARSE, start);
+				return score;
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("The battle has been interrupted");
+			} finally {
+				sandboxes.add(sandbox);
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Nothing to release, every process ends with its battle.
+		 * </p>
+		 */
+		@Override
+		public void close() {
+		}
+
+}
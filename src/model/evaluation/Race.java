@@ -0,0 +1,229 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class Race.java
+ */
+
+package model.evaluation;
+
+/**
+ * <p>
+ *     A race between a candidate and the current elite: the weighted score of the candidate is given round by round,
+ *     and the battle can be stopped as soon as a statistical bound shows that the candidate cannot beat the elite.
+ *     Most of the children are much worse than the elite, so most of their rounds are not fought.
+ * </p>
+ * <p>
+ *     Two bounds are available:
+ * </p>
+ * <ul>
+ *     <li>HOEFFDING: the candidate is stopped when the upper confidence bound of its mean round score is under the
+ *     target. It only assumes the round scores are in [0, range], so it is safe but needs many rounds.</li>
+ *     <li>SPRT: a sequential probability ratio test between "the candidate is as good as the target" and
+ *     "the candidate is worse than the target by a tenth of the range", with the variance of its rounds.
+ *     It stops the hopeless candidates after a few rounds.</li>
+ * </ul>
+ * <p>
+ *     A race never stops a candidate before {@link #MIN_ROUNDS} rounds, and never stops a candidate to accept it:
+ *     the promising candidates always fight the whole battle.
+ * </p>
+ *
+ * @see Evaluator#evaluate(model.perceptron.NeuralNetwork, BattleConfiguration, Race)
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class Race {
+
+	/**
+	 * <p>
+	 *     The statistical bounds which can stop a race.
+	 * </p>
+	 */
+	public enum Bound {
+		HOEFFDING, SPRT
+	}
+
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     The number of rounds fought before the race can be stopped.
+		 * </p>
+		 */
+		public static final int MIN_ROUNDS = 3;
+
+		/**
+		 * <p>
+		 *     The difference with the target, as a part of the range, of a candidate considered as worse (SPRT).
+		 * </p>
+		 */
+		private static final double INDIFFERENCE = 0.1;
+
+		/**
+		 * <p>
+		 *     The smallest standard deviation of the round scores, as a part of the range (SPRT).
+		 *     It avoids stopping a candidate because its first rounds were identical.
+		 * </p>
+		 */
+		private static final double MIN_DEVIATION = 0.05;
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The bound used to stop the race.
+		 * </p>
+		 */
+		private Bound bound;
+
+		/**
+		 * <p>
+		 *     The mean round score the candidate must reach.
+		 * </p>
+		 */
+		private double target;
+
+		/**
+		 * <p>
+		 *     The highest score of a round.
+		 * </p>
+		 */
+		private double range;
+
+		/**
+		 * <p>
+		 *     The probability to stop a candidate which is as good as the target.
+		 * </p>
+		 */
+		private double risk;
+
+		/**
+		 * <p>
+		 *     The number of rounds given to the race.
+		 * </p>
+		 */
+		private int rounds;
+
+		/**
+		 * <p>
+		 *     The sum of the round scores.
+		 * </p>
+		 */
+		private double sum;
+
+		/**
+		 * <p>
+		 *     The sum of the squares of the round scores.
+		 * </p>
+		 */
+		private double sumOfSquares;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * @param bound the bound used to stop the race
+		 * @param target the mean round score the candidate must reach
+		 * @param range the highest score of a round
+		 * @param risk the probability to stop a candidate which is as good as the target
+		 */
+		public Race(Bound bound, double target, double range, double risk) {
+			this.bound = bound;
+			this.target = target;
+			this.range = range;
+			this.risk = risk;
+		}
+
+
+		/**
+		 * <p>
+		 *     Start the same race again, for a battle fought again after a failure.
+		 * </p>
+		 *
+		 * @param race the race to start again
+		 */
+		public Race(Race race) {
+			this(race.bound, race.target, race.range, race.risk);
+		}
+
+
+	/*	----- ACCESSORS -----	*/
+
+		/**
+		 * @return the bound used to stop the race
+		 */
+		public Bound getBound() {
+			return bound;
+		}
+
+		/**
+		 * @return the mean round score the candidate must reach
+		 */
+		public double getTarget() {
+			return target;
+		}
+
+		/**
+		 * @return the highest score of a round
+		 */
+		public double getRange() {
+			return range;
+		}
+
+		/**
+		 * @return the probability to stop a candidate which is as good as the target
+		 */
+		public double getRisk() {
+			return risk;
+		}
+
+		/**
+		 * @return the number of rounds given to the race
+		 */
+		public int getRounds() {
+			return rounds;
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Give the score of the last round of the candidate.
+		 * </p>
+		 *
+		 * @param score the weighted score of the round, bounded to [0, range]
+		 */
+		public void addRound(double score) {
+			score = Math.max(0, Math.min(range, score));
+			rounds++;
+			sum += score;
+			sumOfSquares += score * score;
+		}
+
+		/**
+		 * <p>
+		 *     Tell if the candidate cannot beat the target anymore, so its battle can be stopped.
+		 * </p>
+		 *
+		 * @return true if the bound shows the candidate is worse than the target
+		 */
+		public boolean isLost() {
+			if (rounds < MIN_ROUNDS)
+				return false;
+
+			double mean = sum / rounds;
+			if (bound == Bound.HOEFFDING)
+				return mean + range * Math.sqrt(Math.log(1 / risk) / (2 * rounds)) < target;
+
+			// Log-likelihood ratio of "mean = target" against "mean = target - indifference" for normal round scores
+			double indifference = INDIFFERENCE * range;
+			double variance = Math.max((sumOfSquares - rounds * mean * mean) / (rounds - 1), Math.pow(MIN_DEVIATION * range, 2));
+			double logLikelihoodRatio = indifference / variance * (sum - rounds * (target - indifference / 2));
+			return logLikelihoodRatio <= Math.log(risk / (1 - risk));
+		}
+
+}
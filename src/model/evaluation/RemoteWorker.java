@@ -0,0 +1,280 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class RemoteWorker.java
+ */
+
+package model.evaluation;
+
+import model.perceptron.NeuralNetwork;
+import model.perceptron.Perturbation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.StringTokenizer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ *     An evaluation worker of a Coordinator, on the same machine or on another one.
+ *     It loads Robocode once in its own sandbox, connects to the coordinator, then fights the battles it receives
+ *     and sends back their scores, following the WorkerProtocol. A heartbeat is sent during the battles.
+ * </p>
+ * <p>
+ *     The battles are fought on their own thread, so the messages of the coordinator are still read during a battle:
+ *     a battle whose score the coordinator already has from a copy is cancelled, and the worker is free again.
+ * </p>
+ * <p>
+ *     When the connection is lost, or when the heartbeat cannot be sent anymore because the coordinator has dropped
+ *     this worker, the worker connects again, waiting longer after every failed attempt (up to
+ *     {@link #MAX_RECONNECT_DELAY} ms). It only stops when the coordinator tells it to.
+ * </p>
+ *
+ * <pre>
+ * java model.evaluation.RemoteWorker &lt;coordinator host&gt; &lt;coordinator port&gt; &lt;worker number&gt;
+ * </pre>
+ * <p>
+ *     It is run from the project directory (with the robots compiled in out/production/Darwini). Several workers can
+ *     run on the same machine with different numbers, each one has its own sandbox work/worker&lt;number&gt;.
+ * </p>
+ *
+ * @see Coordinator
+ * @see WorkerProtocol
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class RemoteWorker {
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     The time before trying again to connect to a coordinator which is not started, in milliseconds.
+		 * </p>
+		 */
+		private static final long RECONNECT_DELAY = 2000;
+
+		/**
+		 * <p>
+		 *     The longest time between two attempts to connect, in milliseconds. The delay doubles after every failed
+		 *     attempt, and starts again from {@link #RECONNECT_DELAY} after a connection which has lasted longer than it.
+		 * </p>
+		 */
+		private static final long MAX_RECONNECT_DELAY = 60000;
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The last center of the perturbations, with its noise table, kept from a connection to the next one.
+		 * </p>
+		 */
+		private static Perturbation center;
+
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String host = args.length > 0 ? args[0] : "localhost";
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : Coordinator.DEFAULT_PORT;
+		int number = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+		// Robocode replaces the standard output by a guarded stream
+		PrintStream log = System.out;
+		Sandbox sandbox = new Sandbox(number);
+		EngineEvaluator evaluator = new EngineEvaluator(sandbox.getRobocodeDirectory(), sandbox.getPerceptronFile());
+
+		long delay = RECONNECT_DELAY;
+		while (true) {
+			Socket socket;
+			try {
+				socket = new Socket(host, port);
+			} catch (IOException e) {
+				Thread.sleep(delay);
+				delay = Math.min(2 * delay, MAX_RECONNECT_DELAY);
+				continue;
+			}
+			log.println("Worker n°" + number + " connected to " + host + ":" + port);
+
+			long start = System.currentTimeMillis();
+			boolean quit;
+			try {
+				quit = serve(socket, evaluator, log, number);
+			} catch (IOException e) {
+				quit = false;
+			}
+			if (quit)
+				break;
+
+			if (System.currentTimeMillis() - start > delay)
+				delay = RECONNECT_DELAY;
+			log.println("Worker n°" + number + " disconnected, connecting again in " + delay / 1000 + " s");
+			Thread.sleep(delay);
+			delay = Math.min(2 * delay, MAX_RECONNECT_DELAY);
+		}
+
+		log.println("Worker n°" + number + " stopped by the coordinator");
+		evaluator.close();
+		// Robocode leaves some threads alive
+		System.exit(0);
+	}
+
+	/**
+	 * <p>
+	 *     Fight the battles sent by the coordinator on a connection, until it is lost or the coordinator says to stop.
+	 * </p>
+	 *
+	 * @param socket the connection to the coordinator
+	 * @param evaluator the Robocode engine of the worker
+	 * @param log the standard output
+	 * @param number the number of the worker
+	 *
+	 * @return true if the coordinator has told the worker to stop, false if the connection is lost
+	 *
+	 * @throws IOException if the connection is broken
+	 */
+	private static boolean serve(Socket socket, EngineEvaluator evaluator, PrintStream log, int number) throws IOException {
+		try {
+			socket.setTcpNoDelay(true);
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+			// The battle of the worker, and its identifier (-1 between two battles)
+			ExecutorService fights = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "Battle");
+				thread.setDaemon(true);
+				return thread;
+			});
+			AtomicLong fighting = new AtomicLong(-1), cancelled = new AtomicLong(-1);
+
+			ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "Heartbeat");
+				thread.setDaemon(true);
+				return thread;
+			});
+			heartbeat.scheduleAtFixedRate(() -> {
+				// The coordinator has dropped this worker (lost, or hung in a battle): the connection is opened again
+				if (!send(out, WorkerProtocol.HEARTBEAT)) {
+					log.println("Worker n°" + number + " dropped by the coordinator");
+					heartbeat.shutdown();
+					close(socket);
+				}
+			}, Coordinator.HEARTBEAT_PERIOD, Coordinator.HEARTBEAT_PERIOD, TimeUnit.MILLISECONDS);
+
+			try {
+				send(out, WorkerProtocol.READY);
+
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.equals(WorkerProtocol.QUIT))
+						return true;
+
+					StringTokenizer tokens = new StringTokenizer(line, " ");
+					String command = tokens.nextToken();
+					if (command.equals(WorkerProtocol.CENTER)) {
+						center = WorkerProtocol.readCenter(tokens, center == null ? null : center.getTable());
+						continue;
+					}
+					if (command.equals(WorkerProtocol.CANCEL)) {
+						// A copy of the battle has ended first: this one ends now, its answer is ignored
+						long id = Long.parseLong(tokens.nextToken());
+						cancelled.set(id);
+						if (fighting.get() == id)
+							evaluator.abort();
+						continue;
+					}
+					if (!command.equals(WorkerProtocol.EVALUATE) && !command.equals(WorkerProtocol.PERTURB)) {
+						log.println("Unknown command " + command);
+						continue;
+					}
+
+					long id = Long.parseLong(tokens.nextToken());
+					Fight fight;
+					try {
+						if (command.equals(WorkerProtocol.PERTURB)) {
+							NeuralNetwork individual = WorkerProtocol.readPerturbation(tokens, center).apply();
+							BattleConfiguration battle = WorkerProtocol.readBattle(tokens);
+							fight = () -> evaluator.evaluate(individual, battle);
+						} else {
+							NeuralNetwork individual = WorkerProtocol.readGenome(tokens);
+							BattleConfiguration battle = WorkerProtocol.readBattle(tokens);
+							Race race = WorkerProtocol.readRace(tokens);
+							fight = () -> evaluator.evaluate(individual, battle, race);
+						}
+					} catch (RuntimeException e) {
+						send(out, WorkerProtocol.ERROR + " " + id + " " + e);
+						continue;
+					}
+
+					fighting.set(id);
+					fights.submit(() -> {
+						try {
+							if (cancelled.get() == id)
+								send(out, WorkerProtocol.ERROR + " " + id + " cancelled");
+							else
+								send(out, WorkerProtocol.score(id, fight.run()));
+						} catch (IOException | RuntimeException e) {
+							send(out, WorkerProtocol.ERROR + " " + id + " " + e);
+						} finally {
+							fighting.compareAndSet(id, -1);
+						}
+					});
+				}
+				return false;
+			} finally {
+				heartbeat.shutdownNow();
+				// The coordinator fights the battle of a lost connection again
+				if (fighting.get() != -1)
+					evaluator.abort();
+				fights.shutdown();
+			}
+		} finally {
+			close(socket);
+		}
+	}
+
+	/**
+	 * <p>
+	 *     Send a message to the coordinator, from the battle thread or from the heartbeat thread.
+	 * </p>
+	 *
+	 * @param out the connection to the coordinator
+	 * @param message the message
+	 *
+	 * @return false if the connection is broken
+	 */
+	private static boolean send(PrintWriter out, String message) {
+		synchronized (out) {
+			out.println(message);
+			out.flush();
+			return !out.checkError();
+		}
+	}
+
+	/**
+	 * <p>
+	 *     Close the connection to the coordinator.
+	 * </p>
+	 *
+	 * @param socket the connection
+	 */
+	private static void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Already closed
+		}
+	}
+
+}
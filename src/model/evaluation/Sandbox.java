@@ -0,0 +1,281 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class Sandbox.java
+ */
+
+package model.evaluation;
+
+import controller.Darwini;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ *     An isolated working directory for one evaluation worker.
+ *     A sandbox has its own copy of the Robocode working directory (config and robots), its own copy of the compiled
+ *     Darwini robot (so its own Darwini.data directory and perceptron), its own battle file and its own results files.
+ *     Several battles can then be run at the same time without sharing any file.
+ * </p>
+ *
+ * <pre>
+ * work/worker1/
+ *     robocode/       the Robocode working directory (config, robots)
+ *     bin/            the compiled robots of the project, Darwini.data is in bin/controller/
+ *     test.battle     the battle to fight
+ *     results.txt     the results written by Robocode
+ *     accuracy.txt    the counters written by Darwini at the end of the battle
+ *     dodge.txt
+ *     behaviour.txt
+ * </pre>
+ *
+ * @see ProcessEvaluator
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class Sandbox {
+
+	/*	----- PATHS -----	*/
+
+		/**
+		 * <p>
+		 *     The directory containing all the sandboxes.
+		 * </p>
+		 */
+		public static final String WORK_DIRECTORY = "work/";
+
+		/**
+		 * <p>
+		 *     The Robocode working directory copied in every sandbox.
+		 * </p>
+		 */
+		private static final String ROBOCODE_HOME = "data";
+
+		/**
+		 * <p>
+		 *     The directory where the project robots are compiled.
+		 *     This directory can change if you use Eclipse or IntelliJ.
+		 *     Currently, it is set to IntelliJ configuration.
+		 * </p>
+		 */
+		private static final String ROBOT_CLASSES = "out/production/Darwini";
+
+		/**
+		 * <p>
+		 *     The data directory of Darwini, relative to the compiled robots.
+		 * </p>
+		 */
+		private static final String ROBOT_DATA = "controller/Darwini.data/";
+
+		/**
+		 * <p>
+		 *     The data directory of the Champion robot, relative to the compiled robots.
+		 * </p>
+		 */
+		private static final String CHAMPION_DATA = "controller/" + EngineEvaluator.CHAMPION_DATA;
+
+		/**
+		 * <p>
+		 *     The counters written by the robot in the current directory at the end of a battle.
+		 * </p>
+		 */
+		private static final String[] COUNTERS_FILES = {"accuracy.txt", "dodge.txt", "behaviour.txt"};
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The root of the sandbox, also the current directory of the battles.
+		 * </p>
+		 */
+		private File directory;
+
+		/**
+		 * <p>
+		 *     The number of the worker using this sandbox.
+		 * </p>
+		 */
+		private int worker;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * <p>
+		 *     Create (or recreate) the sandbox of a worker by copying the Robocode working directory and the compiled robots.
+		 * </p>
+		 *
+		 * @param worker the number of the worker
+		 *
+		 * @throws IOException if the sandbox cannot be created
+		 */
+		public Sandbox(int worker) throws IOException {
+			this.worker = worker;
+			directory = new File(WORK_DIRECTORY + "worker" + worker).getAbsoluteFile();
+
+			delete(directory.toPath());
+			copy(new File(ROBOCODE_HOME, "config").toPath(), new File(getRobocodeDirectory(), "config").toPath());
+			copy(new File(ROBOCODE_HOME, "robots").toPath(), new File(getRobocodeDirectory(), "robots").toPath());
+			copy(new File(ROBOT_CLASSES).toPath(), getRobotClassesDirectory().toPath());
+			getPerceptronFile().getParentFile().mkdirs();
+			getChampionFile().getParentFile().mkdirs();
+
+			// The development robots (Darwini*) are now the copy of the sandbox
+			File configuration = new File(getRobocodeDirectory(), "config/robocode.properties");
+			Properties properties = new Properties();
+			if (configuration.exists())
+				try (InputStream is = new FileInputStream(configuration)) {
+					properties.load(is);
+				}
+			properties.setProperty("robocode.options.development.path", getRobotClassesDirectory().getPath());
+			configuration.getParentFile().mkdirs();
+			try (OutputStream os = new FileOutputStream(configuration)) {
+				properties.store(os, "Sandbox of the worker " + worker);
+			}
+		}
+
+
+	/*	----- ACCESSORS -----	*/
+
+		/**
+		 * @return the number of the worker using this sandbox
+		 */
+		public int getWorker() {
+			return worker;
+		}
+
+		/**
+		 * @return the root of the sandbox, used as current directory of the battles
+		 */
+		public File getDirectory() {
+			return directory;
+		}
+
+		/**
+		 * @return the Robocode working directory of the sandbox
+		 */
+		public File getRobocodeDirectory() {
+			return new File(directory, "robocode");
+		}
+
+		/**
+		 * @return the directory of the compiled robots of the sandbox
+		 */
+		public File getRobotClassesDirectory() {
+			return new File(directory, "bin");
+		}
+
+		/**
+		 * @return the binary perceptron loaded by the Darwini robot of the sandbox
+		 */
+		public File getPerceptronFile() {
+			return new File(getRobotClassesDirectory(), ROBOT_DATA + Darwini.PERCEPTRON_BINARY);
+		}
+
+		/**
+		 * @return the binary perceptron loaded by the Champion robot of the sandbox
+		 */
+		public File getChampionFile() {
+			return new File(getRobotClassesDirectory(), CHAMPION_DATA + Darwini.PERCEPTRON_BINARY);
+		}
+
+		/**
+		 * @return the battle file of the sandbox
+		 */
+		public File getBattleFile() {
+			return new File(directory, "test.battle");
+		}
+
+		/**
+		 * @return the results file written by Robocode in the sandbox
+		 */
+		public File getResultsFile() {
+			return new File(directory, "results.txt");
+		}
+
+		/**
+		 * @return the log file of the Robocode processes of the sandbox
+		 */
+		public File getLogFile() {
+			return new File(directory, "robocode.log");
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Delete the results and the counters of the last battle, so a Robocode process which fails cannot leave
+		 *     them to be read as the results of the next battle.
+		 * </p>
+		 *
+		 * @throws IOException if a file cannot be deleted
+		 */
+		public void clearResults() throws IOException {
+			Files.deleteIfExists(getResultsFile().toPath());
+			for (String counters : COUNTERS_FILES)
+				Files.deleteIfExists(new File(directory, counters).toPath());
+		}
+
+		/**
+		 * <p>
+		 *     Copy a directory and all its content, except the robot database which Robocode rebuilds for the sandbox.
+		 * </p>
+		 *
+		 * @param source the directory to copy
+		 * @param target the copy
+		 *
+		 * @throws IOException if a file cannot be copied
+		 */
+		private static void copy(Path source, Path target) throws IOException {
+			if (!Files.exists(source))
+				return;
+
+			try (Stream<Path> paths = Files.walk(source)) {
+				for (Path path : (Iterable<Path>) paths::iterator) {
+					if (path.getFileName().toString().equals("robot.database"))
+						continue;
+
+					Path copy = target.resolve(source.relativize(path).toString());
+					if (Files.isDirectory(path))
+						Files.createDirectories(copy);
+					else
+						Files.copy(path, copy, StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Delete a directory and all its content.
+		 * </p>
+		 *
+		 * @param directory the directory to delete
+		 *
+		 * @throws IOException if a file cannot be deleted
+		 */
+		private static void delete(Path directory) throws IOException {
+			if (!Files.exists(directory))
+				return;
+
+			try (Stream<Path> paths = Files.walk(directory)) {
+				for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+					Files.delete(path);
+			}
+		}
+
+}
@@ -0,0 +1,346 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class Telemetry.java
+ */
+
+package model.evaluation;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ *     The metrics of a run: the time spent in every stage of an evaluation and of a generation, where the wall-clock
+ *     time goes. Every stage keeps a histogram of its durations since the start of the run; a report subtracts the copy
+ *     of the histograms taken by the previous report, so a duration recorded during a report is not lost.
+ * </p>
+ * <p>
+ *     The evaluators and the optimizers of the run record into the same metrics from all their threads. A report,
+ *     written at the end of every generation, covers the time since the previous report: the reports of a run follow
+ *     each other without a gap. When several populations evolve at the same time, the IslandModel reports once per
+ *     generation of all of them.
+ * </p>
+ * <p>
+ *     The report is a JSON line appended to a file, for example:
+ * </p>
+ * <pre>
+ * {"source":"data/population/","generation":3,"time":1540000000000,"interval_ms":7230.0,"evaluations":6,
+ *  "evaluations_per_second":0.83,"concurrency":2,"utilisation":0.95,"max_queue_depth":4,
+ *  "stages":{"battle":{"count":6,"total_ms":13120.5,"mean_ms":2186.7,"p50_ms":2147.5,"p90_ms":2415.9,"p99_ms":2415.9,"max_ms":2409.1},...},
+ *  "run":{...}}
+ * </pre>
+ *
+ * @see Histogram
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class Telemetry {
+
+	/**
+	 * <p>
+	 *     The stages of a run.
+	 * </p>
+	 */
+	public enum Stage {
+
+		/**
+		 * <p>
+		 *     The start of a Robocode process, of a worker JVM or of an embedded engine.
+		 * </p>
+		 */
+		SPAWN,
+
+		/**
+		 * <p>
+		 *     A battle, from its start to its end in Robocode.
+		 * </p>
+		 */
+		BATTLE,
+
+		/**
+		 * <p>
+		 *     The reading of the results of a battle.
+		 * </p>
+		 */
+		PARSE,
+
+		/**
+		 * <p>
+		 *     An evaluation asked by an optimizer, from its call to its score: the wait for a free worker,
+		 *     the battle and the retries.
+		 * </p>
+		 */
+		EVALUATION,
+
+		/**
+		 * <p>
+		 *     The breeding of the children of a generation: selection, crossover, mutation and pre-screening.
+		 * </p>
+		 */
+		BREEDING,
+
+		/**
+		 * <p>
+		 *     The copy of a parent's genome into a child.
+		 * </p>
+		 */
+		COPY;
+
+		/**
+		 * @return the name of the stage in the reports
+		 */
+		public String getKey() {
+			return name().toLowerCase(Locale.US);
+		}
+	}
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The durations of every stage since the start of the run.
+		 * </p>
+		 */
+		private static final Histogram[] run = histograms();
+
+		/**
+		 * <p>
+		 *     The copy of the durations of every stage at the last report.
+		 * </p>
+		 */
+		private static Histogram[] reported = histograms();
+
+		/**
+		 * <p>
+		 *     The start of the run and the time of the last report (System.nanoTime()).
+		 * </p>
+		 */
+		private static long start = System.nanoTime(), last = start;
+
+		/**
+		 * <p>
+		 *     The number of evaluations which can run at the same time.
+		 * </p>
+		 */
+		private static volatile int concurrency = 1;
+
+		/**
+		 * <p>
+		 *     The number of evaluations waiting for a free worker, and its maximum since the last report.
+		 * </p>
+		 */
+		private static final AtomicInteger queueDepth = new AtomicInteger(), maxQueueDepth = new AtomicInteger();
+
+		/**
+		 * <p>
+		 *     The time spent in battles by every thread since its last call to {@link #takeBattleTime()}.
+		 * </p>
+		 */
+		private static final ThreadLocal<long[]> battleTime = ThreadLocal.withInitial(() -> new long[1]);
+
+		/**
+		 * <p>
+		 *     The number of battles fought by every thread since its last call to {@link #takeBattles()}.
+		 * </p>
+		 */
+		private static final ThreadLocal<int[]> battles = ThreadLocal.withInitial(() -> new int[1]);
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		private Telemetry() {
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Record the duration of a stage which has just ended.
+		 * </p>
+		 *
+		 * @param stage the stage
+		 * @param start the start of the stage (System.nanoTime())
+		 */
+		public static void record(Stage stage, long start) {
+			long duration = System.nanoTime() - start;
+			run[stage.ordinal()].record(duration);
+			if (stage == Stage.BATTLE) {
+				battleTime.get()[0] += duration;
+				battles.get()[0]++;
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Return the time spent in battles by the current thread, and start counting again.
+		 *     The evaluators record their battles in the thread which asked for them, so an optimizer measures
+		 *     the battles of its evaluations without the wait for a free worker nor a score found in the cache.
+		 * </p>
+		 *
+		 * @return the time spent in battles since the last call, in nanoseconds
+		 */
+		public static long takeBattleTime() {
+			long[] time = battleTime.get();
+			long battles = time[0];
+			time[0] = 0;
+			return battles;
+		}
+
+		/**
+		 * <p>
+		 *     Return the number of battles fought for the current thread, and start counting again.
+		 *     A score found in the cache is not a battle, a battle which has failed in Robocode is one.
+		 * </p>
+		 *
+		 * @return the number of battles since the last call
+		 */
+		public static int takeBattles() {
+			int[] count = battles.get();
+			int fought = count[0];
+			count[0] = 0;
+			return fought;
+		}
+
+		/**
+		 * <p>
+		 *     Set the number of evaluations which can run at the same time, to measure how busy they are.
+		 * </p>
+		 *
+		 * @param concurrency the number of evaluations at the same time
+		 */
+		public static void setConcurrency(int concurrency) {
+			Telemetry.concurrency = Math.max(1, concurrency);
+		}
+
+		/**
+		 * @return the number of evaluations which can run at the same time
+		 */
+		public static int getConcurrency() {
+			return concurrency;
+		}
+
+		/**
+		 * <p>
+		 *     Count the evaluations which start or stop waiting for a free worker.
+		 * </p>
+		 *
+		 * @param delta 1 when an evaluation starts waiting, -1 when it stops
+		 */
+		public static void queue(int delta) {
+			int depth = queueDepth.addAndGet(delta);
+			maxQueueDepth.accumulateAndGet(depth, Math::max);
+		}
+
+		/**
+		 * <p>
+		 *     Write the report of the time since the last report, and start a new one.
+		 * </p>
+		 *
+		 * @param source the population which reports (its directory)
+		 * @param generation the generation which has just ended
+		 * @param file the file where the JSON line is appended
+		 *
+		 * @return a short summary of the report, to print
+		 */
+		public static synchronized String report(String source, int generation, File file) {
+			long now = System.nanoTime();
+			Histogram[] total = new Histogram[run.length];
+			Histogram[] histograms = new Histogram[run.length];
+			for (int i = 0; i < run.length; i++) {
+				total[i] = run[i].snapshot();
+				histograms[i] = total[i].since(reported[i]);
+			}
+			reported = total;
+			double seconds = (now - last) / 1e9;
+			last = now;
+
+			Histogram evaluations = histograms[Stage.EVALUATION.ordinal()];
+			Histogram battles = histograms[Stage.BATTLE.ordinal()];
+			// The workers are busy from their start to the score, the wait for a free worker excluded
+			long busy = histograms[Stage.SPAWN.ordinal()].getTotal() + battles.getTotal() + histograms[Stage.PARSE.ordinal()].getTotal();
+			double throughput = seconds == 0 ? 0 : evaluations.getCount() / seconds;
+			double utilisation = seconds == 0 ? 0 : busy / 1e9 / (seconds * concurrency);
+			int maxQueue = maxQueueDepth.getAndSet(queueDepth.get());
+
+			StringBuilder json = new StringBuilder("{");
+			json.append("\"source\":\"").append(source.replace("\\", "/").replace("\"", "'")).append("\",");
+			json.append("\"generation\":").append(generation).append(',');
+			json.append("\"time\":").append(System.currentTimeMillis()).append(',');
+			json.append("\"interval_ms\":").append(format(seconds * 1000)).append(',');
+			json.append("\"evaluations\":").append(evaluations.getCount()).append(',');
+			json.append("\"evaluations_per_second\":").append(format(throughput)).append(',');
+			json.append("\"concurrency\":").append(concurrency).append(',');
+			json.append("\"utilisation\":").append(format(utilisation)).append(',');
+			json.append("\"max_queue_depth\":").append(maxQueue).append(',');
+			json.append("\"stages\":");
+			append(json, histograms);
+			json.append(",\"run\":{\"time_ms\":").append(format((now - start) / 1e6)).append(",\"stages\":");
+			append(json, total);
+			json.append("}}");
+
+			try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file, true)))) {
+				out.println(json);
+			} catch (IOException e) {
+				System.out.println("The telemetry cannot be written in " + file.getPath() + ": " + e.getMessage());
+			}
+
+			return String.format(Locale.US, "%.2f evaluations/s, battles p50 %.1f s p99 %.1f s, %.0f%% of %d workers busy, %d waiting at most, breeding %.0f ms",
+					throughput, battles.getValueAtPercentile(50) / 1e9, battles.getValueAtPercentile(99) / 1e9,
+					100 * utilisation, concurrency, maxQueue, histograms[Stage.BREEDING.ordinal()].getTotal() / 1e6);
+		}
+
+		/**
+		 * <p>
+		 *     Append the histograms of all the stages as a JSON object, in milliseconds.
+		 * </p>
+		 *
+		 * @param json the JSON being written
+		 * @param histograms the histogram of every stage
+		 */
+		private static void append(StringBuilder json, Histogram[] histograms) {
+			json.append('{');
+			for (Stage stage : Stage.values()) {
+				Histogram histogram = histograms[stage.ordinal()];
+				json.append(stage.ordinal() == 0 ? "" : ",").append('"').append(stage.getKey()).append("\":{");
+				json.append("\"count\":").append(histogram.getCount());
+				json.append(",\"total_ms\":").append(format(histogram.getTotal() / 1e6));
+				json.append(",\"mean_ms\":").append(format(histogram.getMean() / 1e6));
+				json.append(",\"p50_ms\":").append(format(histogram.getValueAtPercentile(50) / 1e6));
+				json.append(",\"p90_ms\":").append(format(histogram.getValueAtPercentile(90) / 1e6));
+				json.append(",\"p99_ms\":").append(format(histogram.getValueAtPercentile(99) / 1e6));
+				json.append(",\"max_ms\":").append(format(histogram.getMax() / 1e6));
+				json.append('}');
+			}
+			json.append('}');
+		}
+
+		/**
+		 * @param value a number
+		 *
+		 * @return the number with 3 decimals, as written in JSON
+		 */
+		private static String format(double value) {
+			return String.format(Locale.US, "%.3f", value);
+		}
+
+		/**
+		 * @return an empty histogram per stage
+		 */
+		private static Histogram[] histograms() {
+			Histogram[] histograms = new Histogram[Stage.values().length];
+			for (int i = 0; i < histograms.length; i++)
+				histograms[i] = new Histogram();
+			return histograms;
+		}
+
+}
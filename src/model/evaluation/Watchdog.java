@@ -0,0 +1,284 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class Watchdog.java
+ */
+
+package model.evaluation;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     The deadlines of the battles of an evaluator, so a hung battle cannot stall a whole generation.
+ *     The watchdog learns the duration of a round from the battles which end in time, and gives every battle a deadline
+ *     far in the tail of this distribution: {@link #MARGIN} times the rounds of the battle multiplied by the mean
+ *     duration of a round plus {@link #DEVIATIONS} standard deviations. Until {@link #MIN_SAMPLES} battles have ended,
+ *     the deadline is the rounds of the battle multiplied by the time given to a round with -Ddarwini.deadline
+ *     (in seconds, 10 by default).
+ * </p>
+ * <p>
+ *     When a battle passes its deadline, the evaluator action given to the watchdog is run (kill the JVM, abort the
+ *     battle, drop the remote worker...) and the evaluation fails. The evaluators do not fight it again themselves:
+ *     the optimizer decides, so a hung battle is retried by one layer only.
+ * </p>
+ *
+ * @see Evaluator
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class Watchdog {
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     The time given to a round while the duration of a round is not known, in milliseconds.
+		 * </p>
+		 */
+		private static final long INITIAL_ROUND_DEADLINE = Long.getLong("darwini.deadline", 10) * 1000;
+
+		/**
+		 * <p>
+		 *     The shortest deadline of a battle, in milliseconds: a Robocode JVM needs a few seconds to start.
+		 * </p>
+		 */
+		private static final long MIN_DEADLINE = 30000;
+
+		/**
+		 * <p>
+		 *     The number of battles ended in time before the deadlines are computed from their durations.
+		 * </p>
+		 */
+		private static final int MIN_SAMPLES = 5;
+
+		/**
+		 * <p>
+		 *     The number of standard deviations added to the mean duration of a round.
+		 * </p>
+		 */
+		private static final double DEVIATIONS = 4;
+
+		/**
+		 * <p>
+		 *     The factor applied to the expected duration of a battle.
+		 * </p>
+		 */
+		private static final double MARGIN = 2;
+
+		/**
+		 * <p>
+		 *     The thread running the actions of the expired battles, shared by all the watchdogs.
+		 * </p>
+		 */
+		private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "Watchdog");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The number of battles ended in time.
+		 * </p>
+		 */
+		private int samples;
+
+		/**
+		 * <p>
+		 *     The sum of the durations of a round of these battles, in milliseconds.
+		 * </p>
+		 */
+		private double sum;
+
+		/**
+		 * <p>
+		 *     The sum of the squares of the durations of a round of these battles.
+		 * </p>
+		 */
+		private double sumOfSquares;
+
+		/**
+		 * <p>
+		 *     The number of battles and JVM startups which have passed their deadline.
+		 * </p>
+		 */
+		private int expired;
+
+
+	/*	----- ACCESSORS -----	*/
+
+		/**
+		 * @return the number of battles and JVM startups which have passed their deadline
+		 */
+		public synchronized int getExpired() {
+			return expired;
+		}
+
+		/**
+		 * <p>
+		 *     Return the deadline of a battle, from the durations of the battles ended in time.
+		 * </p>
+		 *
+		 * @param rounds the number of rounds of the battle
+		 *
+		 * @return the time given to the battle, in milliseconds
+		 */
+		public synchronized long getDeadline(int rounds) {
+			if (samples < MIN_SAMPLES)
+				return Math.max(MIN_DEADLINE, rounds * INITIAL_ROUND_DEADLINE);
+
+			double mean = sum / samples;
+			double deviation = Math.sqrt(Math.max(0, (sumOfSquares - samples * mean * mean) / (samples - 1)));
+			return Math.max(MIN_DEADLINE, (long) (MARGIN * rounds * (mean + DEVIATIONS * deviation)));
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Start watching a battle.
+		 * </p>
+		 *
+		 * @param rounds the number of rounds of the battle
+		 * @param action what to do if the battle passes its deadline, run from the thread of the watchdog
+		 *
+		 * @return the deadline of the battle, to stop when the battle ends
+		 */
+		public Deadline start(int rounds, Runnable action) {
+			return new Deadline(getDeadline(rounds), action);
+		}
+
+		/**
+		 * <p>
+		 *     Start watching the startup of a Robocode JVM, which is given {@link #MIN_DEADLINE}.
+		 * </p>
+		 *
+		 * @param action what to do if the JVM has not started before its deadline, run from the thread of the watchdog
+		 *
+		 * @return the deadline of the startup, to cancel when the JVM is ready
+		 */
+		public Deadline startup(Runnable action) {
+			return new Deadline(MIN_DEADLINE, action);
+		}
+
+		/**
+		 * <p>
+		 *     Learn the duration of a battle ended in time.
+		 * </p>
+		 *
+		 * @param rounds the number of rounds fought
+		 * @param duration the duration of the battle, in milliseconds
+		 */
+		private synchronized void record(int rounds, long duration) {
+			if (rounds <= 0)
+				return;
+
+			double round = (double) duration / rounds;
+			samples++;
+			sum += round;
+			sumOfSquares += round * round;
+		}
+
+
+	/*	----- DEADLINE OF A BATTLE -----	*/
+
+		/**
+		 * <p>
+		 *     The deadline of a running battle.
+		 * </p>
+		 */
+		public class Deadline {
+
+			/**
+			 * <p>
+			 *     The time given to the battle, in milliseconds.
+			 * </p>
+			 */
+			private long delay;
+
+			/**
+			 * <p>
+			 *     The start of the battle, in nanoseconds.
+			 * </p>
+			 */
+			private long start;
+
+			/**
+			 * <p>
+			 *     The action planned at the deadline.
+			 * </p>
+			 */
+			private ScheduledFuture<?> future;
+
+			/**
+			 * <p>
+			 *     True once the action has been run.
+			 * </p>
+			 */
+			private volatile boolean expired;
+
+			/**
+			 * @param delay the time given to the battle, in milliseconds
+			 * @param action what to do if the battle passes its deadline
+			 */
+			private Deadline(long delay, Runnable action) {
+				this.delay = delay;
+				start = System.nanoTime();
+				future = TIMER.schedule(() -> {
+					expired = true;
+					synchronized (Watchdog.this) {
+						Watchdog.this.expired++;
+					}
+					action.run();
+				}, delay, TimeUnit.MILLISECONDS);
+			}
+
+			/**
+			 * @return the time given to the battle, in milliseconds
+			 */
+			public long getDelay() {
+				return delay;
+			}
+
+			/**
+			 * @return true if the battle has passed its deadline
+			 */
+			public boolean isExpired() {
+				return expired;
+			}
+
+			/**
+			 * <p>
+			 *     Stop watching a battle which has ended in time, and learn its duration.
+			 * </p>
+			 *
+			 * @param rounds the number of rounds fought
+			 */
+			public void done(int rounds) {
+				cancel();
+				if (!expired)
+					record(rounds, (System.nanoTime() - start) / 1000000);
+			}
+
+			/**
+			 * <p>
+			 *     Stop watching a battle which has failed or has been interrupted.
+			 * </p>
+			 */
+			public void cancel() {
+				future.cancel(false);
+			}
+
+		}
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class WorkerPool.java
+ */
+
+package model.evaluation;
+
+import model.genetic.Score;
+import model.perceptron.NeuralNetwork;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * <p>
+ *     A fitness backend using a pool of warm Robocode JVMs.
+ *     Every worker loads Robocode once in its own sandbox, then fights the battles sent by the pool through the
+ *     WorkerProtocol. The battles stay out of the genetic algorithm process, but the JVM startup and the robot
+ *     repository scan are paid only once per worker.
+ * </p>
+ * <p>
+ *     A crashed worker, or a worker killed by the Watchdog after the deadline of its battle, is started again at its
+ *     next battle. Its battle fails: the optimizer decides whether to fight it again, so a battle is not retried
+ *     by both. A worker is also restarted after {@link #MAX_BATTLES} battles to bound the growth of its heap.
+ * </p>
+ *
+ * @see EvaluationWorker
+ * @see ProcessEvaluator
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class WorkerPool implements Evaluator {
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     The number of battles fought by a worker JVM before it is recycled.
+		 * </p>
+		 */
+		public static final int MAX_BATTLES = 100;
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     All the workers of the pool.
+		 * </p>
+		 */
+		private List<WorkerProcess> workers;
+
+		/**
+		 * <p>
+		 *     The workers which are not fighting a battle, the last one used first: with fewer battles at the same time
+		 *     than workers (see ConcurrencyController), the same workers fight again and the others are never started.
+		 * </p>
+		 */
+		private BlockingDeque<WorkerProcess> idleWorkers;
+
+		/**
+		 * <p>
+		 *     The deadlines of the battles of all the workers.
+		 * </p>
+		 */
+		private Watchdog watchdog;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * <p>
+		 *     Create the sandboxes of the workers. The worker JVMs are started at their first battle.
+		 * </p>
+		 *
+		 * @param size the number of workers, so the number of battles which can be run at the same time
+		 *
+		 * @throws IOException if a sandbox cannot be created
+		 */
+		public WorkerPool(int size) throws IOException {
+			workers = new ArrayList<>();
+			idleWorkers = new LinkedBlockingDeque<>(size);
+			watchdog = new Watchdog();
+
+			for (int i = 0; i < size; i++) {
+				WorkerProcess worker = new WorkerProcess(new Sandbox(i + 1), watchdog);
+				workers.add(worker);
+				idleWorkers.add(worker);
+			}
+			Telemetry.setConcurrency(size);
+		}
+
+
+	/*	----- ACCESSORS -----	*/
+
+		/**
+		 * @return the number of workers of the pool
+		 */
+		public int getSize() {
+			return workers.size();
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Evaluate an individual on the free worker used last.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 *
+		 * @return the score of the individual
+		 *
+		 * @throws IOException if the battle has failed, or if the worker has crashed
+		 */
+		@Override
+		public Score evaluate(NeuralNetwork individual, BattleConfiguration battle) throws IOException {
+			return evaluate(individual, battle, null);
+		}
+
+		/**
+		 * <p>
+		 *     Make an individual race on the free worker used last, which aborts the battle when the race is lost.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 * @param race the race to follow, null to fight the whole battle
+		 *
+		 * @return the score of the individual, on the rounds fought
+		 *
+		 * @throws IOException if the battle has failed, or if the worker has crashed
+		 */
+		@Override
+		public Score evaluate(NeuralNetwork individual, BattleConfiguration battle, Race race) throws IOException {
+			WorkerProcess worker;
+			// The evaluations waiting for a free worker are reported by the telemetry
+			Telemetry.queue(1);
+			try {
+				worker = idleWorkers.takeFirst();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("The battle has been interrupted");
+			} finally {
+				Telemetry.queue(-1);
+			}
+
+			try {
+				return worker.evaluate(individual, battle, race);
+			} finally {
+				if (worker.getBattles() >= MAX_BATTLES)
+					worker.stop();
+				idleWorkers.addFirst(worker);
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Stop all the workers.
+		 * </p>
+		 */
+		@Override
+		public void close() {
+			for (WorkerProcess worker : workers)
+				worker.stop();
+		}
+
+}
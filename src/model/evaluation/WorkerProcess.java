@@ -0,0 +1,250 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class WorkerProcess.java
+ */
+
+package model.evaluation;
+
+import model.genetic.Score;
+import model.perceptron.NeuralNetwork;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     A slot of the WorkerPool: one sandbox and the EvaluationWorker JVM running in it.
+ *     The JVM is started at the first evaluation and started again after a crash or when it is recycled.
+ * </p>
+ *
+ * @see WorkerPool
+ * @see EvaluationWorker
+ *
+ * @version 1.2 - 18/10/26
+ */
+class WorkerProcess {
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The sandbox of the worker.
+		 * </p>
+		 */
+		private Sandbox sandbox;
+
+		/**
+		 * <p>
+		 *     The worker JVM, null if it is not started.
+		 * </p>
+		 */
+		private Process process;
+
+		/**
+		 * <p>
+		 *     The messages from the worker.
+		 * </p>
+		 */
+		private BufferedReader in;
+
+		/**
+		 * <p>
+		 *     The messages to the worker.
+		 * </p>
+		 */
+		private PrintWriter out;
+
+		/**
+		 * <p>
+		 *     The number of battles fought by the current JVM.
+		 * </p>
+		 */
+		private int battles;
+
+		/**
+		 * <p>
+		 *     The deadlines of the battles of the pool, a hung worker is killed.
+		 * </p>
+		 */
+		private Watchdog watchdog;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * @param sandbox the sandbox of the worker
+		 * @param watchdog the deadlines of the battles of the pool
+		 */
+		WorkerProcess(Sandbox sandbox, Watchdog watchdog) {
+			this.sandbox = sandbox;
+			this.watchdog = watchdog;
+		}
+
+
+	/*	----- ACCESSORS -----	*/
+
+		/**
+		 * @return the sandbox of the worker
+		 */
+		Sandbox getSandbox() {
+			return sandbox;
+		}
+
+		/**
+		 * @return the number of battles fought by the current JVM
+		 */
+		int getBattles() {
+			return battles;
+		}
+
+		/**
+		 * @return true if the worker JVM is started and alive
+		 */
+		boolean isRunning() {
+			return process != null && process.isAlive();
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Start the worker JVM in the sandbox and wait until Robocode is loaded.
+		 *     A JVM which is not ready before the startup deadline of the watchdog is killed.
+		 * </p>
+		 *
+		 * @throws IOException if the worker cannot be started
+		 */
+		private void start() throws IOException {
+			long start = System.nanoTime();
+			// The worker runs in the sandbox, so the classpath must not be relative to the current directory
+			StringBuilder classpath = new StringBuilder();
+			for (String entry : System.getProperty("java.class.path").split(File.pathSeparator))
+				classpath.append(classpath.length() == 0 ? "" : File.pathSeparator).append(new File(entry).getAbsolutePath());
+
+			process = new ProcessBuilder("java", "-Xmx512M", "-DNOSECURITY=true", "-cp", classpath.toString(),
+					EvaluationWorker.class.getName(),
+					sandbox.getRobocodeDirectory().getPath(), sandbox.getPerceptronFile().getPath())
+					.directory(sandbox.getDirectory())
+					.redirectError(ProcessBuilder.Redirect.appendTo(sandbox.getLogFile()))
+					.start();
+			in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+			out = new PrintWriter(process.getOutputStream(), true);
+			battles = 0;
+
+			// A worker stuck while loading Robocode is killed, so the handshake ends like after a crash
+			Watchdog.Deadline deadline = watchdog.startup(process::destroyForcibly);
+			String ready;
+			try {
+				ready = in.readLine();
+			} catch (IOException e) {
+				ready = null;
+			} finally {
+				deadline.cancel();
+			}
+
+			if (!WorkerProtocol.READY.equals(ready)) {
+				kill();
+				throw new IOException("The worker n°" + sandbox.getWorker() + (deadline.isExpired()
+						? " has been killed after a startup of " + deadline.getDelay() / 1000 + " s, see "
+						: " has not started, see ") + sandbox.getLogFile());
+			}
+			Telemetry.record(Telemetry.Stage.SPAWN, start);
+		}
+
+		/**
+		 * <p>
+		 *     Make the worker fight a battle.
+		 *     If the worker crashes or passes the deadline of the battle, it is killed and will be started again
+		 *     at the next evaluation.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 * @param race the race to follow, null to fight the whole battle
+		 *
+		 * @return the score of the individual
+		 *
+		 * @throws IOException if the worker has crashed or has been killed, or if the battle has failed
+		 */
+		Score evaluate(NeuralNetwork individual, BattleConfiguration battle, Race race) throws IOException {
+			if (!isRunning())
+				start();
+
+			battle.write(sandbox.getBattleFile());
+
+			String reply;
+			// A hung worker is killed, so the reply is null like after a crash
+			Watchdog.Deadline deadline = watchdog.start(battle.getNumRounds(), process::destroyForcibly);
+			long start = System.nanoTime();
+			try {
+				out.println(WorkerProtocol.evaluate(individual, race, sandbox.getBattleFile()));
+				reply = in.readLine();
+			} catch (IOException e) {
+				kill();
+				throw e;
+			} finally {
+				deadline.cancel();
+				Telemetry.record(Telemetry.Stage.BATTLE, start);
+			}
+
+			if (deadline.isExpired()) {
+				kill();
+				throw new IOException("The worker n°" + sandbox.getWorker() + " has been killed after its deadline of "
+						+ deadline.getDelay() / 1000 + " s, see " + sandbox.getLogFile());
+			}
+			if (reply == null || out.checkError()) {
+				kill();
+				throw new IOException("The worker n°" + sandbox.getWorker() + " has crashed, see " + sandbox.getLogFile());
+			}
+
+			battles++;
+			StringTokenizer tokens = new StringTokenizer(reply, " ");
+			if (!tokens.nextToken().equals(WorkerProtocol.SCORE))
+				throw new IOException("The worker n°" + sandbox.getWorker() + " has failed: " + reply);
+
+			start = System.nanoTime();
+			Score score = WorkerProtocol.readScore(tokens);
+			Telemetry.record(Telemetry.Stage.PARSE, start);
+			deadline.done(score.getRounds());
+			return score;
+		}
+
+		/**
+		 * <p>
+		 *     Ask the worker JVM to stop, and kill it if it does not stop.
+		 * </p>
+		 */
+		void stop() {
+			if (process == null)
+				return;
+
+			out.println(WorkerProtocol.QUIT);
+			try {
+				process.waitFor(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			kill();
+		}
+
+		/**
+		 * <p>
+		 *     Kill the worker JVM.
+		 * </p>
+		 */
+		void kill() {
+			if (process != null)
+				process.destroyForcibly();
+			process = null;
+		}
+
+}
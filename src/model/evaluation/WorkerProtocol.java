@@ -0,0 +1,411 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class WorkerProtocol.java
+ */
+
+package model.evaluation;
+
+import model.genetic.Score;
+import model.perceptron.Matrix;
+import model.perceptron.NeuralNetwork;
+import model.perceptron.NoiseTable;
+import model.perceptron.Perturbation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Properties;
+import java.util.StringTokenizer;
+
+/**
+ * <p>
+ *     The text protocol between the genetic algorithm and its evaluation workers. Every message is one line:
+ * </p>
+ *
+ * <pre>
+ * worker: READY                                     the worker has loaded Robocode
+ * pool:   EVALUATE &lt;perceptron&gt; &lt;race&gt; &lt;battle file&gt;   fight a battle
+ * worker: SCORE &lt;components&gt;                       the components of the score of the battle
+ * worker: ERROR &lt;message&gt;                          the battle failed
+ * pool:   QUIT                                      stop the worker
+ * </pre>
+ *
+ * <p>
+ *     A perceptron is written as its three matrices (input weights, output weights, bias),
+ *     each one as its number of rows, its number of columns and its values.
+ *     A race is written as its bound, its target, its range and its risk, or NONE to fight the whole battle.
+ * </p>
+ * <p>
+ *     The remote workers of a Coordinator use the same commands over a socket, with an identifier for every battle
+ *     and without any shared file:
+ * </p>
+ *
+ * <pre>
+ * worker:      READY                                            the worker has loaded Robocode
+ * coordinator: EVALUATE &lt;id&gt; &lt;genome&gt; &lt;battle&gt; &lt;race&gt;           fight a battle
+ * coordinator: CENTER &lt;version&gt; &lt;seed&gt; &lt;size&gt; &lt;genome&gt;        the center of the next perturbations
+ * coordinator: PERTURB &lt;id&gt; &lt;version&gt; &lt;offset&gt; &lt;sign&gt; &lt;sigma&gt; &lt;battle&gt;   fight a battle with a perturbation
+ * worker:      HEARTBEAT                                        the worker is alive, sent every few seconds
+ * worker:      SCORE &lt;id&gt; &lt;components&gt;                        the components of the score of the battle
+ * worker:      ERROR &lt;id&gt; &lt;message&gt;                           the battle failed
+ * coordinator: CANCEL &lt;id&gt;                                      stop a battle whose score is known, its answer is ignored
+ * coordinator: QUIT                                             stop the worker
+ * </pre>
+ *
+ * <p>
+ *     The genome is the binary form of the perceptron, in Base64.
+ *     The battle is its ".battle" properties, in Base64.
+ *     A center is sent once to every worker, before the first perturbation of this center it receives, with the seed
+ *     and the size of its noise table: then a perturbation only costs a few numbers instead of a genome.
+ * </p>
+ *
+ * @see EvaluationWorker
+ * @see WorkerPool
+ * @see RemoteWorker
+ * @see Coordinator
+ *
+ * @version 1.2 - 18/10/26
+ */
+final class WorkerProtocol {
+
+	/*	----- COMMANDS -----	*/
+
+		static final String READY = "READY";
+
+		static final String EVALUATE = "EVALUATE";
+
+		static final String SCORE = "SCORE";
+
+		static final String ERROR = "ERROR";
+
+		static final String QUIT = "QUIT";
+
+		static final String HEARTBEAT = "HEARTBEAT";
+
+		static final String CENTER = "CENTER";
+
+		static final String PERTURB = "PERTURB";
+
+		static final String CANCEL = "CANCEL";
+
+		static final String NONE = "NONE";
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		private WorkerProtocol() {
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Write an evaluation request.
+		 * </p>
+		 *
+		 * @param individual the perceptron to test
+		 * @param race the race to follow, null to fight the whole battle
+		 * @param battleFile the battle file to fight
+		 *
+		 * @return the message
+		 */
+		static String evaluate(NeuralNetwork individual, Race race, File battleFile) {
+			StringBuilder sb = new StringBuilder(EVALUATE);
+			append(sb, individual.getInputWeights());
+			append(sb, individual.getOutputWeights());
+			append(sb, individual.getBias());
+			append(sb, race);
+			return sb.append(' ').append(battleFile.getAbsolutePath()).toString();
+		}
+
+		/**
+		 * <p>
+		 *     Write the score of a battle.
+		 * </p>
+		 *
+		 * @param score the score to send
+		 *
+		 * @return the message
+		 */
+		static String score(Score score) {
+			StringBuilder sb = new StringBuilder(SCORE);
+			for (int component : score.getComponents())
+				sb.append(' ').append(component);
+			return sb.toString();
+		}
+
+		/**
+		 * <p>
+		 *     Write an evaluation request for a remote worker.
+		 * </p>
+		 *
+		 * @param id the identifier of the battle, given back with its score
+		 * @param individual the perceptron to test
+		 * @param battle the battle to fight
+		 * @param race the race to follow, null to fight the whole battle
+		 *
+		 * @return the message
+		 */
+		static String evaluate(long id, NeuralNetwork individual, BattleConfiguration battle, Race race) {
+			StringBuilder sb = new StringBuilder(EVALUATE).append(' ').append(id);
+			sb.append(' ').append(writeGenome(individual)).append(' ').append(writeBattle(battle));
+			append(sb, race);
+			return sb.toString();
+		}
+
+		/**
+		 * <p>
+		 *     Write the center of a perturbation, with its noise table.
+		 * </p>
+		 *
+		 * @param perturbation a perturbation of the center
+		 *
+		 * @return the message
+		 */
+		static String center(Perturbation perturbation) {
+			return CENTER + ' ' + perturbation.getVersion() + ' ' + perturbation.getTable().getSeed() + ' '
+					+ perturbation.getTable().getSize() + ' ' + writeGenome(perturbation.getCenter());
+		}
+
+		/**
+		 * <p>
+		 *     Write an evaluation request of a perturbation, whose center has already been sent.
+		 * </p>
+		 *
+		 * @param id the identifier of the battle, given back with its score
+		 * @param perturbation the perturbation to test
+		 * @param battle the battle to fight
+		 *
+		 * @return the message
+		 */
+		static String perturb(long id, Perturbation perturbation, BattleConfiguration battle) {
+			return PERTURB + ' ' + id + ' ' + perturbation.getVersion() + ' ' + perturbation.getOffset() + ' '
+					+ perturbation.getSign() + ' ' + perturbation.getSigma() + ' ' + writeBattle(battle);
+		}
+
+		/**
+		 * <p>
+		 *     Read a center written by {@link #center(Perturbation)}, as a perturbation of version, offset and sign 0.
+		 * </p>
+		 *
+		 * @param tokens the message, after the command
+		 * @param table the noise table of the worker, null if it has none
+		 *
+		 * @return the center, with the table of the worker or a new one if it does not match
+		 */
+		static Perturbation readCenter(StringTokenizer tokens, NoiseTable table) {
+			long version = Long.parseLong(tokens.nextToken());
+			long seed = Long.parseLong(tokens.nextToken());
+			int size = Integer.parseInt(tokens.nextToken());
+			NeuralNetwork center = readGenome(tokens);
+			if (table == null || !table.matches(seed, size))
+				table = new NoiseTable(seed, size);
+			return new Perturbation(center, version, table, 0, 0, 0);
+		}
+
+		/**
+		 * <p>
+		 *     Read a perturbation written by {@link #perturb(long, Perturbation, BattleConfiguration)}.
+		 * </p>
+		 *
+		 * @param tokens the message, after the identifier
+		 * @param center the last center received
+		 *
+		 * @return the perturbation
+		 *
+		 * @throws IllegalStateException if the perturbation is not a perturbation of this center
+		 */
+		static Perturbation readPerturbation(StringTokenizer tokens, Perturbation center) {
+			long version = Long.parseLong(tokens.nextToken());
+			if (center == null || center.getVersion() != version)
+				throw new IllegalStateException("The center n°" + version + " has not been received");
+
+			return new Perturbation(center.getCenter(), version, center.getTable(), Integer.parseInt(tokens.nextToken()),
+					Integer.parseInt(tokens.nextToken()), Double.parseDouble(tokens.nextToken()));
+		}
+
+		/**
+		 * <p>
+		 *     Write the score of a battle of a remote worker.
+		 * </p>
+		 *
+		 * @param id the identifier of the battle
+		 * @param score the score to send
+		 *
+		 * @return the message
+		 */
+		static String score(long id, Score score) {
+			StringBuilder sb = new StringBuilder(SCORE).append(' ').append(id);
+			for (int component : score.getComponents())
+				sb.append(' ').append(component);
+			return sb.toString();
+		}
+
+		/**
+		 * <p>
+		 *     Read a perceptron written by {@link #evaluate(NeuralNetwork, Race, File)}.
+		 * </p>
+		 *
+		 * @param tokens the message, after the command
+		 *
+		 * @return the perceptron
+		 */
+		static NeuralNetwork readNetwork(StringTokenizer tokens) {
+			return new NeuralNetwork(readMatrix(tokens), readMatrix(tokens), readMatrix(tokens));
+		}
+
+		/**
+		 * <p>
+		 *     Read a race written by {@link #evaluate(NeuralNetwork, Race, File)}.
+		 * </p>
+		 *
+		 * @param tokens the message, after the perceptron
+		 *
+		 * @return a new race, null to fight the whole battle
+		 */
+		static Race readRace(StringTokenizer tokens) {
+			String bound = tokens.nextToken();
+			if (bound.equals(NONE))
+				return null;
+
+			return new Race(Race.Bound.valueOf(bound), Double.parseDouble(tokens.nextToken()),
+					Double.parseDouble(tokens.nextToken()), Double.parseDouble(tokens.nextToken()));
+		}
+
+		/**
+		 * <p>
+		 *     Read a genome written by {@link #evaluate(long, NeuralNetwork, BattleConfiguration, Race)}.
+		 * </p>
+		 *
+		 * @param tokens the message, after the identifier
+		 *
+		 * @return the perceptron
+		 */
+		static NeuralNetwork readGenome(StringTokenizer tokens) {
+			return NeuralNetwork.fromBinary(ByteBuffer.wrap(Base64.getDecoder().decode(tokens.nextToken())));
+		}
+
+		/**
+		 * <p>
+		 *     Read a battle written by {@link #evaluate(long, NeuralNetwork, BattleConfiguration, Race)}.
+		 * </p>
+		 *
+		 * @param tokens the message, after the genome
+		 *
+		 * @return the battle
+		 */
+		static BattleConfiguration readBattle(StringTokenizer tokens) {
+			Properties properties = new Properties();
+			try {
+				properties.load(new ByteArrayInputStream(Base64.getDecoder().decode(tokens.nextToken())));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return new BattleConfiguration(properties);
+		}
+
+		/**
+		 * <p>
+		 *     Read a score written by {@link #score(Score)}.
+		 * </p>
+		 *
+		 * @param tokens the message, after the command
+		 *
+		 * @return the score
+		 */
+		static Score readScore(StringTokenizer tokens) {
+			int[] components = new int[tokens.countTokens()];
+			for (int i = 0; i < components.length; i++)
+				components[i] = Integer.parseInt(tokens.nextToken());
+			return new Score(components);
+		}
+
+		/**
+		 * <p>
+		 *     Write a race, or NONE to fight the whole battle.
+		 * </p>
+		 *
+		 * @param sb the message
+		 * @param race the race to write
+		 */
+		private static void append(StringBuilder sb, Race race) {
+			if (race == null)
+				sb.append(' ').append(NONE);
+			else
+				sb.append(' ').append(race.getBound()).append(' ').append(race.getTarget())
+						.append(' ').append(race.getRange()).append(' ').append(race.getRisk());
+		}
+
+		/**
+		 * <p>
+		 *     Write a perceptron as a compact token: its binary form, in Base64.
+		 * </p>
+		 *
+		 * @param individual the perceptron
+		 *
+		 * @return the genome
+		 */
+		private static String writeGenome(NeuralNetwork individual) {
+			return Base64.getEncoder().encodeToString(individual.toBinary());
+		}
+
+		/**
+		 * <p>
+		 *     Write the properties of a battle as a token.
+		 * </p>
+		 *
+		 * @param battle the battle
+		 *
+		 * @return the battle in Base64
+		 */
+		private static String writeBattle(BattleConfiguration battle) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try {
+				battle.getProperties().store(bytes, null);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return Base64.getEncoder().encodeToString(bytes.toByteArray());
+		}
+
+		/**
+		 * <p>
+		 *     Write a matrix without losing precision.
+		 * </p>
+		 *
+		 * @param sb the message
+		 * @param matrix the matrix to write
+		 */
+		private static void append(StringBuilder sb, Matrix matrix) {
+			sb.append(' ').append(matrix.getRowCount()).append(' ').append(matrix.getColumnCount());
+			for (int i = 0; i < matrix.getRowCount(); i++)
+				for (int j = 0; j < matrix.getColumnCount(); j++)
+					sb.append(' ').append(matrix.get(i, j));
+		}
+
+		/**
+		 * <p>
+		 *     Read a matrix written by {@link #append(StringBuilder, Matrix)}.
+		 * </p>
+		 *
+		 * @param tokens the message
+		 *
+		 * @return the matrix
+		 */
+		private static Matrix readMatrix(StringTokenizer tokens) {
+			Matrix matrix = new Matrix(Integer.parseInt(tokens.nextToken()), Integer.parseInt(tokens.nextToken()));
+			for (int i = 0; i < matrix.getRowCount(); i++)
+				for (int j = 0; j < matrix.getColumnCount(); j++)
+					matrix.set(i, j, Double.parseDouble(tokens.nextToken()));
+			return matrix;
+		}
+
+}
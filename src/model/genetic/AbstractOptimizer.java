@@ -0,0 +1,335 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class AbstractOptimizer.java
+ */
+
+package model.genetic;
+
+import controller.Darwini;
+import model.evaluation.BattleConfiguration;
+import model.evaluation.Evaluator;
+import model.evaluation.Fight;
+import model.evaluation.Race;
+import model.evaluation.Telemetry;
+import model.perceptron.NeuralNetwork;
+import model.perceptron.Perturbation;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ *     What the optimizers of the perceptron share: the battles of their individuals, the count of the battles fought
+ *     until the target, and the saving of the perceptrons found.
+ * </p>
+ * <p>
+ *     A battle which fails (a worker which crashes, or which passes the deadline of its battle and is killed) is fought
+ *     again up to {@link #MAX_ATTEMPTS} times, then the individual gets a penalty score. The evaluators do not fight a
+ *     failed battle again themselves, so a battle is only retried here.
+ * </p>
+ *
+ * @see GeneticAlgorithm
+ * @see CMAES
+ * @see EvolutionStrategy
+ *
+ * @version 1.2 - 18/10/26
+ */
+public abstract class AbstractOptimizer implements Optimizer {
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     The number of times a battle is fought before the individual gets a penalty score, when the battle fails.
+		 * </p>
+		 */
+		protected static final int MAX_ATTEMPTS = 2;
+
+		/**
+		 * <p>
+		 *     The opponents of the individuals, separated by commas, chosen with -Ddarwini.opponents
+		 *     (ex: sample.Crazy,sample.SpinBot,sample.Walls,sample.Tracker,sample.RamFire,samplesentry.BorderGuard).
+		 *     Every opponent is a separate battle and the scores of all the battles are merged.
+		 *     By default, the individuals only fight the opponents of the battle file.
+		 * </p>
+		 */
+		protected static final String OPPONENTS = System.getProperty("darwini.opponents");
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The fitness backend which makes the individuals fight in Robocode.
+		 * </p>
+		 */
+		protected Evaluator evaluator;
+
+		/**
+		 * <p>
+		 *     The battle used to test the individuals.
+		 * </p>
+		 */
+		protected BattleConfiguration battle;
+
+		/**
+		 * <p>
+		 *     The number of battles fought by the evaluator, the failed ones included.
+		 *     The scores found in the fitness cache are not battles.
+		 * </p>
+		 */
+		protected AtomicInteger evaluations;
+
+		/**
+		 * <p>
+		 *     The number of battles fought when the best individual reached the target, -1 before.
+		 * </p>
+		 */
+		protected int evaluationsToTarget = -1;
+
+		/**
+		 * <p>
+		 *     The time spent in the battles, summed over all the threads (in nanoseconds).
+		 * </p>
+		 */
+		protected AtomicLong battleTime;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * @param evaluator the fitness backend which makes the individuals fight
+		 * @param battle the battle used to test the individuals
+		 */
+		protected AbstractOptimizer(Evaluator evaluator, BattleConfiguration battle) {
+			this.evaluator = evaluator;
+			this.battle = battle;
+			evaluations = new AtomicInteger();
+			battleTime = new AtomicLong();
+		}
+
+
+	/*	----- ACCESSORS -----	*/
+
+		@Override
+		public int getEvaluations() {
+			return evaluations.get();
+		}
+
+		@Override
+		public int getEvaluationsToTarget() {
+			return evaluationsToTarget;
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Return the battles against every opponent.
+		 * </p>
+		 *
+		 * @param battle the battle to fight
+		 *
+		 * @return one battle per opponent, or the battle itself if the opponents are not given
+		 */
+		static List<BattleConfiguration> matchups(BattleConfiguration battle) {
+			List<BattleConfiguration> matchups = new ArrayList<>();
+			if (OPPONENTS == null)
+				matchups.add(battle);
+			else
+				for (String opponent : OPPONENTS.split(","))
+					matchups.add(battle.withOpponents(opponent.trim()));
+			return matchups;
+		}
+
+		/**
+		 * <p>
+		 *     Evaluate an individual with Robocode.
+		 *     Several individuals can be tested at the same time, the evaluator gives its own files to every battle.
+		 * </p>
+		 *
+		 * @param individual the individual to test
+		 * @param battle the battle to fight
+		 * @param race the race against the best individual, null to fight all the rounds
+		 *
+		 * @return the score of the individual, a penalty score if the battle keeps failing
+		 */
+		protected Score fitness(NeuralNetwork individual, BattleConfiguration battle, Race race) {
+			// Every attempt follows its own copy of the race
+			return fitness(battle, () -> evaluator.evaluate(individual, battle, race == null ? null : new Race(race)));
+		}
+
+		/**
+		 * <p>
+		 *     Evaluate a perturbation with Robocode. The evaluator receives the compact perturbation, not its genome.
+		 * </p>
+		 *
+		 * @param perturbation the perturbation to test
+		 * @param battle the battle to fight
+		 *
+		 * @return the score of the perturbation, a penalty score if the battle keeps failing
+		 */
+		protected Score fitness(Perturbation perturbation, BattleConfiguration battle) {
+			return fitness(battle, () -> evaluator.evaluate(perturbation, battle));
+		}
+
+		/**
+		 * <p>
+		 *     Fight a battle until it succeeds, at most {@link #MAX_ATTEMPTS} times.
+		 * </p>
+		 *
+		 * @param battle the battle to fight
+		 * @param fight the battle, run by the evaluator
+		 *
+		 * @return the score of the battle, a penalty score if the battle keeps failing
+		 */
+		private Score fitness(BattleConfiguration battle, Fight fight) {
+			long start = System.nanoTime();
+			Telemetry.takeBattles();
+			try {
+				for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++)
+					try {
+						return fight.run();
+					} catch (InterruptedIOException e) {
+						break;
+					} catch (IOException e) {
+						System.out.println("\tBattle failed (attempt " + attempt + "/" + MAX_ATTEMPTS + "): " + e.getMessage());
+					}
+			} finally {
+				// The evaluators record the battles they fight in this thread, not the scores of the cache
+				evaluations.addAndGet(Telemetry.takeBattles());
+				battleTime.addAndGet(System.nanoTime() - start);
+				Telemetry.record(Telemetry.Stage.EVALUATION, start);
+			}
+
+			return Score.penalty(battle.getNumRounds());
+		}
+
+		/**
+		 * <p>
+		 *     Make some candidates fight against every opponent, running as many battles at the same time as there are
+		 *     threads. A battle which has not been fought counts as a failed battle.
+		 * </p>
+		 *
+		 * @param count the number of candidates
+		 * @param candidate the battle of a candidate against an opponent
+		 *
+		 * @return the scores of the candidates, merged over all the opponents
+		 */
+		protected Score[] fitness(int count, Candidate candidate) {
+			List<BattleConfiguration> matchups = matchups(battle);
+			Score[][] matchupScores = new Score[count][matchups.size()];
+
+			ExecutorService executor = Executors.newFixedThreadPool(GeneticAlgorithm.NB_THREADS);
+			for (int k = 0; k < count; k++)
+				for (int m = 0; m < matchups.size(); m++) {
+					int index = k;
+					int matchup = m;
+					executor.submit(() -> {
+						matchupScores[index][matchup] = candidate.fight(index, matchups.get(matchup));
+					});
+				}
+			executor.shutdown();
+			try {
+				// The evaluators kill the hung battles, this limit is only a last resort
+				if (!executor.awaitTermination(6000, TimeUnit.SECONDS))
+					executor.shutdownNow();
+			} catch (InterruptedException e) {
+				System.out.println("The evaluation has been interrupted");
+				executor.shutdownNow();
+			}
+
+			Score[] scores = new Score[count];
+			for (int k = 0; k < count; k++)
+				for (int m = 0; m < matchups.size(); m++) {
+					Score score = matchupScores[k][m];
+					if (score == null)
+						score = Score.penalty(matchups.get(m).getNumRounds());
+					scores[k] = scores[k] == null ? score : scores[k].merge(score);
+				}
+			return scores;
+		}
+
+		/**
+		 * <p>
+		 *     Note the number of battles fought the first time the best individual reaches the target.
+		 * </p>
+		 *
+		 * @param best the score of the best individual found
+		 */
+		protected void checkTarget(Score best) {
+			if (TARGET != null && evaluationsToTarget < 0 && best != null && best.getRoundScore() >= TARGET) {
+				evaluationsToTarget = evaluations.get();
+				System.out.println("Target of " + TARGET + " per round reached after " + evaluationsToTarget + " battles");
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Save a perceptron in XML format.
+		 * </p>
+		 *
+		 * @param network the perceptron
+		 * @param file the XML file
+		 *
+		 * @return true if the perceptron has been saved
+		 */
+		protected static boolean save(NeuralNetwork network, File file) {
+			try {
+				network.printToXML(file);
+				return true;
+			} catch (FileNotFoundException | XMLStreamException e) {
+				System.out.println("The perceptron " + file.getPath() + " cannot be saved: " + e.getMessage());
+				return false;
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Copy a perceptron into the Darwini's perceptron.
+		 * </p>
+		 *
+		 * @param network the perceptron
+		 */
+		protected static void copyToRobot(NeuralNetwork network) {
+			if (save(network, new File(GeneticAlgorithm.ROBOT_DIRECTORY + Darwini.PERCEPTRON_FILE)))
+				// The binary perceptron of the last battle must not replace the best one
+				new File(GeneticAlgorithm.ROBOT_DIRECTORY + Darwini.PERCEPTRON_BINARY).delete();
+		}
+
+
+	/*	----- BATTLE TO FIGHT -----	*/
+
+		/**
+		 * <p>
+		 *     The battle of a candidate against an opponent, in a batch of candidates.
+		 * </p>
+		 */
+		@FunctionalInterface
+		protected interface Candidate {
+
+			/**
+			 * @param index the index of the candidate
+			 * @param matchup the battle against the opponent
+			 *
+			 * @return the score of the candidate
+			 */
+			Score fight(int index, BattleConfiguration matchup);
+
+		}
+
+}
@@ -0,0 +1,276 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class BehaviourArchive.java
+ */
+
+package model.genetic;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * <p>
+ *     The behaviours of all the individuals evaluated by a novelty search. The novelty of a behaviour is the mean
+ *     euclidean distance to its k nearest neighbours in the archive: a robot doing what no robot has done before is
+ *     novel, even if it does not win.
+ * </p>
+ * <p>
+ *     The behaviours are stored in a KD-tree: every node splits the space on one value of the behaviour, in turn.
+ *     A search of the nearest neighbours only visits the branches which can hold a behaviour nearer than the k-th
+ *     neighbour already found, so it stays sub-linear when the archive holds tens of thousands of behaviours.
+ *     The behaviours are added one by one, in the order of the evaluations, which keeps the tree about balanced.
+ * </p>
+ * <p>
+ *     An archive belongs to one genetic algorithm and is used from its thread only.
+ * </p>
+ *
+ * @see Score#getBehaviour()
+ * @see GeneticAlgorithm
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class BehaviourArchive {
+
+	/**
+	 * <p>
+	 *     A behaviour of the archive and the behaviours on both sides of its split.
+	 * </p>
+	 */
+	private static class Node {
+
+		/**
+		 * <p>
+		 *     The behaviour.
+		 * </p>
+		 */
+		private double[] behaviour;
+
+		/**
+		 * <p>
+		 *     The index of the value splitting the behaviours under this node.
+		 * </p>
+		 */
+		private int axis;
+
+		/**
+		 * <p>
+		 *     The behaviours with a lower value on the axis, and the others.
+		 * </p>
+		 */
+		private Node lower, higher;
+
+		private Node(double[] behaviour, int axis) {
+			this.behaviour = behaviour;
+			this.axis = axis;
+		}
+	}
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The root of the tree, null while the archive is empty.
+		 * </p>
+		 */
+		private Node root;
+
+		/**
+		 * <p>
+		 *     The number of behaviours archived.
+		 * </p>
+		 */
+		private int size;
+
+		/**
+		 * <p>
+		 *     The number of nearest neighbours of the novelty.
+		 * </p>
+		 */
+		private int neighbours;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * @param neighbours the number of nearest neighbours giving the novelty
+		 */
+		public BehaviourArchive(int neighbours) {
+			this.neighbours = neighbours;
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Add a behaviour to the archive.
+		 * </p>
+		 *
+		 * @param behaviour the behaviour, which must not be changed afterwards
+		 */
+		public void add(double[] behaviour) {
+			size++;
+			if (root == null) {
+				root = new Node(behaviour, 0);
+				return;
+			}
+
+			Node node = root;
+			while (true) {
+				boolean lower = behaviour[node.axis] < node.behaviour[node.axis];
+				Node child = lower ? node.lower : node.higher;
+				if (child == null) {
+					child = new Node(behaviour, (node.axis + 1) % behaviour.length);
+					if (lower)
+						node.lower = child;
+					else
+						node.higher = child;
+					return;
+				}
+				node = child;
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Return the novelty of a behaviour already archived: its own place in the archive is not a neighbour.
+		 * </p>
+		 *
+		 * @param behaviour the behaviour, null if it has not been measured
+		 *
+		 * @return the mean distance to the nearest neighbours, 0 for a behaviour not measured or an empty archive
+		 */
+		public double novelty(double[] behaviour) {
+			if (behaviour == null || size <= 1)
+				return 0;
+
+			// One more neighbour: the nearest one is the behaviour itself, or an identical one
+			double[] distances = nearest(behaviour, Math.min(neighbours + 1, size));
+			double sum = 0;
+			for (int i = 1; i < distances.length; i++)
+				sum += distances[i];
+			return sum / (distances.length - 1);
+		}
+
+		/**
+		 * <p>
+		 *     Find the distances to the nearest neighbours of a behaviour.
+		 * </p>
+		 *
+		 * @param behaviour the behaviour
+		 * @param count the number of neighbours, at most the size of the archive
+		 *
+		 * @return the distances to the nearest neighbours, from the nearest
+		 */
+		public double[] nearest(double[] behaviour, int count) {
+			// The squared distances of the neighbours found, sorted, with the infinite ones not found yet
+			double[] best = new double[count];
+			Arrays.fill(best, Double.POSITIVE_INFINITY);
+			search(root, behaviour, best);
+
+			for (int i = 0; i < count; i++)
+				best[i] = Math.sqrt(best[i]);
+			return best;
+		}
+
+		/**
+		 * <p>
+		 *     Search the nearest neighbours under a node, the side of the behaviour first. The other side is only
+		 *     visited if the split is nearer than the farthest neighbour found.
+		 * </p>
+		 *
+		 * @param node the node
+		 * @param behaviour the behaviour
+		 * @param best the squared distances of the nearest neighbours found, sorted
+		 */
+		private void search(Node node, double[] behaviour, double[] best) {
+			if (node == null)
+				return;
+
+			double distance = 0;
+			for (int i = 0; i < behaviour.length; i++) {
+				double difference = behaviour[i] - node.behaviour[i];
+				distance += difference * difference;
+			}
+			if (distance < best[best.length - 1]) {
+				int i = best.length - 1;
+				for (; i > 0 && best[i - 1] > distance; i--)
+					best[i] = best[i - 1];
+				best[i] = distance;
+			}
+
+			double split = behaviour[node.axis] - node.behaviour[node.axis];
+			search(split < 0 ? node.lower : node.higher, behaviour, best);
+			if (split * split < best[best.length - 1])
+				search(split < 0 ? node.higher : node.lower, behaviour, best);
+		}
+
+		/**
+		 * <p>
+		 *     Write the archive in a checkpoint. The behaviours are written parents before children,
+		 *     so adding them again in the same order builds the same tree.
+		 * </p>
+		 *
+		 * @param out the checkpoint
+		 *
+		 * @throws IOException if the checkpoint cannot be written
+		 */
+		public void write(DataOutput out) throws IOException {
+			out.writeInt(size);
+			out.writeInt(root == null ? 0 : root.behaviour.length);
+
+			Deque<Node> nodes = new ArrayDeque<>();
+			if (root != null)
+				nodes.push(root);
+			while (!nodes.isEmpty()) {
+				Node node = nodes.pop();
+				for (double value : node.behaviour)
+					out.writeDouble(value);
+				if (node.higher != null)
+					nodes.push(node.higher);
+				if (node.lower != null)
+					nodes.push(node.lower);
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Read an archive written by {@link #write(DataOutput)}.
+		 * </p>
+		 *
+		 * @param in the checkpoint
+		 * @param neighbours the number of nearest neighbours giving the novelty
+		 *
+		 * @return the archive
+		 *
+		 * @throws IOException if the checkpoint cannot be read
+		 */
+		public static BehaviourArchive read(DataInput in, int neighbours) throws IOException {
+			BehaviourArchive archive = new BehaviourArchive(neighbours);
+			int size = in.readInt();
+			int dimension = in.readInt();
+			for (int i = 0; i < size; i++) {
+				double[] behaviour = new double[dimension];
+				for (int j = 0; j < dimension; j++)
+					behaviour[j] = in.readDouble();
+				archive.add(behaviour);
+			}
+			return archive;
+		}
+
+		/**
+		 * @return the number of behaviours archived
+		 */
+		public int size() {
+			return size;
+		}
+
+}
@@ -0,0 +1,677 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class CMAES.java
+ */
+
+package model.genetic;
+
+import model.evaluation.BattleConfiguration;
+import model.evaluation.Evaluator;
+import model.perceptron.NeuralNetwork;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * <p>
+ *     The Covariance Matrix Adaptation Evolution Strategy (CMA-ES), an optimizer of the genome of the perceptron
+ *     chosen with -Ddarwini.optimizer=cmaes. Instead of a population, it keeps a normal distribution of the genomes:
+ *     every generation samples {@link #LAMBDA} candidates around the mean, makes them fight, and moves the mean toward
+ *     the best half. The covariance matrix learns the directions in which the score improves (rank-one update with the
+ *     evolution path, rank-μ update with the best candidates), and the step size grows or shrinks with the length of
+ *     the cumulated steps. Only the ranking of the candidates is used, not their scores.
+ * </p>
+ * <p>
+ *     With -Ddarwini.separable=true, only the diagonal of the covariance matrix is learned (sep-CMA-ES): a generation
+ *     costs O(n) instead of O(n²) and no eigendecomposition is needed, and the learning rates are n / 3 times higher.
+ * </p>
+ * <p>
+ *     The mean and the best candidate found are saved in data/population/cmaes/. At the next launch, the search starts
+ *     again from the saved mean, with a new covariance matrix.
+ * </p>
+ *
+ * @see Optimizer
+ * @see GeneticAlgorithm
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class CMAES extends AbstractOptimizer {
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     The directory where the mean and the best candidate are saved.
+		 * </p>
+		 */
+		private static final String CMAES_DIRECTORY = GeneticAlgorithm.POPULATION_DIRECTORY + "cmaes/";
+
+		/**
+		 * <p>
+		 *     The file of the mean of the distribution.
+		 * </p>
+		 */
+		private static final String MEAN_FILENAME = "Mean.xml";
+
+		/**
+		 * <p>
+		 *     The file of the best candidate found.
+		 * </p>
+		 */
+		private static final String BEST_FILENAME = "Best.xml";
+
+		/**
+		 * <p>
+		 *     The number of candidates of a generation, changed with -Ddarwini.lambda=N
+		 *     (4 + 3 ln(n) by default, 22 for the 460 coefficients of the perceptron).
+		 * </p>
+		 */
+		private static final Integer LAMBDA = Integer.getInteger("darwini.lambda");
+
+		/**
+		 * <p>
+		 *     The initial step size, changed with -Ddarwini.sigma=S. The random coefficients are between -1 and 1.
+		 * </p>
+		 */
+		private static final double SIGMA = Double.parseDouble(System.getProperty("darwini.sigma", "0.3"));
+
+		/**
+		 * <p>
+		 *     Learn only the diagonal of the covariance matrix, enabled with -Ddarwini.separable=true.
+		 * </p>
+		 */
+		private static final boolean SEPARABLE = Boolean.getBoolean("darwini.separable");
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The random numbers of the sampling.
+		 * </p>
+		 */
+		private SplittableRandom random;
+
+		/**
+		 * <p>
+		 *     The number of coefficients of the genome.
+		 * </p>
+		 */
+		private int n;
+
+		/**
+		 * <p>
+		 *     The number of candidates of a generation, and the number of the best ones which move the mean.
+		 * </p>
+		 */
+		private int lambda, mu;
+
+		/**
+		 * <p>
+		 *     The weights of the best candidates, decreasing with the rank, and their variance effective selection mass.
+		 * </p>
+		 */
+		private double[] weights;
+		private double mueff;
+
+		/**
+		 * <p>
+		 *     The learning rates: cumulation of the evolution paths (cc, cs), rank-one update (c1), rank-μ update (cmu),
+		 *     and the damping of the step size.
+		 * </p>
+		 */
+		private double cc, cs, c1, cmu, damps;
+
+		/**
+		 * <p>
+		 *     The expected length of a normal vector of dimension n.
+		 * </p>
+		 */
+		private double chiN;
+
+		/**
+		 * <p>
+		 *     The mean of the distribution, the genome of the next generation.
+		 * </p>
+		 */
+		private double[] mean;
+
+		/**
+		 * <p>
+		 *     The step size.
+		 * </p>
+		 */
+		private double sigma;
+
+		/**
+		 * <p>
+		 *     The evolution paths of the covariance matrix and of the step size.
+		 * </p>
+		 */
+		private double[] pc, ps;
+
+		/**
+		 * <p>
+		 *     The covariance matrix (only its diagonal, C[0], in the separable mode).
+		 * </p>
+		 */
+		private double[][] C;
+
+		/**
+		 * <p>
+		 *     The eigenvectors of the covariance matrix, in columns, and the square roots of its eigenvalues:
+		 *     C = B diag(D²) B<sup>T</sup>. In the separable mode, B is not used and D is the square root of the diagonal.
+		 * </p>
+		 */
+		private double[][] B;
+		private double[] D;
+
+		/**
+		 * <p>
+		 *     The number of battles fought at the last eigendecomposition.
+		 * </p>
+		 */
+		private int eigenEvaluations;
+
+		/**
+		 * <p>
+		 *     The number of generations done.
+		 * </p>
+		 */
+		private int generation;
+
+		/**
+		 * <p>
+		 *     The best candidate found and its score.
+		 * </p>
+		 */
+		private NeuralNetwork best;
+		private Score bestScore;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * <p>
+		 *     Initialize the distribution around the saved mean, or around a random perceptron, and set the learning rates
+		 *     from the size of the genome.
+		 * </p>
+		 *
+		 * @param evaluator the fitness backend which makes the candidates fight
+		 * @param battle the battle used to test the candidates
+		 */
+		public CMAES(Evaluator evaluator, BattleConfiguration battle) {
+			super(evaluator, battle);
+			random = GeneticAlgorithm.newRandom();
+			new File(CMAES_DIRECTORY).mkdirs();
+
+			File meanFile = new File(CMAES_DIRECTORY + MEAN_FILENAME);
+			mean = (meanFile.exists() ? new NeuralNetwork(meanFile) : new NeuralNetwork(random.split())).getGenome().clone();
+			n = mean.length;
+			sigma = SIGMA;
+
+			// The default parameters of CMA-ES (Hansen, The CMA Evolution Strategy: A Tutorial)
+			lambda = LAMBDA != null ? LAMBDA : 4 + (int) (3 * Math.log(n));
+			mu = lambda / 2;
+			weights = new double[mu];
+			double sum = 0, sumOfSquares = 0;
+			for (int i = 0; i < mu; i++) {
+				weights[i] = Math.log(mu + 0.5) - Math.log(i + 1);
+				sum += weights[i];
+			}
+			for (int i = 0; i < mu; i++) {
+				weights[i] /= sum;
+				sumOfSquares += weights[i] * weights[i];
+			}
+			mueff = 1 / sumOfSquares;
+
+			cc = (4 + mueff / n) / (n + 4 + 2 * mueff / n);
+			cs = (mueff + 2) / (n + mueff + 5);
+			c1 = 2 / ((n + 1.3) * (n + 1.3) + mueff);
+			cmu = Math.min(1 - c1, 2 * (mueff - 2 + 1 / mueff) / ((n + 2) * (n + 2) + mueff));
+			if (SEPARABLE) {
+				// A diagonal matrix has n parameters instead of n², it is learned faster
+				c1 = Math.min(1, c1 * (n + 2) / 3);
+				cmu = Math.min(1 - c1, cmu * (n + 2) / 3);
+			}
+			damps = 1 + 2 * Math.max(0, Math.sqrt((mueff - 1) / (n + 1)) - 1) + cs;
+			chiN = Math.sqrt(n) * (1 - 1.0 / (4 * n) + 1.0 / (21.0 * n * n));
+
+			pc = new double[n];
+			ps = new double[n];
+			D = new double[n];
+			Arrays.fill(D, 1);
+			if (SEPARABLE) {
+				C = new double[1][n];
+				Arrays.fill(C[0], 1);
+			} else {
+				C = new double[n][n];
+				B = new double[n][n];
+				for (int i = 0; i < n; i++) {
+					C[i][i] = 1;
+					B[i][i] = 1;
+				}
+			}
+
+			System.out.println("CMA-ES" + (SEPARABLE ? " (separable)" : "") + ": " + n + " coefficients, " + lambda
+					+ " candidates per generation, " + mu + " parents, step size " + sigma
+					+ (meanFile.exists() ? ", from the saved mean" : ""));
+		}
+
+
+	/*	----- ACCESSORS -----	*/
+
+		@Override
+		public Score getBestScore() {
+			return bestScore;
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Launch the generations: sample the candidates, make them fight, then update the distribution.
+		 * </p>
+		 *
+		 * @param numberGeneration the number of generation to do
+		 *
+		 * @exception IllegalArgumentException if the number of generation specified is less than 1
+		 */
+		@Override
+		public void generate(int numberGeneration) throws IllegalArgumentException {
+			if (numberGeneration < 1)
+				throw new IllegalArgumentException("The number of generation must be greater than 0");
+
+			for (int g = 0; g < numberGeneration; g++) {
+				System.out.println("Generation n°" + (++generation) + "...");
+				if (!SEPARABLE && evaluations.get() - eigenEvaluations > lambda / (c1 + cmu) / n / 10)
+					decompose();
+
+				// x = mean + sigma * B * D * z, with z following the standard normal distribution
+				double[][] z = new double[lambda][n];
+				double[][] y = new double[lambda][n];
+				NeuralNetwork[] candidates = new NeuralNetwork[lambda];
+				for (int k = 0; k < lambda; k++) {
+					for (int i = 0; i < n; i++)
+						z[k][i] = gaussian();
+					y[k] = transform(z[k]);
+					double[] genome = new double[n];
+					for (int i = 0; i < n; i++)
+						genome[i] = mean[i] + sigma * y[k][i];
+					candidates[k] = new NeuralNetwork(genome);
+				}
+
+				Score[] scores = fitness(lambda, (k, matchup) -> fitness(candidates[k], matchup, null));
+				Integer[] ranking = new Integer[lambda];
+				for (int k = 0; k < lambda; k++) {
+					ranking[k] = k;
+					System.out.println("\tCandidate n°" + (k + 1) + "...TESTED " + scores[k]);
+				}
+				Arrays.sort(ranking, Comparator.comparing((Integer k) -> scores[k]).reversed());
+				if (bestScore == null || scores[ranking[0]].compareTo(bestScore) > 0) {
+					best = candidates[ranking[0]];
+					bestScore = scores[ranking[0]];
+				}
+
+				update(z, y, ranking);
+
+				double sum = 0;
+				for (Score score : scores)
+					sum += score.getRoundScore();
+				System.out.println("\tBest " + String.format(Locale.US, "%.1f", scores[ranking[0]].getRoundScore())
+						+ ", mean " + String.format(Locale.US, "%.1f", sum / lambda) + " per round, step size "
+						+ String.format(Locale.US, "%.4f", sigma) + ", " + evaluations.get() + " battles");
+				checkTarget(bestScore);
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Move the mean toward the best candidates and adapt the covariance matrix and the step size.
+		 * </p>
+		 *
+		 * @param z the normal vectors of the candidates
+		 * @param y the steps of the candidates (B D z), before the step size
+		 * @param ranking the indexes of the candidates, from the best to the worst
+		 */
+		private void update(double[][] z, double[][] y, Integer[] ranking) {
+			double[] yw = new double[n];
+			double[] zw = new double[n];
+			for (int r = 0; r < mu; r++)
+				for (int i = 0; i < n; i++) {
+					yw[i] += weights[r] * y[ranking[r]][i];
+					zw[i] += weights[r] * z[ranking[r]][i];
+				}
+			for (int i = 0; i < n; i++)
+				mean[i] += sigma * yw[i];
+
+			// Step size path: C^(-1/2) yw = B zw (zw itself in the separable mode)
+			double[] invsqrtCyw = SEPARABLE ? zw : multiply(B, zw);
+			double norm = 0;
+			for (int i = 0; i < n; i++) {
+				ps[i] = (1 - cs) * ps[i] + Math.sqrt(cs * (2 - cs) * mueff) * invsqrtCyw[i];
+				norm += ps[i] * ps[i];
+			}
+			norm = Math.sqrt(norm);
+
+			// The rank-one update stalls while the step size path is too long, so pc does not overshoot
+			boolean hsig = norm / Math.sqrt(1 - Math.pow(1 - cs, 2 * generation)) / chiN < 1.4 + 2.0 / (n + 1);
+			for (int i = 0; i < n; i++)
+				pc[i] = (1 - cc) * pc[i] + (hsig ? Math.sqrt(cc * (2 - cc) * mueff) * yw[i] : 0);
+
+			double decay = 1 - c1 - cmu + (hsig ? 0 : c1 * cc * (2 - cc));
+			if (SEPARABLE)
+				for (int i = 0; i < n; i++) {
+					double rankMu = 0;
+					for (int r = 0; r < mu; r++)
+						rankMu += weights[r] * y[ranking[r]][i] * y[ranking[r]][i];
+					C[0][i] = decay * C[0][i] + c1 * pc[i] * pc[i] + cmu * rankMu;
+					D[i] = Math.sqrt(C[0][i]);
+				}
+			else {
+				// Rank-μ update as a sum of μ outer products, on the upper triangle only
+				for (int i = 0; i < n; i++)
+					for (int j = i; j < n; j++)
+						C[i][j] = decay * C[i][j] + c1 * pc[i] * pc[j];
+				for (int r = 0; r < mu; r++) {
+					double[] step = y[ranking[r]];
+					double weight = cmu * weights[r];
+					for (int i = 0; i < n; i++) {
+						double wi = weight * step[i];
+						for (int j = i; j < n; j++)
+							C[i][j] += wi * step[j];
+					}
+				}
+				for (int i = 0; i < n; i++)
+					for (int j = i + 1; j < n; j++)
+						C[j][i] = C[i][j];
+			}
+
+			sigma *= Math.exp((cs / damps) * (norm / chiN - 1));
+		}
+
+		/**
+		 * <p>
+		 *     Compute B and D from the covariance matrix. It costs O(n³), so it is only done when the covariance matrix
+		 *     has changed enough since the last time.
+		 * </p>
+		 */
+		private void decompose() {
+			eigenEvaluations = evaluations.get();
+			for (int i = 0; i < n; i++)
+				B[i] = C[i].clone();
+			double[] e = new double[n];
+			tridiagonalize(B, D, e);
+			diagonalize(B, D, e);
+			for (int i = 0; i < n; i++)
+				// The rounding errors can give a tiny negative eigenvalue
+				D[i] = Math.sqrt(Math.max(D[i], 1e-20));
+		}
+
+		/**
+		 * <p>
+		 *     Return the step of a normal vector: B D z, or D z in the separable mode.
+		 * </p>
+		 *
+		 * @param z the normal vector
+		 *
+		 * @return the step, before the step size
+		 */
+		private double[] transform(double[] z) {
+			double[] dz = new double[n];
+			for (int i = 0; i < n; i++)
+				dz[i] = D[i] * z[i];
+			return SEPARABLE ? dz : multiply(B, dz);
+		}
+
+		/**
+		 * <p>
+		 *     Multiply a matrix by a vector.
+		 * </p>
+		 *
+		 * @param m the matrix
+		 * @param v the vector
+		 *
+		 * @return m v
+		 */
+		private static double[] multiply(double[][] m, double[] v) {
+			double[] result = new double[v.length];
+			for (int i = 0; i < m.length; i++) {
+				double sum = 0;
+				for (int j = 0; j < v.length; j++)
+					sum += m[i][j] * v[j];
+				result[i] = sum;
+			}
+			return result;
+		}
+
+		/**
+		 * <p>
+		 *     Return a number of the standard normal distribution (polar method of Marsaglia).
+		 * </p>
+		 *
+		 * @return the number
+		 */
+		private double gaussian() {
+			double u, v, s;
+			do {
+				u = random.nextDouble() * 2 - 1;
+				v = random.nextDouble() * 2 - 1;
+				s = u * u + v * v;
+			} while (s >= 1 || s == 0);
+			return u * Math.sqrt(-2 * Math.log(s) / s);
+		}
+
+		/**
+		 * <p>
+		 *     Reduce a symmetric matrix to a tridiagonal matrix by Householder reflections (tred2 of EISPACK, as in JAMA).
+		 * </p>
+		 *
+		 * @param V the symmetric matrix, replaced by the orthogonal transformation
+		 * @param d receives the diagonal of the tridiagonal matrix
+		 * @param e receives its subdiagonal, in e[1..n-1]
+		 */
+		private static void tridiagonalize(double[][] V, double[] d, double[] e) {
+			int n = d.length;
+			for (int j = 0; j < n; j++)
+				d[j] = V[n - 1][j];
+
+			for (int i = n - 1; i > 0; i--) {
+				double scale = 0;
+				double h = 0;
+				for (int k = 0; k < i; k++)
+					scale += Math.abs(d[k]);
+
+				if (scale == 0) {
+					e[i] = d[i - 1];
+					for (int j = 0; j < i; j++) {
+						d[j] = V[i - 1][j];
+						V[i][j] = 0;
+						V[j][i] = 0;
+					}
+				} else {
+					for (int k = 0; k < i; k++) {
+						d[k] /= scale;
+						h += d[k] * d[k];
+					}
+					double f = d[i - 1];
+					double g = f > 0 ? -Math.sqrt(h) : Math.sqrt(h);
+					e[i] = scale * g;
+					h -= f * g;
+					d[i - 1] = f - g;
+					for (int j = 0; j < i; j++)
+						e[j] = 0;
+
+					for (int j = 0; j < i; j++) {
+						f = d[j];
+						V[j][i] = f;
+						g = e[j] + V[j][j] * f;
+						for (int k = j + 1; k <= i - 1; k++) {
+							g += V[k][j] * d[k];
+							e[k] += V[k][j] * f;
+						}
+						e[j] = g;
+					}
+					f = 0;
+					for (int j = 0; j < i; j++) {
+						e[j] /= h;
+						f += e[j] * d[j];
+					}
+					double hh = f / (h + h);
+					for (int j = 0; j < i; j++)
+						e[j] -= hh * d[j];
+					for (int j = 0; j < i; j++) {
+						f = d[j];
+						g = e[j];
+						for (int k = j; k <= i - 1; k++)
+							V[k][j] -= f * e[k] + g * d[k];
+						d[j] = V[i - 1][j];
+						V[i][j] = 0;
+					}
+				}
+				d[i] = h;
+			}
+
+			// Accumulate the transformations
+			for (int i = 0; i < n - 1; i++) {
+				V[n - 1][i] = V[i][i];
+				V[i][i] = 1;
+				double h = d[i + 1];
+				if (h != 0) {
+					for (int k = 0; k <= i; k++)
+						d[k] = V[k][i + 1] / h;
+					for (int j = 0; j <= i; j++) {
+						double g = 0;
+						for (int k = 0; k <= i; k++)
+							g += V[k][i + 1] * V[k][j];
+						for (int k = 0; k <= i; k++)
+							V[k][j] -= g * d[k];
+					}
+				}
+				for (int k = 0; k <= i; k++)
+					V[k][i + 1] = 0;
+			}
+			for (int j = 0; j < n; j++) {
+				d[j] = V[n - 1][j];
+				V[n - 1][j] = 0;
+			}
+			V[n - 1][n - 1] = 1;
+			e[0] = 0;
+		}
+
+		/**
+		 * <p>
+		 *     Diagonalize a symmetric tridiagonal matrix by the QL algorithm with implicit shifts
+		 *     (tql2 of EISPACK, as in JAMA).
+		 * </p>
+		 *
+		 * @param V the transformation of the tridiagonalization, replaced by the eigenvectors (in columns)
+		 * @param d the diagonal, replaced by the eigenvalues
+		 * @param e the subdiagonal, destroyed
+		 */
+		private static void diagonalize(double[][] V, double[] d, double[] e) {
+			int n = d.length;
+			for (int i = 1; i < n; i++)
+				e[i - 1] = e[i];
+			e[n - 1] = 0;
+
+			double f = 0;
+			double tst1 = 0;
+			double eps = Math.pow(2, -52);
+			for (int l = 0; l < n; l++) {
+				// Find a small subdiagonal element
+				tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+				int m = l;
+				while (m < n - 1 && Math.abs(e[m]) > eps * tst1)
+					m++;
+
+				// If m == l, d[l] is already an eigenvalue, else iterate
+				if (m > l)
+					do {
+						double g = d[l];
+						double p = (d[l + 1] - g) / (2 * e[l]);
+						double r = Math.hypot(p, 1);
+						if (p < 0)
+							r = -r;
+						d[l] = e[l] / (p + r);
+						d[l + 1] = e[l] * (p + r);
+						double dl1 = d[l + 1];
+						double h = g - d[l];
+						for (int i = l + 2; i < n; i++)
+							d[i] -= h;
+						f += h;
+
+						// Implicit QL transformation
+						p = d[m];
+						double c = 1;
+						double c2 = c;
+						double c3 = c;
+						double el1 = e[l + 1];
+						double s = 0;
+						double s2 = 0;
+						for (int i = m - 1; i >= l; i--) {
+							c3 = c2;
+							c2 = c;
+							s2 = s;
+							g = c * e[i];
+							h = c * p;
+							r = Math.hypot(p, e[i]);
+							e[i + 1] = s * r;
+							s = e[i] / r;
+							c = p / r;
+							p = c * d[i] - s * g;
+							d[i + 1] = h + s * (c * g + s * d[i]);
+							for (int k = 0; k < n; k++) {
+								h = V[k][i + 1];
+								V[k][i + 1] = s * V[k][i] + c * h;
+								V[k][i] = c * V[k][i] - s * h;
+							}
+						}
+						p = -s * s2 * c3 * el1 * e[l] / dl1;
+						e[l] = s * p;
+						d[l] = c * p;
+					} while (Math.abs(e[l]) > eps * tst1);
+
+				d[l] += f;
+				e[l] = 0;
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Save the mean of the distribution and the best candidate found.
+		 * </p>
+		 */
+		@Override
+		public void savePopulation() {
+			System.out.println("The distribution is being saved...");
+			save(new NeuralNetwork(mean.clone()), new File(CMAES_DIRECTORY + MEAN_FILENAME));
+			if (best != null)
+				save(best, new File(CMAES_DIRECTORY + BEST_FILENAME));
+			System.out.println("DONE");
+		}
+
+		/**
+		 * <p>
+		 *     Return the best candidate found.
+		 * </p>
+		 *
+		 * @param copy if true, copy the best candidate into the Darwini's perceptron
+		 *
+		 * @return 0, there is only one best candidate
+		 */
+		@Override
+		public int whoIsTheBest(boolean copy) {
+			if (copy && best != null)
+				copyToRobot(best);
+			return 0;
+		}
+
+}
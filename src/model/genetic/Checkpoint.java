@@ -0,0 +1,163 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class Checkpoint.java
+ */
+
+package model.genetic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ *     The binary file where a genetic algorithm saves its whole state, to resume a long run without fighting again.
+ *     The state is copied into bytes by the genetic algorithm between two generations, then written on its own thread
+ *     while the next generation fights.
+ * </p>
+ * <p>
+ *     A checkpoint is written into a temporary file, synchronized on the disk, then moved onto the previous checkpoint
+ *     in one atomic rename: if the run is killed while writing, the previous checkpoint is still whole.
+ * </p>
+ *
+ * @see GeneticAlgorithm
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class Checkpoint {
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The checkpoint file.
+		 * </p>
+		 */
+		private File file;
+
+		/**
+		 * <p>
+		 *     The thread writing the checkpoints, one after another.
+		 * </p>
+		 */
+		private ExecutorService writer;
+
+		/**
+		 * <p>
+		 *     The last checkpoint written, null before the first one.
+		 * </p>
+		 */
+		private Future<?> pending;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * @param file the checkpoint file
+		 */
+		public Checkpoint(File file) {
+			this.file = file;
+			writer = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "checkpoint " + file.getPath());
+				// A checkpoint is only lost if the run ends without waiting for it
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Write a checkpoint on the thread of the checkpoints, after the previous one.
+		 * </p>
+		 *
+		 * @param generation the generation saved, printed when it is written
+		 * @param state the state of the genetic algorithm
+		 */
+		public void save(int generation, byte[] state) {
+			pending = writer.submit(() -> {
+				long start = System.nanoTime();
+				try {
+					write(state);
+					System.out.println("\tCheckpoint of the generation n°" + generation + " saved (" + state.length / 1024 + " KB in "
+							+ (System.nanoTime() - start) / 1000000 + " ms)");
+				} catch (IOException e) {
+					System.out.println("The checkpoint " + file.getPath() + " cannot be written: " + e.getMessage());
+				}
+			});
+		}
+
+		/**
+		 * <p>
+		 *     Wait for the last checkpoint to be written.
+		 * </p>
+		 */
+		public void await() {
+			if (pending == null)
+				return;
+
+			try {
+				pending.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Read the last checkpoint.
+		 * </p>
+		 *
+		 * @return the state of the genetic algorithm, null if there is no checkpoint
+		 *
+		 * @throws IOException if the checkpoint cannot be read
+		 */
+		public byte[] read() throws IOException {
+			return file.exists() ? Files.readAllBytes(file.toPath()) : null;
+		}
+
+		/**
+		 * <p>
+		 *     Write a checkpoint into a temporary file, then move it onto the checkpoint file.
+		 * </p>
+		 *
+		 * @param state the state of the genetic algorithm
+		 *
+		 * @throws IOException if the checkpoint cannot be written
+		 */
+		private void write(byte[] state) throws IOException {
+			File temporary = new File(file.getPath() + ".tmp");
+			try (FileOutputStream out = new FileOutputStream(temporary)) {
+				out.write(state);
+				out.getFD().sync();
+			}
+
+			try {
+				Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+
+		/**
+		 * @return the checkpoint file
+		 */
+		public File getFile() {
+			return file;
+		}
+
+}
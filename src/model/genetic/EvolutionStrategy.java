@@ -0,0 +1,304 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class EvolutionStrategy.java
+ */
+
+package model.genetic;
+
+import model.evaluation.BattleConfiguration;
+import model.evaluation.Evaluator;
+import model.perceptron.NeuralNetwork;
+import model.perceptron.NoiseTable;
+import model.perceptron.Perturbation;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * <p>
+ *     The evolution strategy of OpenAI (Salimans et al., Evolution Strategies as a Scalable Alternative to Reinforcement
+ *     Learning), an optimizer of the genome of the perceptron chosen with -Ddarwini.optimizer=es.
+ *     Every generation tries {@link #PAIRS} pairs of antithetic perturbations of a center (center + sigma * noise and
+ *     center - sigma * noise), estimates the gradient of the score from their ranks, and moves the center with Adam.
+ * </p>
+ * <p>
+ *     The noises are slices of a shared NoiseTable, so a perturbation is only an offset and a sign: with a Coordinator,
+ *     the remote workers receive the center once per generation, then a few numbers per battle instead of a genome,
+ *     and they send back the score. The generation can have as many battles at the same time as there are workers.
+ * </p>
+ * <p>
+ *     The center and the best perturbation found are saved in data/population/es/. At the next launch, the search
+ *     starts again from the saved center.
+ * </p>
+ *
+ * @see Optimizer
+ * @see NoiseTable
+ * @see Perturbation
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class EvolutionStrategy extends AbstractOptimizer {
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     The directory where the center and the best perturbation are saved.
+		 * </p>
+		 */
+		private static final String ES_DIRECTORY = GeneticAlgorithm.POPULATION_DIRECTORY + "es/";
+
+		/**
+		 * <p>
+		 *     The file of the center.
+		 * </p>
+		 */
+		private static final String CENTER_FILENAME = "Center.xml";
+
+		/**
+		 * <p>
+		 *     The file of the best perturbation found.
+		 * </p>
+		 */
+		private static final String BEST_FILENAME = "Best.xml";
+
+		/**
+		 * <p>
+		 *     The number of pairs of perturbations of a generation, changed with -Ddarwini.pairs=N.
+		 * </p>
+		 */
+		private static final int PAIRS = Integer.getInteger("darwini.pairs", 16);
+
+		/**
+		 * <p>
+		 *     The standard deviation of the perturbations, changed with -Ddarwini.sigma=S.
+		 * </p>
+		 */
+		private static final double SIGMA = Double.parseDouble(System.getProperty("darwini.sigma", "0.1"));
+
+		/**
+		 * <p>
+		 *     The learning rate of Adam, changed with -Ddarwini.rate=R.
+		 * </p>
+		 */
+		private static final double LEARNING_RATE = Double.parseDouble(System.getProperty("darwini.rate", "0.01"));
+
+		/**
+		 * <p>
+		 *     The L2 penalty of the coefficients, which keeps them small.
+		 * </p>
+		 */
+		private static final double WEIGHT_DECAY = 0.005;
+
+		/**
+		 * <p>
+		 *     The decay rates of the moments of Adam, and its constant avoiding a division by zero.
+		 * </p>
+		 */
+		private static final double BETA1 = 0.9, BETA2 = 0.999, EPSILON = 1e-8;
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The random numbers choosing the offsets of the perturbations.
+		 * </p>
+		 */
+		private SplittableRandom random;
+
+		/**
+		 * <p>
+		 *     The table of the perturbations.
+		 * </p>
+		 */
+		private NoiseTable table;
+
+		/**
+		 * <p>
+		 *     The center of the perturbations.
+		 * </p>
+		 */
+		private double[] center;
+
+		/**
+		 * <p>
+		 *     The first and second moments of the gradient, for Adam.
+		 * </p>
+		 */
+		private double[] m, v;
+
+		/**
+		 * <p>
+		 *     The number of generations done, also the version of the center sent to the workers.
+		 * </p>
+		 */
+		private int generation;
+
+		/**
+		 * <p>
+		 *     The best perturbation found and its score.
+		 * </p>
+		 */
+		private NeuralNetwork best;
+		private Score bestScore;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * <p>
+		 *     Start from the saved center, or from a random perceptron, and compute the noise table.
+		 * </p>
+		 *
+		 * @param evaluator the fitness backend which makes the perturbations fight
+		 * @param battle the battle used to test the perturbations
+		 */
+		public EvolutionStrategy(Evaluator evaluator, BattleConfiguration battle) {
+			super(evaluator, battle);
+			random = GeneticAlgorithm.newRandom();
+			new File(ES_DIRECTORY).mkdirs();
+
+			File centerFile = new File(ES_DIRECTORY + CENTER_FILENAME);
+			center = (centerFile.exists() ? new NeuralNetwork(centerFile) : new NeuralNetwork(random.split())).getGenome().clone();
+			m = new double[center.length];
+			v = new double[center.length];
+
+			long start = System.nanoTime();
+			table = NoiseTable.getShared();
+			System.out.println("Evolution strategy: " + center.length + " coefficients, " + PAIRS + " pairs of perturbations"
+					+ " per generation, step size " + SIGMA + ", noise table of " + table.getSize() + " values computed in "
+					+ (System.nanoTime() - start) / 1000000 + " ms" + (centerFile.exists() ? ", from the saved center" : ""));
+		}
+
+
+	/*	----- ACCESSORS -----	*/
+
+		@Override
+		public Score getBestScore() {
+			return bestScore;
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Launch the generations: make the perturbations of the center fight, then move the center.
+		 * </p>
+		 *
+		 * @param numberGeneration the number of generation to do
+		 *
+		 * @exception IllegalArgumentException if the number of generation specified is less than 1
+		 */
+		@Override
+		public void generate(int numberGeneration) throws IllegalArgumentException {
+			if (numberGeneration < 1)
+				throw new IllegalArgumentException("The number of generation must be greater than 0");
+
+			for (int g = 0; g < numberGeneration; g++) {
+				System.out.println("Generation n°" + (++generation) + "...");
+
+				// The perturbations 2i and 2i + 1 share their noise, with opposite signs
+				NeuralNetwork centerNetwork = new NeuralNetwork(center.clone());
+				Perturbation[] perturbations = new Perturbation[2 * PAIRS];
+				for (int i = 0; i < PAIRS; i++) {
+					int offset = table.sample(random, center.length);
+					perturbations[2 * i] = new Perturbation(centerNetwork, generation, table, offset, 1, SIGMA);
+					perturbations[2 * i + 1] = new Perturbation(centerNetwork, generation, table, offset, -1, SIGMA);
+				}
+
+				Score[] scores = fitness(perturbations.length, (k, matchup) -> fitness(perturbations[k], matchup));
+				Integer[] ranking = new Integer[scores.length];
+				for (int k = 0; k < scores.length; k++) {
+					ranking[k] = k;
+					System.out.println("\tPerturbation n°" + (k + 1) + "...TESTED " + scores[k]);
+				}
+				Arrays.sort(ranking, Comparator.comparing((Integer k) -> scores[k]));
+				if (bestScore == null || scores[ranking[scores.length - 1]].compareTo(bestScore) > 0) {
+					best = perturbations[ranking[scores.length - 1]].apply();
+					bestScore = scores[ranking[scores.length - 1]];
+				}
+
+				update(perturbations, ranking);
+
+				double sum = 0;
+				for (Score score : scores)
+					sum += score.getRoundScore();
+				System.out.println("\tBest " + String.format(Locale.US, "%.1f", scores[ranking[scores.length - 1]].getRoundScore())
+						+ ", mean " + String.format(Locale.US, "%.1f", sum / scores.length) + " per round, "
+						+ evaluations.get() + " battles");
+				checkTarget(bestScore);
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Move the center along the gradient estimated from the ranks of the perturbations (centered ranks
+		 *     from -0.5 to 0.5, so the step does not depend on the scale of the scores nor on a lucky battle).
+		 * </p>
+		 *
+		 * @param perturbations the perturbations of the generation
+		 * @param ranking the indexes of the perturbations, from the worst to the best
+		 */
+		private void update(Perturbation[] perturbations, Integer[] ranking) {
+			double[] utility = new double[perturbations.length];
+			for (int rank = 0; rank < ranking.length; rank++)
+				utility[ranking[rank]] = (double) rank / (ranking.length - 1) - 0.5;
+
+			double[] gradient = new double[center.length];
+			for (int i = 0; i < PAIRS; i++) {
+				double weight = utility[2 * i] - utility[2 * i + 1];
+				int offset = perturbations[2 * i].getOffset();
+				for (int j = 0; j < center.length; j++)
+					gradient[j] += weight * table.get(offset + j);
+			}
+
+			// Adam, ascending the gradient of the score minus the L2 penalty
+			double correction1 = 1 - Math.pow(BETA1, generation);
+			double correction2 = 1 - Math.pow(BETA2, generation);
+			for (int j = 0; j < center.length; j++) {
+				double g = gradient[j] / (perturbations.length * SIGMA) - WEIGHT_DECAY * center[j];
+				m[j] = BETA1 * m[j] + (1 - BETA1) * g;
+				v[j] = BETA2 * v[j] + (1 - BETA2) * g * g;
+				center[j] += LEARNING_RATE * (m[j] / correction1) / (Math.sqrt(v[j] / correction2) + EPSILON);
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Save the center and the best perturbation found.
+		 * </p>
+		 */
+		@Override
+		public void savePopulation() {
+			System.out.println("The center is being saved...");
+			save(new NeuralNetwork(center.clone()), new File(ES_DIRECTORY + CENTER_FILENAME));
+			if (best != null)
+				save(best, new File(ES_DIRECTORY + BEST_FILENAME));
+			System.out.println("DONE");
+		}
+
+		/**
+		 * <p>
+		 *     Return the best perturbation found.
+		 * </p>
+		 *
+		 * @param copy if true, copy the best perturbation into the Darwini's perceptron
+		 *
+		 * @return 0, there is only one best perturbation
+		 */
+		@Override
+		public int whoIsTheBest(boolean copy) {
+			if (copy && best != null)
+				copyToRobot(best);
+			return 0;
+		}
+
+}
@@ -10,14 +10,37 @@ package model.genetic;
 
 //import com.sun.scenario.effect.impl.sw.sse.SSEBlend_SRC_OUTPeer;
 import controller.Darwini;
+import model.evaluation.BattleConfiguration;
+import model.evaluation.ConcurrencyController;
+import model.evaluation.Evaluator;
+import model.evaluation.Race;
+import model.evaluation.Telemetry;
 import model.perceptron.Matrix;
 import model.perceptron.NeuralNetwork;
 
 import javax.xml.stream.XMLStreamException;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
 
 /**
  * This class implements a genetic algorithm to robocode to find the parameters of a perceptron.
@@ -35,7 +58,7 @@ import java.util.concurrent.TimeUnit;
  * @author Estevany Raphael
  * @author Serano Edgar
  */
-public class GeneticAlgorithm {
+public class GeneticAlgorithm extends AbstractOptimizer {
 
 	/*	----- PATHS -----	*/
 
@@ -44,7 +67,7 @@ public class GeneticAlgorithm {
 		 *     The directory where the population will be saved.
          * </p>
          */
-        private static final String POPULATION_DIRECTORY = "data/population/";
+        public static final String POPULATION_DIRECTORY = "data/population/";
 
         /**
          * <p>
@@ -53,7 +76,7 @@ public class GeneticAlgorithm {
 		 *     Currently, it is set to IntelliJ configuration.
          * </p>
          */
-        private static final String ROBOT_DIRECTORY = "out/production/Darwini/controller/Darwini.data/";
+        public static final String ROBOT_DIRECTORY = "out/production/Darwini/controller/Darwini.data/";
 
         /**
          * <p>
@@ -62,45 +85,53 @@ public class GeneticAlgorithm {
          */
         private static final String INDIVIDUAL_FILENAME = "Individual";
 
-		/**
-		 * <p>
-		 *     The directory containing the Robocode library.
-		 * </p>
+        /**
+         * <p>
+         *     The name of the checkpoint file, in the directory of the population.
+         * </p>
          */
-        private static final String ROBOCODE_PATH = "libs/robocode.jar";
+        private static final String CHECKPOINT_FILENAME = "checkpoint.bin";
 
         /**
          * <p>
-		 *     The battle configuration for test the individuals.
-		 *     Modify it if you want to change the opponent robot.
+         *     The first bytes of a checkpoint, "DRWN", and the version of its format.
          * </p>
          */
-        private static final String BATTLE_PATH = "data/test.battle";
+        private static final int CHECKPOINT_MAGIC = 0x4452574E, CHECKPOINT_VERSION = 5;
 
         /**
          * <p>
-		 *     The path where the temporary file created by Robocode will be saved.
+         *     The file where the telemetry of the run is appended at the end of every generation, one JSON line
+         *     per generation (of all the islands together with an IslandModel).
          * </p>
+         *
+         * @see Telemetry
          */
-        private static final String RESULTS_PATH = "results.txt";
+        static final String TELEMETRY_PATH = POPULATION_DIRECTORY + "telemetry.jsonl";
 
 
 	/*	----- GENETIC SETTINGS -----	*/
 
         /**
          * <p>
-		 *     Take only the third quarter of the available cores of the computer user.
+		 *     Take only the third quarter of the available cores of the computer user (at least one).
+		 *     It is also the number of battles run at the same time.
+		 *     With remote workers, set it to their number with -Ddarwini.threads=N.
+		 *     With the "process" and "pool" evaluators, unless -Ddarwini.adaptive=false, it is the largest number of battles
+		 *     at the same time (all the cores by default), and the ConcurrencyController chooses how many of them run.
          * </p>
          */
-        private static final int NB_THREADS = 3 * Runtime.getRuntime().availableProcessors() / 4;
+        public static final int NB_THREADS = Integer.getInteger("darwini.threads", ConcurrencyController.ENABLED
+                && ConcurrencyController.reasonToSkip(System.getProperty("darwini.evaluator", "engine")) == null
+                ? Runtime.getRuntime().availableProcessors() : Math.max(1, 3 * Runtime.getRuntime().availableProcessors() / 4));
 
         /**
          * <p>
-		 *     The size of the population.
+		 *     The size of the population, changed with -Ddarwini.population=N.
          * </p>
          */
 
-	private static final int POPULATION_SIZE = 4;
+	private static final int POPULATION_SIZE = Integer.getInteger("darwini.population", 4);
 
 
         /**
@@ -138,9 +169,144 @@ public class GeneticAlgorithm {
 		 */
         private static final int MUTATION_MAX = 20;
 
+        /**
+         * <p>
+		 *     The bound used to stop the battles of the children which cannot beat the best individual,
+		 *     chosen with -Ddarwini.race=sprt|hoeffding (by default, all the rounds are fought).
+         * </p>
+         */
+        private static final Race.Bound RACE_BOUND = System.getProperty("darwini.race") == null ? null
+                : Race.Bound.valueOf(System.getProperty("darwini.race").toUpperCase(Locale.ROOT));
+
+        /**
+         * <p>
+		 *     The probability to stop the battle of a child as good as the best individual.
+         * </p>
+         */
+        private static final double RACE_RISK = 0.05;
+
+        /**
+         * <p>
+		 *     The rounds first given to every child by the successive halving, enabled with -Ddarwini.halving=true.
+		 *     The best half of the children then get twice more rounds, and so on until the whole battle is fought
+		 *     by the best ones: a generation costs about the half of the rounds of a flat evaluation.
+         * </p>
+         */
+        private static final int HALVING_ROUNDS = Boolean.getBoolean("darwini.halving") ? 2 : 0;
+
+        /**
+         * <p>
+         *     The steady-state mode, enabled with -Ddarwini.steady=true: there is no generation barrier,
+         *     a new child is bred as soon as a battle ends, so all the threads always fight.
+         *     The successive halving needs a whole generation, it is not used in this mode.
+         * </p>
+         */
+        private static final boolean STEADY_STATE = Boolean.getBoolean("darwini.steady");
+
+        /**
+         * <p>
+         *     The seed of the random numbers, given with -Ddarwini.seed=N to run the same evolution again
+         *     (null for a new seed every run, printed at the start).
+         *     With the same seed and the same scores, the populations are identical bit for bit:
+         *     every individual created at the initialization has its own stream split from the seed,
+         *     and every generation breeds with its own stream, drawn from the seed and the number of the generation.
+         * </p>
+         */
+        private static final Long SEED = Long.getLong("darwini.seed");
+
+        /**
+         * <p>
+         *     The multi-objective mode, enabled with -Ddarwini.nsga=true: the individuals are selected by NSGA-II over
+         *     the objectives of their scores instead of their weighted score, and the children of a generation compete
+         *     with their parents to survive. The run ends with a Pareto front instead of one tuning of the weights.
+         *     The children fight all the rounds (no racing, no successive halving), and there is no steady state.
+         * </p>
+         *
+         * @see NSGA2
+         */
+        private static final boolean MULTI_OBJECTIVE = Boolean.getBoolean("darwini.nsga");
+
+        /**
+         * <p>
+         *     The novelty search, enabled with -Ddarwini.novelty=true: the individuals are selected by the novelty of
+         *     their behaviour instead of their score, so the population does not collapse onto one behaviour.
+         *     The behaviours of all the individuals evaluated are archived; the best individual is still the one
+         *     with the best score. It is not used in the multi-objective mode.
+         * </p>
+         *
+         * @see BehaviourArchive
+         */
+        private static final boolean NOVELTY = !MULTI_OBJECTIVE && Boolean.getBoolean("darwini.novelty");
+
+        /**
+         * <p>
+         *     The number of nearest neighbours giving the novelty of a behaviour, changed with -Ddarwini.neighbours=K.
+         * </p>
+         */
+        private static final int NEIGHBOURS = Integer.getInteger("darwini.neighbours", 15);
+
+        /**
+         * <p>
+         *     The number of generations between two checkpoints, changed with -Ddarwini.checkpoint=K (0 for no checkpoint).
+         *     At the next launch, the population is resumed from the last checkpoint without any battle;
+         *     the XML files of the individuals are only read when there is no checkpoint.
+         *     In the steady state, a generation is as many children as the generations would have created.
+         * </p>
+         *
+         * @see Checkpoint
+         */
+        private static final int CHECKPOINT_INTERVAL = Integer.getInteger("darwini.checkpoint", 1);
+
+        /**
+         * <p>
+         *     The pre-screening of the children, enabled with -Ddarwini.surrogate=K: K times more children are bred than
+         *     evaluated, and a surrogate model learnt from all the previous scores chooses the ones which fight.
+         *     The surrogate predicts the weighted score, it is not used in the multi-objective mode.
+         * </p>
+         *
+         * @see Surrogate
+         */
+        private static final int SURROGATE = MULTI_OBJECTIVE || NOVELTY ? 0 : Integer.getInteger("darwini.surrogate", 0);
+
+        /**
+         * <p>
+         *     The co-evolution, enabled with -Ddarwini.champions=K: the best individual of every generation enters a hall
+         *     of fame, and every new individual also fights K champions drawn from it, besides the opponents of the battle.
+         *     The individuals cannot overfit one fixed opponent, they must beat their ancestors too.
+         *     When the champions drawn change, the individuals which survive fight the new ones again, so all the scores
+         *     compared have been earned against the same champions (with the fitness cache, only the battles against the
+         *     new champions are fought).
+         * </p>
+         *
+         * @see controller.Champion
+         */
+        private static final int CHAMPIONS = Integer.getInteger("darwini.champions", 0);
+
 
 	/*	----- ATTRIBUTES -----	*/
 
+		/**
+		 * <p>
+		 *     The directory where this population is saved (a sub-directory of the population directory for an island).
+		 * </p>
+		 */
+		private String populationDirectory;
+
+		/**
+		 * <p>
+		 *     What is done with the telemetry at the end of every generation, given its number:
+		 *     null for a report of this population, or the report of all the islands of an IslandModel.
+		 * </p>
+		 */
+		private IntConsumer reporter;
+
+		/**
+		 * <p>
+		 *     The number of generations created.
+		 * </p>
+		 */
+		private int generation;
+
 		/**
 		 * <p>
 		 *     The individuals of the generation.
@@ -155,6 +321,98 @@ public class GeneticAlgorithm {
 		 */
         private Score[] scores;
 
+		/**
+		 * <p>
+		 *     The front of every individual in the multi-objective mode, from 0 for the Pareto front.
+		 * </p>
+		 */
+		private int[] ranks;
+
+		/**
+		 * <p>
+		 *     The crowding distance of every individual in its front, in the multi-objective mode.
+		 * </p>
+		 */
+		private double[] crowding;
+
+		/**
+		 * <p>
+		 *     The behaviours of all the individuals evaluated, in the novelty search (null otherwise).
+		 * </p>
+		 */
+		private BehaviourArchive archive;
+
+		/**
+		 * <p>
+		 *     The novelty of every individual, in the novelty search.
+		 * </p>
+		 */
+		private double[] novelty;
+
+		/**
+		 * <p>
+		 *     The file where the state of the genetic algorithm is saved between two generations.
+		 * </p>
+		 */
+		private Checkpoint checkpoint;
+
+		/**
+		 * <p>
+		 *     The genomes of the children, recycled when the individuals die.
+		 * </p>
+		 */
+		private GenomeArena arena;
+
+		/**
+		 * <p>
+		 *     The model choosing the children which fight, null without pre-screening.
+		 * </p>
+		 */
+		private Surrogate surrogate;
+
+		/**
+		 * <p>
+		 *     The champions of the past generations, from the oldest, in the co-evolution.
+		 * </p>
+		 */
+		private List<NeuralNetwork> hallOfFame;
+
+		/**
+		 * <p>
+		 *     The champions fought by the new individuals of the current generation.
+		 * </p>
+		 */
+		private List<NeuralNetwork> sparring;
+
+		/**
+		 * <p>
+		 *     The random numbers of the selections, crossovers and mutations.
+		 * </p>
+		 */
+		private SplittableRandom random;
+
+		/**
+		 * <p>
+		 *     The seed of the random numbers of the generations of this population.
+		 * </p>
+		 */
+		private long seed;
+
+		/**
+		 * <p>
+		 *     The real time spent evaluating the individuals (in nanoseconds).
+		 * </p>
+		 */
+		private long evaluationTime;
+
+		/**
+		 * <p>
+		 *     The estimated time of a round against every opponent (in nanoseconds, measured by the evaluators on the battles
+		 *     alone), to run the longest battles first.
+		 * </p>
+		 */
+		private Map<String, Double> roundTimes;
+
 
 	/*	----- CONSTRUCTOR -----	*/
 
@@ -163,21 +421,70 @@ public class GeneticAlgorithm {
 		 *     Initialize the genetic algorithm loading all the available individuals (perceptron) or creating it if it doesn't exist.
 		 *     During the initialization, each perceptron is tested and scored.
 		 * </p>
+		 *
+		 * @param evaluator the fitness backend which makes the individuals fight
+		 * @param battle the battle used to test the individuals
+		 */
+		public GeneticAlgorithm(Evaluator evaluator, BattleConfiguration battle){
+			this(evaluator, battle, POPULATION_DIRECTORY, newRandom());
+		}
+
+		/**
+		 * <p>
+		 *     Initialize the genetic algorithm with the individuals of a given directory, like an island of an IslandModel.
+		 * </p>
+		 *
+		 * @param evaluator the fitness backend which makes the individuals fight
+		 * @param battle the battle used to test the individuals
+		 * @param populationDirectory the directory where the population is loaded and saved, ending with a "/"
+		 * @param random the random numbers of this population, split from the ones of the other populations
+		 */
+		public GeneticAlgorithm(Evaluator evaluator, BattleConfiguration battle, String populationDirectory, SplittableRandom random) {
+			this(evaluator, battle, populationDirectory, random, null);
+		}
+
+		/**
+		 * <p>
+		 *     Initialize an island of an IslandModel, which reports the telemetry of all its islands.
+		 * </p>
+		 *
+		 * @param evaluator the fitness backend which makes the individuals fight
+		 * @param battle the battle used to test the individuals
+		 * @param populationDirectory the directory where the population is loaded and saved, ending with a "/"
+		 * @param random the random numbers of this population, split from the ones of the other populations
+		 * @param reporter told the number of every generation ended, instead of a report of this population
 		 */
-		public GeneticAlgorithm(){
+		GeneticAlgorithm(Evaluator evaluator, BattleConfiguration battle, String populationDirectory, SplittableRandom random, IntConsumer reporter) {
+			super(evaluator, battle);
+			this.reporter = reporter;
+			this.random = random;
+			seed = random.nextLong();
+			this.populationDirectory = populationDirectory;
+			roundTimes = new ConcurrentHashMap<>();
 			population = new NeuralNetwork[POPULATION_SIZE];
             scores = new Score[POPULATION_SIZE];
-            new File(POPULATION_DIRECTORY).mkdir();
+            arena = new GenomeArena(POPULATION_SIZE);
+            hallOfFame = new ArrayList<>();
+            sparring = new ArrayList<>();
+            new File(populationDirectory).mkdirs();
             new File(ROBOT_DIRECTORY).mkdir();
 
+            // A checkpoint holds the whole population with its scores, there is nothing to fight
+            checkpoint = new Checkpoint(new File(populationDirectory + CHECKPOINT_FILENAME));
+            if (resume())
+                return;
+
             System.out.println(POPULATION_SIZE + " individuals are being initialized...");
 			// Create pools (thread) to execute all the individual loadings.
+            long start = System.nanoTime();
             ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS);
             for (int i = 0; i < POPULATION_SIZE; i++) {
                 int individual = i;
+                // Split in order, so the individuals do not depend on the thread which creates them
+                SplittableRandom stream = random.split();
 				// Send to the pools a runnable action.
                 executor.submit(() -> {
-                    File file = new File(POPULATION_DIRECTORY + INDIVIDUAL_FILENAME + (individual + 1) + ".xml");
+                    File file = new File(populationDirectory + INDIVIDUAL_FILENAME + (individual + 1) + ".xml");
 
                     // If the file exist, loading the perceptron.
                     if (file.exists())
@@ -185,13 +492,12 @@ public class GeneticAlgorithm {
                     // Else create a random perceptron.
                     else
                         try {
-                            population[individual] = new NeuralNetwork();
+                            population[individual] = new NeuralNetwork(stream);
                             population[individual].printToXML(file);
                         } catch (FileNotFoundException | XMLStreamException e) {
                             e.printStackTrace();
                         }
 
-                    scores[individual] = fitness(individual);
                     System.out.println("\tIndividual n°" + (individual + 1) + "...LOADED");
                 });
             }
@@ -202,6 +508,22 @@ public class GeneticAlgorithm {
             catch (InterruptedException e) {
                 System.out.println("Initialization takes too much time, please change your computer");
             }
+            evaluationTime += System.nanoTime() - start;
+
+            // All the individuals fight at the same time
+            fitness(population, scores, 0, null);
+            if (SURROGATE > 0) {
+                surrogate = new Surrogate(population[0].getGenome().length);
+                learn(population, scores, 0, false);
+            }
+            if (NOVELTY) {
+                archive = new BehaviourArchive(NEIGHBOURS);
+                archive(scores, 0);
+            }
+            rankPopulation();
+            checkTarget();
+            crown();
+            report();
             System.out.println("DONE");
         }
 
@@ -225,7 +547,7 @@ public class GeneticAlgorithm {
 
 			for (int i = 1; i < POPULATION_SIZE; i++) {
 
-                if (scores[i].compareTo(scores[best]) > 0)
+                if (compare(scores[i], scores[best]) > 0)
                     best = i;
             }
 
@@ -245,7 +567,7 @@ public class GeneticAlgorithm {
 			// Select the individual which has the best score according to a random selection
             for (int i = 0; i < TOURNAMENT_SIZE - 1; i++) {
                 randomIndex = random(0, POPULATION_SIZE);
-                if (scores[randomIndex].compareTo(scores[chosen]) == 1){
+                if (compare(randomIndex, chosen) > 0){
 					chosen = randomIndex;
 				}
             }
@@ -253,9 +575,73 @@ public class GeneticAlgorithm {
 			return population[chosen];
 		}
 
+		/**
+		 * <p>
+		 *     Compare two scores. With the successive halving, the scores are not measured on the same number of rounds,
+		 *     so they are compared with their lower confidence bound.
+		 *     The best individual of a population is chosen with this comparison, so the IslandModel uses it too.
+		 * </p>
+		 *
+		 * @param s1 the first score
+		 * @param s2 the second score
+		 *
+		 * @return a positive number if the first score is better, a negative number if it is worse
+		 */
+		static int compare(Score s1, Score s2) {
+			if (HALVING_ROUNDS == 0)
+				return s1.compareTo(s2);
+
+			int comparison = Double.compare(s1.getLowerBound(), s2.getLowerBound());
+			return comparison != 0 ? comparison : s1.compareTo(s2);
+		}
+
+		/**
+		 * <p>
+		 *     Compare two individuals of the population, by their scores or, in the multi-objective mode,
+		 *     by their fronts and crowding distances, or in the novelty search, by their novelty.
+		 * </p>
+		 *
+		 * @param i the index of the first individual
+		 * @param j the index of the second individual
+		 *
+		 * @return a positive number if the first individual is better, a negative number if it is worse
+		 */
+		private int compare(int i, int j) {
+			if (MULTI_OBJECTIVE)
+				return NSGA2.compare(ranks, crowding, i, j);
+			if (NOVELTY)
+				return Double.compare(novelty[i], novelty[j]);
+			return compare(scores[i], scores[j]);
+		}
+
+		/**
+		 * <p>
+		 *     Sort the population in fronts and compute the crowding distances, in the multi-objective mode,
+		 *     or compute the novelty of the individuals against the archive, in the novelty search.
+		 * </p>
+		 */
+		private void rankPopulation() {
+			if (NOVELTY) {
+				novelty = new double[POPULATION_SIZE];
+				for (int i = 0; i < POPULATION_SIZE; i++)
+					novelty[i] = archive.novelty(scores[i].getBehaviour());
+				return;
+			}
+			if (!MULTI_OBJECTIVE)
+				return;
+
+			double[][] objectives = new double[POPULATION_SIZE][];
+			for (int i = 0; i < POPULATION_SIZE; i++)
+				objectives[i] = scores[i].getObjectives();
+			ranks = NSGA2.sort(objectives);
+			crowding = NSGA2.crowding(objectives, ranks);
+		}
+
 		/**
 		 * <p>
 		 *     Cross two individuals and return their descendants.
+		 *     The children are new individuals copied from their parents, which are not changed
+		 *     (a parent can be selected again, or be the best individual kept in the next generation).
 		 * </p>
 		 *
 		 * @param mother the first individual to cross
@@ -264,41 +650,51 @@ public class GeneticAlgorithm {
 		 * @return the children generated
 		 */
 		private NeuralNetwork[] crossover(NeuralNetwork mother, NeuralNetwork father) {
-			NeuralNetwork[] children = {mother, father};
+			NeuralNetwork[] children = {arena.copy(mother), arena.copy(father)};
 
-            if (Math.random() < CROSSOVER_PROBABILITY) {
+            if (random.nextDouble() < CROSSOVER_PROBABILITY) {
             	//System.out.println("Crossover done");
-                cross(mother.getInputWeights(), father.getInputWeights());
-                cross(mother.getOutputWeights(), father.getOutputWeights());
-                cross(mother.getBias(), father.getBias());
+                cross(children[0].getInputWeights(), children[1].getInputWeights());
+                cross(children[0].getOutputWeights(), children[1].getOutputWeights());
+                cross(children[0].getBias(), children[1].getBias());
             }
 			return children;
 		}
 
         /**
 		 * <p>
-		 *     Make a double crossing over on two matrices.
+		 *     Make a double crossing over on two matrices: the values before the first crossing point and from the
+		 *     second one are swapped, as two slices of the genomes.
 		 * </p>
 		 *
 		 * @param m1 the first matrix to cross
 		 * @param m2 the fsecond matrix to cross
          */
         private void cross(Matrix m1, Matrix m2) {
-            int size = m1.getRowCount() * m2.getColumnCount();
+            int size = m1.size();
             int firstCrossing = random(0, size);
             int secondCrossing = random(firstCrossing, size);
 
-            int cols = m1.getColumnCount();
-            double tmp;
-            for (int i = 0; i < m1.getRowCount(); i++)
-                for (int j = 0; j <  m1.getColumnCount(); j++) {
-                    tmp = i * cols + j;
-                    if (tmp < firstCrossing || tmp >= secondCrossing) {
-                        tmp = m1.get(i, j);
-                        m1.set(i, j, m2.get(i, j));
-                        m2.set(i, j, tmp);
-                    }
-                }
+            double[] tmp = new double[size];
+            swap(m1, m2, 0, firstCrossing, tmp);
+            swap(m1, m2, secondCrossing, size, tmp);
+        }
+
+        /**
+		 * <p>
+		 *     Swap a slice of two matrices of the same size.
+		 * </p>
+		 *
+		 * @param m1 the first matrix
+		 * @param m2 the second matrix
+		 * @param from the index of the first value swapped
+		 * @param to the index after the last value swapped
+		 * @param tmp a buffer as large as the matrices
+         */
+        private void swap(Matrix m1, Matrix m2, int from, int to, double[] tmp) {
+            System.arraycopy(m1.getValues(), m1.getOffset() + from, tmp, 0, to - from);
+            System.arraycopy(m2.getValues(), m2.getOffset() + from, m1.getValues(), m1.getOffset() + from, to - from);
+            System.arraycopy(tmp, 0, m2.getValues(), m2.getOffset() + from, to - from);
         }
 
         /**
@@ -309,11 +705,11 @@ public class GeneticAlgorithm {
 		 * @param child the individual to mutate
          */
 		private void mutation(NeuralNetwork child) {
-            if (Math.random() < MUTATION_PROBABILITY)
+            if (random.nextDouble() < MUTATION_PROBABILITY)
                 mutate(child.getInputWeights());
-            if (Math.random() < MUTATION_PROBABILITY)
+            if (random.nextDouble() < MUTATION_PROBABILITY)
                 mutate(child.getOutputWeights());
-            if (Math.random() < MUTATION_PROBABILITY)
+            if (random.nextDouble() < MUTATION_PROBABILITY)
                 mutate(child.getBias());
 		}
 
@@ -325,37 +721,181 @@ public class GeneticAlgorithm {
 		 * @param m the matrix to mutate
          */
         private void mutate(Matrix m) {
-            int rowCount = m.getRowCount();
-            int columnCount = m.getColumnCount();
+            double[] values = m.getValues();
 
             for (int i = 0; i < random(MUTATION_MIN, MUTATION_MAX); i++)
-                m.set(random(0, rowCount), random(0, columnCount) , Math.random() * 2 - 1);
+                values[m.getOffset() + random(0, m.size())] = random.nextDouble() * 2 - 1;
         }
 
 		/**
 		 * <p>
-		 *     Evaluate an individual with Robocode.
-		 *     This method is synchronized because only one individual can be tested at a time.
-		 *
+		 *     Evaluate a part of a population, running as many battles at the same time as there are threads.
 		 * </p>
 		 *
-		 * @param individual the index of the individual to test
+		 * @param individuals the individuals to test
+		 * @param results the array where the scores are saved
+		 * @param from the index of the first individual to test
+		 * @param best the score the individuals race against, null to fight all the rounds
+		 */
+		private void fitness(NeuralNetwork[] individuals, Score[] results, int from, Score best) {
+            if (HALVING_ROUNDS > 0 && !MULTI_OBJECTIVE) {
+                halving(individuals, results, from);
+                return;
+            }
+
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = from; i < individuals.length; i++) {
+                indexes.add(i);
+                results[i] = null;
+            }
+            fitness(individuals, results, indexes, battle, best);
+        }
+
+		/**
+		 * <p>
+		 *     Make some individuals of a population fight a battle against every opponent, running as many battles
+		 *     at the same time as there are threads. If an individual already has a score, the scores of the new battles
+		 *     are merged with it.
+		 * </p>
+		 * <p>
+		 *     The battles are independent jobs, started from the longest to the shortest (according to the previous
+		 *     battles against the same opponent), so the evaluation does not end waiting for one long battle.
+		 * </p>
 		 *
-		 * @return the score of the individual
+		 * @param individuals the individuals of the population
+		 * @param results the array where the scores are saved
+		 * @param indexes the indexes of the individuals to test
+		 * @param battle the battle to fight
+		 * @param best the score the individuals race against, null to fight all the rounds
 		 */
-		private synchronized Score fitness(int individual) {
+		private void fitness(NeuralNetwork[] individuals, Score[] results, List<Integer> indexes, BattleConfiguration battle, Score best) {
+            List<BattleConfiguration> matchups = opponents(battle, sparring);
+
+            // One job per individual and opponent, the longest first (the unknown opponents are measured first)
+            List<int[]> jobs = new ArrayList<>();
+            for (int individual : indexes)
+                for (int matchup = 0; matchup < matchups.size(); matchup++)
+                    jobs.add(new int[] {individual, matchup});
+            jobs.sort(Comparator.comparingDouble((int[] job) ->
+                    roundTimes.getOrDefault(matchups.get(job[1]).getOpponents(), Double.MAX_VALUE)).reversed());
+
+            Score[][] matchupScores = new Score[individuals.length][matchups.size()];
+            long start = System.nanoTime();
+            ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS);
+            for (int[] job : jobs)
+                executor.submit(() -> {
+                    BattleConfiguration matchup = matchups.get(job[1]);
+                    Telemetry.takeBattleTime();
+                    // The race target is a mean over all the opponents, it cannot be used against one opponent
+                    Score score = fitness(individuals[job[0]], matchup, matchups.size() == 1 ? race(best) : null);
+                    matchupScores[job[0]][job[1]] = score;
+                    // Only the battles themselves are timed: not the wait for a worker, nor a score from the cache
+                    long time = Telemetry.takeBattleTime();
+                    if (time > 0 && score.getRounds() > 0)
+                        roundTimes.merge(matchup.getOpponents(), (double) time / score.getRounds(),
+                                (previous, last) -> 0.7 * previous + 0.3 * last);
+                });
+            executor.shutdown();
             try {
-                copyFile(POPULATION_DIRECTORY + INDIVIDUAL_FILENAME + (individual + 1) + ".xml", ROBOT_DIRECTORY + Darwini.PERCEPTRON_FILE);
+                // The evaluators kill the hung battles, this limit is only a last resort
+                if (!executor.awaitTermination(6000, TimeUnit.SECONDS)) {
+                    System.out.println("The evaluation takes too much time, the remaining battles are stopped");
+                    executor.shutdownNow();
+                    executor.awaitTermination(60, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                System.out.println("The evaluation takes too much time, please change your computer");
+                executor.shutdownNow();
+            }
+            evaluationTime += System.nanoTime() - start;
+
+            // A battle which has not been fought counts as a failed battle
+            for (int individual : indexes)
+                for (int matchup = 0; matchup < matchups.size(); matchup++) {
+                    Score score = matchupScores[individual][matchup];
+                    if (score == null)
+                        score = Score.penalty(matchups.get(matchup).getNumRounds());
+                    results[individual] = results[individual] == null ? score : results[individual].merge(score);
+                }
+        }
+
+		/**
+		 * <p>
+		 *     Return the battles against every opponent and every champion.
+		 * </p>
+		 *
+		 * @param battle the battle to fight
+		 * @param champions the champions to fight
+		 *
+		 * @return one battle per opponent, then one battle per champion
+		 */
+		private static List<BattleConfiguration> opponents(BattleConfiguration battle, List<NeuralNetwork> champions) {
+            List<BattleConfiguration> matchups = matchups(battle);
+            for (NeuralNetwork champion : champions)
+                matchups.add(battle.withChampion(champion));
+            return matchups;
+        }
+
+		/**
+		 * @param matchups the battles against some opponents
+		 *
+		 * @return the number of rounds of all these battles
+		 */
+		private static int rounds(List<BattleConfiguration> matchups) {
+            int rounds = 0;
+            for (BattleConfiguration matchup : matchups)
+                rounds += matchup.getNumRounds();
+            return rounds;
+        }
 
-                // Launch the test in Robocode
-                Runtime.getRuntime().exec("java -Xmx512M -DNOSECURITY=true -DWORKINGDIRECTORY=data -cp " + ROBOCODE_PATH + " robocode.Robocode -nosound -nodisplay -battle " + BATTLE_PATH + " -results " + RESULTS_PATH).waitFor();
-            } catch (IOException | InterruptedException e) {
-                e.printStackTrace();
+		/**
+		 * <p>
+		 *     Evaluate a part of a population by successive halving: every individual fights a few rounds,
+		 *     then the best half fights twice more rounds, and so on until the best ones have fought the whole battle.
+		 *     The rounds of the different steps are merged in one score.
+		 * </p>
+		 *
+		 * @param individuals the individuals to test
+		 * @param results the array where the scores are saved
+		 * @param from the index of the first individual to test
+		 */
+		private void halving(NeuralNetwork[] individuals, Score[] results, int from) {
+            List<Integer> candidates = new ArrayList<>();
+            for (int i = from; i < individuals.length; i++) {
+                candidates.add(i);
+                results[i] = null;
             }
 
-			// At the end of the battle, the robot saves the number of shot in a txt file.
+            int rounds = 0;
+            while (rounds < battle.getNumRounds()) {
+                int target = rounds == 0 ? Math.min(HALVING_ROUNDS, battle.getNumRounds()) : Math.min(2 * rounds, battle.getNumRounds());
+                fitness(individuals, results, candidates, battle.withRounds(rounds, target - rounds), null);
+                rounds = target;
 
-            return new Score(RESULTS_PATH, "Darwini");
+                // Keep the best half for the next step
+                candidates.sort((i1, i2) -> compare(results[i2], results[i1]));
+                candidates = new ArrayList<>(candidates.subList(0, Math.max(1, candidates.size() / 2)));
+            }
+        }
+
+		/**
+		 * <p>
+		 *     Create a race against a score. The accuracy is only known at the end of the battle,
+		 *     so a child is stopped only if it cannot beat the score even with the whole accuracy bonus of a round.
+		 * </p>
+		 *
+		 * @param best the score to beat, null to fight all the rounds
+		 *
+		 * @return a new race, null if there is no racing
+		 */
+		private Race race(Score best) {
+            if (RACE_BOUND == null || best == null)
+                return null;
+
+            // An opponent has 100 energy to lose and gives 50 survival points at its death
+            int opponents = battle.getSelectedRobots().split(",").length - 1;
+            double target = best.getRoundScore() - Score.ACCURACY_WEIGHT;
+            return new Race(RACE_BOUND, target, Score.weight(50 * opponents, 100 * opponents, 0), RACE_RISK);
         }
 
 		/**
@@ -371,39 +911,821 @@ public class GeneticAlgorithm {
             if (numberGeneration < 1)
                 throw new IllegalArgumentException("The number of generation must be greater than 0");
 
+            if (MULTI_OBJECTIVE) {
+                for (int i = 0; i < numberGeneration; i++)
+                    nsga2();
+                printSpeedup();
+                return;
+            }
+
+            if (STEADY_STATE) {
+                // As many children as the generations would have created
+                steadyState(numberGeneration * (POPULATION_SIZE - 1));
+                printSpeedup();
+                return;
+            }
+
             NeuralNetwork[] newPopulation = new NeuralNetwork[POPULATION_SIZE];
             Score[] newScores = new Score[POPULATION_SIZE];
 
             for (int i = 0; i < numberGeneration; i++) {
-                System.out.println("Generation n°" + (i + 1) + "...");
+                System.out.println("Generation n°" + (++generation) + "...");
+                reseed();
+                boolean changed = spar();
 
                 // Keep the best individual
 				int best = keepBest();
                 newPopulation[0] = population[best];
                 newScores[0] = scores[best];
+                if (changed)
+                    rescore(newPopulation, newScores, Collections.singletonList(0));
 				System.out.println("\tIndividual n°1 ...RECUPERATED ");
 				System.out.println(newScores[0]);
-				for (int j = 1; j < POPULATION_SIZE; j = j + 2) {
+				System.arraycopy(offspring(POPULATION_SIZE - 1), 0, newPopulation, 1, POPULATION_SIZE - 1);
+
+				// All the children fight at the same time, racing against the best individual
+				fitness(newPopulation, newScores, 1, newScores[0]);
+				learn(newPopulation, newScores, 1, true);
+				archive(newScores, 1);
+				int rounds = 0;
+				int fullRounds = rounds(opponents(battle, sparring));
+				for (int j = 1; j < POPULATION_SIZE; j++) {
+					System.out.print("\tIndividual n°" + (j + 1) + "...CREATED ");
+					if (newScores[j].getRounds() > 0 && newScores[j].getRounds() < fullRounds)
+						System.out.print("(" + newScores[j].getRounds() + " rounds) ");
+					System.out.println(newScores[j]);
+					rounds += newScores[j].getRounds();
+				}
+				if (RACE_BOUND != null || HALVING_ROUNDS > 0)
+					System.out.println("\t" + rounds + " rounds fought instead of " + (POPULATION_SIZE - 1) * fullRounds);
+				if (surrogate != null)
+					System.out.println("\t" + surrogate.report());
+
+                // The individuals of the last generation die, except the best one, and their genomes are recycled.
+                // The arrays are swapped, so the next generation is not written into the population it is bred from.
+                for (NeuralNetwork individual : population)
+                    if (individual != newPopulation[0])
+                        arena.release(individual);
+                NeuralNetwork[] previousPopulation = population;
+                Score[] previousScores = scores;
+                population = newPopulation;
+                scores = newScores;
+                newPopulation = previousPopulation;
+                newScores = previousScores;
+                rankPopulation();
+                printNovelty();
+                checkTarget();
+                crown();
+                checkpoint();
+                report();
+            }
+
+			printSpeedup();
+		}
 
-					NeuralNetwork[] children = crossover(selection(), selection());
-                    mutation(children[0]);
-                    newPopulation[j] = children[0];
+		/**
+		 * <p>
+		 *     Create a generation by NSGA-II: as many children as individuals are bred by crowded tournaments,
+		 *     then the parents and the children are sorted together and the best half survives, front after front.
+		 *     The individuals of the Pareto front are never lost while there is room for them.
+		 * </p>
+		 */
+		private void nsga2() {
+            System.out.println("Generation n°" + (++generation) + "...");
+            reseed();
+            if (spar())
+                rescore(population, scores, indexes(0, POPULATION_SIZE));
+
+            NeuralNetwork[] individuals = Arrays.copyOf(population, 2 * POPULATION_SIZE);
+            Score[] results = Arrays.copyOf(scores, 2 * POPULATION_SIZE);
+            System.arraycopy(offspring(POPULATION_SIZE), 0, individuals, POPULATION_SIZE, POPULATION_SIZE);
+
+            // All the children fight at the same time, the whole battle to know all their objectives
+            fitness(individuals, results, POPULATION_SIZE, null);
+            for (int j = POPULATION_SIZE; j < 2 * POPULATION_SIZE; j++)
+                System.out.println("\tChild n°" + (j - POPULATION_SIZE + 1) + "...CREATED " + results[j]);
+
+            double[][] objectives = new double[2 * POPULATION_SIZE][];
+            for (int j = 0; j < 2 * POPULATION_SIZE; j++)
+                objectives[j] = results[j].getObjectives();
+            int[] survivors = NSGA2.select(objectives, POPULATION_SIZE);
+
+            // The individuals which do not survive die and their genomes are recycled
+            boolean[] alive = new boolean[2 * POPULATION_SIZE];
+            for (int j = 0; j < POPULATION_SIZE; j++) {
+                alive[survivors[j]] = true;
+                population[j] = individuals[survivors[j]];
+                scores[j] = results[survivors[j]];
+            }
+            int children = 0;
+            for (int j = 0; j < 2 * POPULATION_SIZE; j++)
+                if (!alive[j])
+                    arena.release(individuals[j]);
+                else if (j >= POPULATION_SIZE)
+                    children++;
+            System.out.println("\t" + children + " children survive");
+
+            rankPopulation();
+            printFront();
+            checkTarget();
+            crown();
+            checkpoint();
+            report();
+        }
 
-                    newScores[j] = fitness(j);
-					System.out.print("\tIndividual n°" + (j + 1) + "...CREATED ");
+		/**
+		 * <p>
+		 *     Print the objectives of the individuals of the Pareto front.
+		 * </p>
+		 */
+		private void printFront() {
+            int size = 0;
+            for (int rank : ranks)
+                if (rank == 0)
+                    size++;
+
+            System.out.println("\tPareto front: " + size + " individuals (survival, bullet damage, ramming damage per round, accuracy)");
+            for (int i = 0; i < POPULATION_SIZE; i++)
+                if (ranks[i] == 0) {
+                    double[] objectives = scores[i].getObjectives();
+                    System.out.println("\t\tIndividual n°" + (i + 1) + ": " + String.format(Locale.US, "%.1f, %.1f, %.1f, %.2f",
+                            objectives[0], objectives[1], objectives[2], objectives[3]) + " (" + scores[i] + ")");
+                }
+        }
 
-					System.out.println(newScores[j]);
-                    if (j != POPULATION_SIZE - 1) {
-                        mutation(children[1]);
-                        newPopulation[j + 1] = children[1];
-                        newScores[j + 1] = fitness(j + 1);
-						System.out.print("\tIndividual n°" + (j + 2) + "...CREATED ");
-						System.out.println(newScores[j+1]);
+		/**
+		 * <p>
+		 *     Evolve the population without generations. Every thread fights the battles of a child; as soon as a child
+		 *     has its score, it replaces the loser of a tournament among the population if it is better,
+		 *     and a new child is bred from the current population for the free thread.
+		 *     The parents are not changed by the crossover, they may still be selected for other children.
+		 * </p>
+		 *
+		 * @param evaluations the number of children to evaluate
+		 */
+		private void steadyState(int evaluations) {
+            System.out.println("Steady state: " + evaluations + " children...");
+            ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS);
+            CompletionService<Score> completion = new ExecutorCompletionService<>(executor);
+            Map<Future<Score>, NeuralNetwork> children = new HashMap<>();
+            Map<Future<Score>, List<BattleConfiguration>> battles = new HashMap<>();
+            long start = System.nanoTime();
+
+            reseed();
+            if (spar())
+                rescore(population, scores, indexes(0, POPULATION_SIZE));
+            List<BattleConfiguration> matchups = opponents(battle, sparring);
+            int submitted = 0;
+            for (; submitted < Math.min(NB_THREADS, evaluations); submitted++)
+                breed(completion, children, battles, matchups);
+
+            int inserted = 0;
+            int done = 0;
+            while (done < evaluations) {
+                Future<Score> future;
+                try {
+                    future = completion.take();
+                } catch (InterruptedException e) {
+                    System.out.println("The evaluation has been interrupted");
+                    break;
+                }
+
+                NeuralNetwork child = children.remove(future);
+                if (battles.remove(future) != matchups) {
+                    // Bred before the champions changed, the child fights the new ones like the population did
+                    submit(completion, children, battles, child, matchups);
+                    continue;
+                }
+
+                done++;
+                int fullRounds = rounds(matchups);
+                Score score;
+                try {
+                    score = future.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    // Like a battle which has not been fought in a generation, against all the opponents of the child
+                    score = Score.penalty(fullRounds);
+                }
+
+                learn(child, score, fullRounds);
+                archive(new Score[] {score}, 0);
+                int loser = replacement();
+                System.out.print("\tChild n°" + done + "...");
+                if (NOVELTY ? archive.novelty(score.getBehaviour()) > novelty[loser] : compare(score, scores[loser]) > 0) {
+                    arena.release(population[loser]);
+                    population[loser] = child;
+                    scores[loser] = score;
+                    inserted++;
+                    rankPopulation();
+                    checkTarget();
+                    System.out.print("REPLACED n°" + (loser + 1) + " ");
+                } else {
+                    arena.release(child);
+                    System.out.print("REJECTED ");
+                }
+                if (score.getRounds() > 0 && score.getRounds() < fullRounds)
+                    System.out.print("(" + score.getRounds() + " rounds) ");
+                System.out.println(score);
+                if (surrogate != null && done % POPULATION_SIZE == 0)
+                    System.out.println("\t" + surrogate.report());
+                if (done % POPULATION_SIZE == 0)
+                    printNovelty();
+                if (done % Math.max(1, POPULATION_SIZE - 1) == 0) {
+                    generation++;
+                    reseed();
+                    crown();
+                    checkpoint();
+                    report();
+                    if (spar()) {
+                        rescore(population, scores, indexes(0, POPULATION_SIZE));
+                        rankPopulation();
+                        matchups = opponents(battle, sparring);
                     }
                 }
-                population = newPopulation;
-                scores = newScores;
+
+                if (submitted < evaluations) {
+                    breed(completion, children, battles, matchups);
+                    submitted++;
+                }
+            }
+
+            executor.shutdownNow();
+            evaluationTime += System.nanoTime() - start;
+            System.out.println("\t" + inserted + " children inserted, " + String.format(Locale.US, "%.2f",
+                    evaluations / ((System.nanoTime() - start) / 1e9)) + " evaluations per second");
+        }
+
+		/**
+		 * <p>
+		 *     Breed a child from the current population and start its battles.
+		 * </p>
+		 *
+		 * @param completion the battles of the children
+		 * @param children the children being evaluated, by battle
+		 * @param battles the opponents of the children being evaluated, by battle
+		 * @param matchups the battles against the current opponents and champions
+		 */
+		private void breed(CompletionService<Score> completion, Map<Future<Score>, NeuralNetwork> children,
+                           Map<Future<Score>, List<BattleConfiguration>> battles, List<BattleConfiguration> matchups) {
+            submit(completion, children, battles, offspring(1)[0], matchups);
+        }
+
+		/**
+		 * <p>
+		 *     Start the battles of a child against every opponent, racing against the best individual.
+		 * </p>
+		 *
+		 * @param completion the battles of the children
+		 * @param children the children being evaluated, by battle
+		 * @param battles the opponents of the children being evaluated, by battle
+		 * @param child the child to test
+		 * @param matchups the battles against the current opponents and champions
+		 */
+		private void submit(CompletionService<Score> completion, Map<Future<Score>, NeuralNetwork> children,
+                            Map<Future<Score>, List<BattleConfiguration>> battles, NeuralNetwork child, List<BattleConfiguration> matchups) {
+            Score best = scores[keepBest()];
+            Future<Score> future = completion.submit(() -> fitness(child, matchups, best));
+            children.put(future, child);
+            battles.put(future, matchups);
+        }
+
+		/**
+		 * <p>
+		 *     Evaluate a child against every opponent, racing against the best individual.
+		 * </p>
+		 *
+		 * @param child the child to test
+		 * @param matchups the battles against every opponent
+		 * @param best the score the child races against
+		 *
+		 * @return the score of all the battles of the child
+		 */
+		private Score fitness(NeuralNetwork child, List<BattleConfiguration> matchups, Score best) {
+            Score score = null;
+            for (BattleConfiguration matchup : matchups) {
+                // The race target is a mean over all the opponents, it cannot be used against one opponent
+                Score matchupScore = fitness(child, matchup, matchups.size() == 1 ? race(best) : null);
+                score = score == null ? matchupScore : score.merge(matchupScore);
+            }
+            return score;
+        }
+
+		/**
+		 * <p>
+		 *     Breed children from the current population by selection, crossover and mutation.
+		 *     With the pre-screening, {@link #SURROGATE} times more children are bred and the surrogate keeps the ones
+		 *     with the best optimistic prediction; the others die before fighting.
+		 * </p>
+		 *
+		 * @param count the number of children to evaluate
+		 *
+		 * @return the children
+		 */
+		private NeuralNetwork[] offspring(int count) {
+            long start = System.nanoTime();
+            NeuralNetwork[] children = new NeuralNetwork[surrogate == null ? count : SURROGATE * count];
+            for (int j = 0; j < children.length; j = j + 2) {
+                NeuralNetwork[] twins = crossover(selection(), selection());
+                mutation(twins[0]);
+                children[j] = twins[0];
+
+                if (j != children.length - 1) {
+                    mutation(twins[1]);
+                    children[j + 1] = twins[1];
+                } else
+                    arena.release(twins[1]);
+            }
+            if (surrogate == null) {
+                Telemetry.record(Telemetry.Stage.BREEDING, start);
+                return children;
+            }
+
+            // The most promising or the most uncertain children fight
+            double[] bounds = new double[children.length];
+            Integer[] order = new Integer[children.length];
+            for (int j = 0; j < children.length; j++) {
+                bounds[j] = surrogate.bound(children[j]);
+                order[j] = j;
             }
+            Arrays.sort(order, (j1, j2) -> Double.compare(bounds[j2], bounds[j1]));
+
+            NeuralNetwork[] chosen = new NeuralNetwork[count];
+            for (int j = 0; j < children.length; j++)
+                if (j < count)
+                    chosen[j] = children[order[j]];
+                else
+                    arena.release(children[order[j]]);
+            Telemetry.record(Telemetry.Stage.BREEDING, start);
+            return chosen;
+        }
+
+		/**
+		 * <p>
+		 *     Compare the predictions of the surrogate to the scores of the children, then learn the scores.
+		 *     All the predictions are made before learning, so none of them knows the score it is compared to.
+		 * </p>
+		 *
+		 * @param individuals the individuals of the population
+		 * @param results their scores
+		 * @param from the index of the first child
+		 * @param record true to compare the predictions to the scores before learning them
+		 */
+		private void learn(NeuralNetwork[] individuals, Score[] results, int from, boolean record) {
+            if (surrogate == null)
+                return;
+
+            int fullRounds = rounds(opponents(battle, sparring));
+            if (record)
+                for (int j = from; j < individuals.length; j++)
+                    if (learnable(results[j], fullRounds))
+                        surrogate.record(surrogate.predict(individuals[j]), results[j]);
+            for (int j = from; j < individuals.length; j++)
+                if (learnable(results[j], fullRounds))
+                    surrogate.learn(individuals[j], results[j]);
+        }
+
+		/**
+		 * <p>
+		 *     Compare the prediction of the surrogate to the score of a child, then learn the score.
+		 * </p>
+		 *
+		 * @param child the child
+		 * @param score its score
+		 * @param fullRounds the rounds of all the battles of the child
+		 */
+		private void learn(NeuralNetwork child, Score score, int fullRounds) {
+            if (surrogate == null || !learnable(score, fullRounds))
+                return;
+
+            surrogate.record(surrogate.predict(child), score);
+            surrogate.learn(child, score);
+        }
+
+		/**
+		 * <p>
+		 *     Tell if the surrogate can learn a score: a race stopped early or a failed battle does not measure
+		 *     the individual on the same rounds as the others.
+		 * </p>
+		 *
+		 * @param score the score
+		 * @param fullRounds the rounds of all the battles of the individual
+		 *
+		 * @return true if the score covers all the rounds and none of its battles has failed
+		 */
+		private static boolean learnable(Score score, int fullRounds) {
+            return !score.isFailed() && score.getRounds() >= fullRounds;
+        }
+
+		/**
+		 * <p>
+		 *     Archive the behaviours of the individuals evaluated, in the novelty search.
+		 * </p>
+		 *
+		 * @param results the scores of the individuals
+		 * @param from the index of the first individual evaluated
+		 */
+		private void archive(Score[] results, int from) {
+            if (archive == null)
+                return;
+
+            for (int j = from; j < results.length; j++)
+                if (results[j].getBehaviour() != null)
+                    archive.add(results[j].getBehaviour());
+        }
+
+		/**
+		 * <p>
+		 *     Print the size of the archive and the novelty of the population, in the novelty search.
+		 * </p>
+		 */
+		private void printNovelty() {
+            if (archive == null)
+                return;
+
+            int mostNovel = 0;
+            double sum = 0;
+            for (int i = 0; i < POPULATION_SIZE; i++) {
+                sum += novelty[i];
+                if (novelty[i] > novelty[mostNovel])
+                    mostNovel = i;
+            }
+            System.out.println("\tNovelty: " + archive.size() + " behaviours archived, mean novelty "
+                    + String.format(Locale.US, "%.3f", sum / POPULATION_SIZE) + ", the most novel is the individual n°" + (mostNovel + 1)
+                    + " (" + String.format(Locale.US, "%.3f", novelty[mostNovel]) + ", " + String.format(Locale.US, "%.1f", scores[mostNovel].getRoundScore()) + " per round)");
+        }
+
+		/**
+		 * <p>
+		 *     Select by an inverse tournament the individual a child may replace. The loser is the worst of the tournament.
+		 * </p>
+		 *
+		 * @return the index of the loser
+		 */
+		private int replacement() {
+            int loser = random(0, POPULATION_SIZE);
+            for (int i = 0; i < TOURNAMENT_SIZE - 1; i++) {
+                int randomIndex = random(0, POPULATION_SIZE);
+                if (compare(randomIndex, loser) < 0)
+                    loser = randomIndex;
+            }
+            return loser;
+        }
+
+		/**
+		 * <p>
+		 *     Print the parallel speedup of all the evaluations.
+		 * </p>
+		 */
+		private void printSpeedup() {
+			// The battle time would be the real time if the battles were run one after another
+			System.out.println("Parallel speedup: " + String.format(Locale.US, "%.2f", (double) battleTime.get() / evaluationTime)
+					+ " with " + NB_THREADS + " threads (" + battleTime.get() / 1000000 + " ms of battles in " + evaluationTime / 1000000 + " ms)");
+			System.out.println("Children: " + arena);
+		}
+
+		/**
+		 * <p>
+		 *     Append the telemetry of the generation to {@link #TELEMETRY_PATH} and print its summary,
+		 *     or tell the IslandModel that the generation has ended.
+		 * </p>
+		 */
+		private void report() {
+			if (reporter != null)
+				reporter.accept(generation);
+			else
+				System.out.println("\tTelemetry: " + Telemetry.report(populationDirectory, generation, new File(TELEMETRY_PATH)));
+		}
+
+		/**
+		 * <p>
+		 *     Note the number of battles fought the first time the best individual reaches the target.
+		 * </p>
+		 */
+		private void checkTarget() {
+			checkTarget(getBestScore());
+		}
+
+
+	/*	----- MIGRATION -----	*/
+
+		@Override
+		public Score getBestScore() {
+			return scores[keepBest()];
+		}
+
+		/**
+		 * @return a copy of the best individual, which can be sent to another population
+		 */
+		public NeuralNetwork getBestIndividual() {
+			return population[keepBest()].copy();
+		}
+
+		/**
+		 * @return the mean weighted score per round of the population
+		 */
+		public double getMeanRoundScore() {
+			double sum = 0;
+			for (Score score : scores)
+				sum += score.getRoundScore();
+			return sum / POPULATION_SIZE;
+		}
+
+		/**
+		 * <p>
+		 *     Replace the worst individual of the population by an individual coming from another population,
+		 *     with the score it had there (same battle, so it does not fight again).
+		 * </p>
+		 *
+		 * @param individual the immigrant
+		 * @param score the score of the immigrant
+		 *
+		 * @return the index of the replaced individual
+		 */
+		public int immigrate(NeuralNetwork individual, Score score) {
+			int worst = 0;
+			for (int i = 1; i < POPULATION_SIZE; i++)
+				if (compare(i, worst) < 0)
+					worst = i;
+
+			// The score of the immigrant has been earned against the champions of its own island
+			if (CHAMPIONS > 0)
+				score = fitness(individual, opponents(battle, sparring), null);
+
+			arena.release(population[worst]);
+			population[worst] = individual;
+			scores[worst] = score;
+			if (surrogate != null && learnable(score, rounds(opponents(battle, sparring))))
+				surrogate.learn(individual, score);
+			archive(new Score[] {score}, 0);
+			rankPopulation();
+			return worst;
+		}
+
+
+	/*	----- HALL OF FAME -----	*/
+
+		/**
+		 * <p>
+		 *     Put the best individual in the hall of fame, unless it is already the last champion.
+		 *     It is copied, because the genomes of the population are recycled.
+		 * </p>
+		 */
+		private void crown() {
+			if (CHAMPIONS <= 0)
+				return;
+
+			int best = keepBest();
+			if (!hallOfFame.isEmpty() && hallOfFame.get(hallOfFame.size() - 1).getHash().equals(population[best].getHash()))
+				return;
+			hallOfFame.add(population[best].copy());
+			System.out.println("\tIndividual n°" + (best + 1) + " enters the hall of fame (" + hallOfFame.size() + " champions)");
+		}
+
+		/**
+		 * <p>
+		 *     Draw the champions fought by the next individuals, all different, among the hall of fame.
+		 * </p>
+		 *
+		 * @return at most {@link #CHAMPIONS} champions
+		 */
+		private List<NeuralNetwork> sparring() {
+			List<NeuralNetwork> champions = new ArrayList<>(hallOfFame);
+			int count = Math.min(CHAMPIONS, champions.size());
+			// The first champions of a shuffle
+			for (int i = 0; i < count; i++)
+				champions.set(i, champions.set(random(i, champions.size()), champions.get(i)));
+			return new ArrayList<>(champions.subList(0, count));
+		}
+
+		/**
+		 * <p>
+		 *     Draw the champions fought by the next individuals. The champions already fought are kept if the same ones
+		 *     are drawn again.
+		 * </p>
+		 *
+		 * @return true if the champions have changed, so the scores of the population are not earned against them
+		 */
+		private boolean spar() {
+			List<NeuralNetwork> champions = sparring();
+			if (hashes(champions).equals(hashes(sparring)))
+				return false;
+			sparring = champions;
+			return true;
+		}
+
+		/**
+		 * @param champions some champions
+		 *
+		 * @return the hashes of their genomes
+		 */
+		private static Set<String> hashes(List<NeuralNetwork> champions) {
+			Set<String> hashes = new HashSet<>();
+			for (NeuralNetwork champion : champions)
+				hashes.add(champion.getHash());
+			return hashes;
+		}
+
+		/**
+		 * <p>
+		 *     Make some individuals fight all the rounds of all the battles again, against the current champions.
+		 * </p>
+		 *
+		 * @param individuals the individuals of the population
+		 * @param results the array where the new scores are saved
+		 * @param indexes the indexes of the individuals which fight again
+		 */
+		private void rescore(NeuralNetwork[] individuals, Score[] results, List<Integer> indexes) {
+			System.out.println("\t" + indexes.size() + (indexes.size() == 1 ? " individual fights" : " individuals fight") + " the new champions");
+			for (int i : indexes)
+				results[i] = null;
+			fitness(individuals, results, indexes, battle, null);
+		}
+
+		/**
+		 * @param from the first index
+		 * @param to the index after the last one
+		 *
+		 * @return the indexes from the first one to the last one
+		 */
+		private static List<Integer> indexes(int from, int to) {
+			List<Integer> indexes = new ArrayList<>();
+			for (int i = from; i < to; i++)
+				indexes.add(i);
+			return indexes;
+		}
+
+
+	/*	----- CHECKPOINT -----	*/
+
+		/**
+		 * <p>
+		 *     Save a checkpoint every {@link #CHECKPOINT_INTERVAL} generations. The state is copied now,
+		 *     and written while the next generation fights.
+		 * </p>
+		 */
+		private void checkpoint() {
+			if (CHECKPOINT_INTERVAL > 0 && generation % CHECKPOINT_INTERVAL == 0)
+				checkpoint.save(generation, snapshot());
+		}
+
+		/**
+		 * <p>
+		 *     Copy the whole state of the genetic algorithm into bytes: the battle, the counters, the random numbers,
+		 *     the genomes with the components of their scores and their failures, the surrogate, the archive of the behaviours, the hall of fame
+		 *     and the champions fought.
+		 * </p>
+		 * <p>
+		 *     The state of a SplittableRandom cannot be read, but every generation draws its random numbers from the seed
+		 *     of the population and its number only (see {@link #reseed()}): the seed is saved, and a resumed run draws
+		 *     the same numbers as a run which has not stopped.
+		 * </p>
+		 *
+		 * @return the state of the genetic algorithm
+		 */
+		private byte[] snapshot() {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(bytes)) {
+				out.writeInt(CHECKPOINT_MAGIC);
+				out.writeInt(CHECKPOINT_VERSION);
+				out.writeUTF(battle.getKey() + (OPPONENTS == null ? "" : " " + OPPONENTS));
+				out.writeInt(generation);
+				out.writeInt(evaluations.get());
+				out.writeInt(evaluationsToTarget);
+				out.writeLong(seed);
+
+				out.writeInt(POPULATION_SIZE);
+				for (int i = 0; i < POPULATION_SIZE; i++) {
+					byte[] genome = population[i].toBinary();
+					out.writeInt(genome.length);
+					out.write(genome);
+					int[] components = scores[i].getComponents();
+					out.writeInt(components.length);
+					for (int component : components)
+						out.writeInt(component);
+					// A penalty must not look like a battle fought and lost after the resume
+					out.writeBoolean(scores[i].isFailed());
+				}
+
+				out.writeBoolean(surrogate != null);
+				if (surrogate != null)
+					surrogate.write(out);
+				out.writeBoolean(archive != null);
+				if (archive != null)
+					archive.write(out);
+
+				out.writeInt(hallOfFame.size());
+				for (NeuralNetwork champion : hallOfFame) {
+					byte[] genome = champion.toBinary();
+					out.writeInt(genome.length);
+					out.write(genome);
+				}
+				// The champions fought, which the scores of the population have been earned against
+				out.writeInt(sparring.size());
+				for (NeuralNetwork champion : sparring)
+					out.writeInt(hallOfFame.indexOf(champion));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return bytes.toByteArray();
+		}
+
+		/**
+		 * <p>
+		 *     Resume the genetic algorithm from its last checkpoint. A checkpoint of another battle, or of a population
+		 *     of another size, is not used: the population is then loaded from the XML files and evaluated.
+		 * </p>
+		 *
+		 * @return true if the state has been resumed, false if the population must be loaded and evaluated
+		 */
+		private boolean resume() {
+			long start = System.nanoTime();
+			try {
+				byte[] state = checkpoint.read();
+				if (state == null)
+					return false;
+
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+				if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION) {
+					System.out.println(checkpoint.getFile().getPath() + " is not a checkpoint of this version, it is not used");
+					return false;
+				}
+				String key = in.readUTF();
+				if (!key.equals(battle.getKey() + (OPPONENTS == null ? "" : " " + OPPONENTS))) {
+					System.out.println(checkpoint.getFile().getPath() + " has been saved for another battle (" + key + "), it is not used");
+					return false;
+				}
+				int savedGeneration = in.readInt();
+				int savedEvaluations = in.readInt();
+				int savedEvaluationsToTarget = in.readInt();
+				long savedSeed = in.readLong();
+				if (in.readInt() != POPULATION_SIZE) {
+					System.out.println(checkpoint.getFile().getPath() + " has been saved for another population size, it is not used");
+					return false;
+				}
+
+				NeuralNetwork[] individuals = new NeuralNetwork[POPULATION_SIZE];
+				Score[] results = new Score[POPULATION_SIZE];
+				for (int i = 0; i < POPULATION_SIZE; i++) {
+					byte[] genome = new byte[in.readInt()];
+					in.readFully(genome);
+					individuals[i] = NeuralNetwork.fromBinary(ByteBuffer.wrap(genome));
+					int[] components = new int[in.readInt()];
+					for (int j = 0; j < components.length; j++)
+						components[j] = in.readInt();
+					results[i] = new Score(components, in.readBoolean());
+				}
+				Surrogate savedSurrogate = in.readBoolean() ? Surrogate.read(in) : null;
+				BehaviourArchive savedArchive = in.readBoolean() ? BehaviourArchive.read(in, NEIGHBOURS) : null;
+				List<NeuralNetwork> champions = new ArrayList<>();
+				for (int i = in.readInt(); i > 0; i--) {
+					byte[] genome = new byte[in.readInt()];
+					in.readFully(genome);
+					champions.add(NeuralNetwork.fromBinary(ByteBuffer.wrap(genome)));
+				}
+				List<NeuralNetwork> savedSparring = new ArrayList<>();
+				for (int i = in.readInt(); i > 0; i--)
+					savedSparring.add(champions.get(in.readInt()));
+
+				population = individuals;
+				scores = results;
+				generation = savedGeneration;
+				evaluations.set(savedEvaluations);
+				evaluationsToTarget = savedEvaluationsToTarget;
+				seed = savedSeed;
+				hallOfFame = champions;
+				sparring = savedSparring;
+
+				// The surrogate and the archive learn the population if they were not used before the checkpoint
+				if (SURROGATE > 0) {
+					surrogate = savedSurrogate;
+					if (surrogate == null) {
+						surrogate = new Surrogate(population[0].getGenome().length);
+						learn(population, scores, 0, false);
+					}
+				}
+				if (NOVELTY) {
+					archive = savedArchive;
+					if (archive == null) {
+						archive = new BehaviourArchive(NEIGHBOURS);
+						archive(scores, 0);
+					}
+				}
+				rankPopulation();
+			} catch (IOException | RuntimeException e) {
+				System.out.println(checkpoint.getFile().getPath() + " cannot be read, it is not used (" + e + ")");
+				return false;
+			}
+
+			System.out.println(POPULATION_SIZE + " individuals resumed from " + checkpoint.getFile().getPath() + " at the generation n°"
+					+ generation + " in " + (System.nanoTime() - start) / 1000000 + " ms, without any battle");
+			return true;
+		}
+
+		/**
+		 * @return the number of generations created, the ones before the checkpoint included
+		 */
+		public int getGeneration() {
+			return generation;
 		}
 
 
@@ -420,9 +1742,34 @@ public class GeneticAlgorithm {
 		 * @return the random number
          */
         private int random(int min, int max) {
-            return (int)(Math.random() * (max - min)) + min;
+            return max > min ? random.nextInt(min, max) : min;
         }
 
+		/**
+		 * <p>
+		 *     Start the random numbers of the current generation. They only depend on the seed of the population and on
+		 *     the number of the generation, not on the numbers drawn before nor on the checkpoints.
+		 * </p>
+		 */
+		private void reseed() {
+			// The first number of a SplittableRandom is a hash of its seed, so the streams of close generations do not overlap
+			random = new SplittableRandom(new SplittableRandom(seed + generation).nextLong());
+		}
+
+		/**
+		 * <p>
+		 *     Create the root of the random numbers of a run, from the seed given with -Ddarwini.seed
+		 *     or from a new seed, printed so the run can be done again.
+		 * </p>
+		 *
+		 * @return the random numbers, to split between the populations
+		 */
+		public static SplittableRandom newRandom() {
+			long seed = SEED != null ? SEED : new SplittableRandom().nextLong();
+			System.out.println("Random seed: " + seed + " (-Ddarwini.seed=" + seed + " to run it again)");
+			return new SplittableRandom(seed);
+		}
+
 		/**
 		 * <p>
 		 *     Copy a file from a path to another path.
@@ -454,22 +1801,17 @@ public class GeneticAlgorithm {
 		 */
 		public void savePopulation() {
 			System.out.println("The current generation is being saved...");
+			if (CHECKPOINT_INTERVAL > 0) {
+				checkpoint.save(generation, snapshot());
+				checkpoint.await();
+			}
 
             ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS);
             for (int i = 0; i < POPULATION_SIZE; i++) {
-				final Darwini darwini=new Darwini();
                 int individual = i;
                 executor.submit(() -> {
-                    try {
-                        population[individual].printToXML( new File(POPULATION_DIRECTORY + INDIVIDUAL_FILENAME + (individual + 1) + ".xml") );
-						//population[individual].printToXML( new File(POPULATION_DIRECTORY + "Perceptron.xml") );
-                    } catch (FileNotFoundException | XMLStreamException e) {
-                        e.printStackTrace();
-                    }
-
-                    darwini.run();
-
-					System.out.println("\tIndividual n°" + (individual + 1) + "...SAVED");
+                    if (save(population[individual], new File(populationDirectory + INDIVIDUAL_FILENAME + (individual + 1) + ".xml")))
+						System.out.println("\tIndividual n°" + (individual + 1) + "...SAVED");
                 });
             }
             executor.shutdown();
@@ -495,7 +1837,9 @@ public class GeneticAlgorithm {
 
 			if (copy)
 				try {
-					copyFile(POPULATION_DIRECTORY + INDIVIDUAL_FILENAME + (best + 1) + ".xml", ROBOT_DIRECTORY + Darwini.PERCEPTRON_FILE);
+					copyFile(populationDirectory + INDIVIDUAL_FILENAME + (best + 1) + ".xml", ROBOT_DIRECTORY + Darwini.PERCEPTRON_FILE);
+					// The binary perceptron of the last battle must not replace the best one
+					new File(ROBOT_DIRECTORY + Darwini.PERCEPTRON_BINARY).delete();
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
@@ -0,0 +1,121 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class GenomeArena.java
+ */
+
+package model.genetic;
+
+import model.evaluation.Telemetry;
+import model.perceptron.NeuralNetwork;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <p>
+ *     The genomes of the children of a genetic algorithm. A child is a copy of its parent written into a genome of the
+ *     arena, so crossing and mutating it never changes the parent; when an individual dies (replaced in the population,
+ *     or rejected), its genome goes back to the arena and is used again by a next child.
+ *     With a constant population size, the arena stops allocating after the first generations.
+ * </p>
+ * <p>
+ *     An arena belongs to one genetic algorithm and is used from its thread only.
+ * </p>
+ *
+ * @see GeneticAlgorithm
+ * @see NeuralNetwork#copy(double[])
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class GenomeArena {
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The genomes of the dead individuals, ready to be used again.
+		 * </p>
+		 */
+		private Deque<double[]> free;
+
+		/**
+		 * <p>
+		 *     The largest number of free genomes kept.
+		 * </p>
+		 */
+		private int capacity;
+
+		/**
+		 * <p>
+		 *     The number of genomes allocated.
+		 * </p>
+		 */
+		private int allocated;
+
+		/**
+		 * <p>
+		 *     The number of genomes used again.
+		 * </p>
+		 */
+		private int recycled;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * @param capacity the largest number of free genomes kept, about the size of the population
+		 */
+		public GenomeArena(int capacity) {
+			this.capacity = capacity;
+			free = new ArrayDeque<>(capacity);
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Create a child as a copy of an individual, in a free genome if there is one.
+		 * </p>
+		 *
+		 * @param parent the individual to copy
+		 *
+		 * @return the child, sharing nothing with its parent
+		 */
+		public NeuralNetwork copy(NeuralNetwork parent) {
+			long start = System.nanoTime();
+			double[] genome = free.poll();
+			if (genome == null || genome.length != parent.getGenome().length) {
+				genome = new double[parent.getGenome().length];
+				allocated++;
+			} else
+				recycled++;
+			NeuralNetwork child = parent.copy(genome);
+			Telemetry.record(Telemetry.Stage.COPY, start);
+			return child;
+		}
+
+		/**
+		 * <p>
+		 *     Give back the genome of a dead individual. The individual must not be used anymore.
+		 * </p>
+		 *
+		 * @param individual the dead individual
+		 */
+		public void release(NeuralNetwork individual) {
+			if (individual != null && free.size() < capacity)
+				free.push(individual.getGenome());
+		}
+
+		/**
+		 * @return the number of genomes allocated and used again
+		 */
+		@Override
+		public String toString() {
+			return allocated + " genomes allocated, " + recycled + " recycled";
+		}
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class IslandModel.java
+ */
+
+package model.genetic;
+
+import model.evaluation.BattleConfiguration;
+import model.evaluation.Evaluator;
+import model.evaluation.Telemetry;
+import model.perceptron.NeuralNetwork;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ *     A parallel genetic algorithm made of several independent populations, the islands. Every island is a
+ *     GeneticAlgorithm with its own selection, crossover and mutation, run on its own thread; the battles of all
+ *     the islands share the evaluator, so its workers stay busy while an island waits for its last battle.
+ * </p>
+ * <p>
+ *     Every {@link #MIGRATION_INTERVAL} generations, the best individual of every island migrates to its neighbours,
+ *     where it replaces the worst individual:
+ * </p>
+ * <ul>
+ *     <li>RING: the island n sends its best individual to the island n + 1 (and the last one to the first one).</li>
+ *     <li>FULL: every island sends its best individual to all the other islands.</li>
+ * </ul>
+ * <p>
+ *     The islands evolve apart between two migrations, so the diversity stays higher than in one population.
+ *     Every island is saved in its own directory, data/population/island&lt;n&gt;/.
+ * </p>
+ *
+ * @see GeneticAlgorithm
+ * @see NaturalSelection
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class IslandModel {
+
+	/**
+	 * <p>
+	 *     The islands receiving the migrants of an island.
+	 * </p>
+	 */
+	public enum Topology {
+		RING, FULL
+	}
+
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     The number of islands, changed with -Ddarwini.islands=N. The island model is used from 2 islands.
+		 * </p>
+		 */
+		public static final int ISLANDS = Integer.getInteger("darwini.islands", 1);
+
+		/**
+		 * <p>
+		 *     The number of generations between two migrations, changed with -Ddarwini.migration=K.
+		 * </p>
+		 */
+		public static final int MIGRATION_INTERVAL = Integer.getInteger("darwini.migration", 5);
+
+		/**
+		 * <p>
+		 *     The topology of the migrations, changed with -Ddarwini.topology=ring|full.
+		 * </p>
+		 */
+		public static final Topology TOPOLOGY = Topology.valueOf(System.getProperty("darwini.topology", "ring").toUpperCase(Locale.US));
+
+		/**
+		 * <p>
+		 *     The directory containing the populations of the islands.
+		 * </p>
+		 */
+		private static final String ISLAND_DIRECTORY = GeneticAlgorithm.POPULATION_DIRECTORY + "island";
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The populations of the islands.
+		 * </p>
+		 */
+		private GeneticAlgorithm[] islands;
+
+		/**
+		 * <p>
+		 *     The threads of the islands.
+		 * </p>
+		 */
+		private ExecutorService executor;
+
+		/**
+		 * <p>
+		 *     The number of generations created by every island.
+		 * </p>
+		 */
+		private int generation;
+
+		/**
+		 * <p>
+		 *     The number of islands which have ended a generation, for every generation not reported yet.
+		 * </p>
+		 */
+		private Map<Integer, Integer> ended;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * <p>
+		 *     Initialize the islands at the same time, loading their populations or creating them.
+		 * </p>
+		 *
+		 * @param evaluator the fitness backend shared by the islands
+		 * @param battle the battle used to test the individuals
+		 */
+		public IslandModel(Evaluator evaluator, BattleConfiguration battle) {
+			islands = new GeneticAlgorithm[ISLANDS];
+			executor = Executors.newFixedThreadPool(ISLANDS);
+			ended = new HashMap<>();
+
+			// Every island has its own random numbers, split from the seed of the run
+			SplittableRandom random = GeneticAlgorithm.newRandom();
+			List<Callable<Void>> tasks = new ArrayList<>();
+			for (int i = 0; i < ISLANDS; i++) {
+				int island = i;
+				SplittableRandom stream = random.split();
+				tasks.add(() -> {
+					islands[island] = new GeneticAlgorithm(evaluator, battle, ISLAND_DIRECTORY + (island + 1) + "/", stream, this::report);
+					return null;
+				});
+			}
+			run(tasks);
+			// The islands resumed from their checkpoints go on with the migrations where they stopped
+			generation = islands[0].getGeneration();
+			printIslands();
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Launch the generations on all the islands, with a migration every {@link #MIGRATION_INTERVAL} generations.
+		 * </p>
+		 *
+		 * @param numberGeneration the number of generations of every island
+		 *
+		 * @exception IllegalArgumentException if the number of generation specified is less than 1
+		 */
+		public void generate(int numberGeneration) throws IllegalArgumentException {
+			if (numberGeneration < 1)
+				throw new IllegalArgumentException("The number of generation must be greater than 0");
+
+			int remaining = numberGeneration;
+			while (remaining > 0) {
+				int generations = Math.min(remaining, MIGRATION_INTERVAL - generation % MIGRATION_INTERVAL);
+				List<Callable<Void>> tasks = new ArrayList<>();
+				for (GeneticAlgorithm island : islands)
+					tasks.add(() -> {
+						island.generate(generations);
+						return null;
+					});
+				run(tasks);
+
+				generation += generations;
+				remaining -= generations;
+				printIslands();
+				if (generation % MIGRATION_INTERVAL == 0)
+					migrate();
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Send the best individual of every island to its neighbours. The migrants are all chosen before the first
+		 *     one arrives, so an individual migrates only once.
+		 * </p>
+		 */
+		private void migrate() {
+			NeuralNetwork[] migrants = new NeuralNetwork[islands.length];
+			Score[] scores = new Score[islands.length];
+			for (int i = 0; i < islands.length; i++) {
+				migrants[i] = islands[i].getBestIndividual();
+				scores[i] = islands[i].getBestScore();
+			}
+
+			System.out.println("Migration after the generation n°" + generation + " (" + TOPOLOGY + ")...");
+			for (int from = 0; from < islands.length; from++)
+				for (int to = 0; to < islands.length; to++) {
+					if (to == from || (TOPOLOGY == Topology.RING && to != (from + 1) % islands.length))
+						continue;
+
+					// Every island receives its own copy, its crossovers must not change the other islands
+					int replaced = islands[to].immigrate(migrants[from].copy(), scores[from]);
+					System.out.println("\tIsland n°" + (from + 1) + " -> island n°" + (to + 1) + ": replaces the individual n°"
+							+ (replaced + 1) + " (" + String.format(Locale.US, "%.1f", scores[from].getRoundScore()) + " per round)");
+				}
+		}
+
+		/**
+		 * <p>
+		 *     Note that an island has ended a generation. When all the islands have ended it, the telemetry of the run
+		 *     is appended to the telemetry file and its summary printed: one report per generation of the run, whatever
+		 *     the number of islands.
+		 * </p>
+		 *
+		 * @param generation the generation ended by the island
+		 */
+		private synchronized void report(int generation) {
+			int islandsEnded = ended.merge(generation, 1, Integer::sum);
+			if (islandsEnded < ISLANDS)
+				return;
+
+			ended.remove(generation);
+			System.out.println("Telemetry of the generation n°" + generation + " of the islands: " + Telemetry.report(
+					GeneticAlgorithm.POPULATION_DIRECTORY, generation, new File(GeneticAlgorithm.TELEMETRY_PATH)));
+		}
+
+		/**
+		 * <p>
+		 *     Print the best and the mean weighted score per round of every island.
+		 * </p>
+		 */
+		private void printIslands() {
+			for (int i = 0; i < islands.length; i++)
+				System.out.println("Island n°" + (i + 1) + " after " + generation + " generations: best "
+						+ String.format(Locale.US, "%.1f", islands[i].getBestScore().getRoundScore()) + ", mean "
+						+ String.format(Locale.US, "%.1f", islands[i].getMeanRoundScore()) + " per round");
+		}
+
+		/**
+		 * <p>
+		 *     Run a task on every island at the same time and wait for all of them.
+		 * </p>
+		 *
+		 * @param tasks the tasks of the islands
+		 */
+		private void run(List<Callable<Void>> tasks) {
+			try {
+				for (Future<Void> future : executor.invokeAll(tasks))
+					future.get();
+			} catch (InterruptedException e) {
+				System.out.println("The islands have been interrupted");
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("An island has failed", e.getCause());
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Save the populations of all the islands, each one in its directory.
+		 * </p>
+		 */
+		public void savePopulation() {
+			for (GeneticAlgorithm island : islands)
+				island.savePopulation();
+			executor.shutdown();
+		}
+
+		/**
+		 * <p>
+		 *     Find the best individual of all the islands, compared like the best individual of an island.
+		 * </p>
+		 *
+		 * @param copy if true, copy the best individual into the Darwini's perceptron
+		 *
+		 * @return the number of the island of the best individual (from 1)
+		 */
+		public int whoIsTheBest(boolean copy) {
+			int best = 0;
+			for (int i = 1; i < islands.length; i++)
+				if (GeneticAlgorithm.compare(islands[i].getBestScore(), islands[best].getBestScore()) > 0)
+					best = i;
+
+			islands[best].whoIsTheBest(copy);
+			return best + 1;
+		}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class NSGA2.java
+ */
+
+package model.genetic;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * <p>
+ *     The sorting of the multi-objective selection NSGA-II, over the objectives of the scores (all to maximize).
+ *     An individual dominates another one if it is at least as good on every objective and better on one of them.
+ * </p>
+ * <ul>
+ *     <li>The fast non-dominated sorting splits the individuals in fronts: the first front is the Pareto front, made of
+ *     the individuals dominated by nobody, the second front is dominated only by the first one, and so on.
+ *     It compares every pair of individuals once, in O(M·N²) for N individuals and M objectives.</li>
+ *     <li>The crowding distance of an individual measures the space around it in its front, the sum over the objectives
+ *     of the distance between its two neighbours. The ends of a front have an infinite distance, so they are kept.
+ *     It sorts every front on every objective, in O(M·N·log N).</li>
+ * </ul>
+ * <p>
+ *     An individual is better than another one if it is in a lower front, or in the same front with a larger crowding
+ *     distance: the search goes towards the Pareto front and spreads along it.
+ * </p>
+ *
+ * @see Score#getObjectives()
+ * @see GeneticAlgorithm
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class NSGA2 {
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		private NSGA2() {
+		}
+
+
+	/*	----- SORTING -----	*/
+
+		/**
+		 * <p>
+		 *     Split the individuals in fronts by fast non-dominated sorting.
+		 * </p>
+		 *
+		 * @param objectives the objectives of every individual
+		 *
+		 * @return the front of every individual, from 0 for the Pareto front
+		 */
+		public static int[] sort(double[][] objectives) {
+			int n = objectives.length;
+			int[] ranks = new int[n];
+
+			// The individuals dominated by every individual, and the number of individuals dominating every individual
+			int[][] dominated = new int[n][];
+			int[] dominatedCounts = new int[n];
+			int[] dominationCounts = new int[n];
+			for (int p = 0; p < n; p++)
+				for (int q = p + 1; q < n; q++) {
+					int domination = dominates(objectives[p], objectives[q]);
+					if (domination > 0) {
+						dominated[p] = add(dominated[p], dominatedCounts[p]++, q);
+						dominationCounts[q]++;
+					} else if (domination < 0) {
+						dominated[q] = add(dominated[q], dominatedCounts[q]++, p);
+						dominationCounts[p]++;
+					}
+				}
+
+			// The next front is made of the individuals dominated only by the previous fronts
+			int[] front = new int[n];
+			int size = 0;
+			for (int p = 0; p < n; p++)
+				if (dominationCounts[p] == 0)
+					front[size++] = p;
+
+			int rank = 0;
+			while (size > 0) {
+				int[] next = new int[n];
+				int nextSize = 0;
+				for (int i = 0; i < size; i++) {
+					int p = front[i];
+					ranks[p] = rank;
+					for (int j = 0; j < dominatedCounts[p]; j++)
+						if (--dominationCounts[dominated[p][j]] == 0)
+							next[nextSize++] = dominated[p][j];
+				}
+				front = next;
+				size = nextSize;
+				rank++;
+			}
+
+			return ranks;
+		}
+
+		/**
+		 * <p>
+		 *     Compute the crowding distance of every individual in its front.
+		 * </p>
+		 *
+		 * @param objectives the objectives of every individual
+		 * @param ranks the front of every individual, given by {@link #sort(double[][])}
+		 *
+		 * @return the crowding distance of every individual
+		 */
+		public static double[] crowding(double[][] objectives, int[] ranks) {
+			double[] distances = new double[objectives.length];
+			for (Integer[] front : fronts(ranks))
+				for (int m = 0; m < (objectives.length == 0 ? 0 : objectives[0].length); m++) {
+					int objective = m;
+					Arrays.sort(front, Comparator.comparingDouble((Integer i) -> objectives[i][objective]));
+
+					double min = objectives[front[0]][m];
+					double max = objectives[front[front.length - 1]][m];
+					distances[front[0]] = Double.POSITIVE_INFINITY;
+					distances[front[front.length - 1]] = Double.POSITIVE_INFINITY;
+					if (max == min)
+						continue;
+
+					for (int i = 1; i < front.length - 1; i++)
+						distances[front[i]] += (objectives[front[i + 1]][m] - objectives[front[i - 1]][m]) / (max - min);
+				}
+
+			return distances;
+		}
+
+		/**
+		 * <p>
+		 *     Choose the survivors among parents and children: the whole fronts in order while they fit,
+		 *     then the individuals of the first front which does not fit, from the largest crowding distance.
+		 * </p>
+		 *
+		 * @param objectives the objectives of every individual
+		 * @param count the number of survivors
+		 *
+		 * @return the indexes of the survivors
+		 */
+		public static int[] select(double[][] objectives, int count) {
+			int[] ranks = sort(objectives);
+			double[] distances = crowding(objectives, ranks);
+
+			Integer[] order = new Integer[objectives.length];
+			for (int i = 0; i < order.length; i++)
+				order[i] = i;
+			Arrays.sort(order, (i, j) -> compare(ranks, distances, j, i));
+
+			int[] survivors = new int[Math.min(count, order.length)];
+			for (int i = 0; i < survivors.length; i++)
+				survivors[i] = order[i];
+			return survivors;
+		}
+
+		/**
+		 * <p>
+		 *     The crowded comparison of two individuals: the lower front first, then the larger crowding distance.
+		 * </p>
+		 *
+		 * @param ranks the front of every individual
+		 * @param distances the crowding distance of every individual
+		 * @param i the first individual
+		 * @param j the second individual
+		 *
+		 * @return a positive number if the first individual is better, a negative number if it is worse
+		 */
+		public static int compare(int[] ranks, double[] distances, int i, int j) {
+			if (ranks[i] != ranks[j])
+				return Integer.compare(ranks[j], ranks[i]);
+			return Double.compare(distances[i], distances[j]);
+		}
+
+		/**
+		 * <p>
+		 *     Compare two individuals on all the objectives.
+		 * </p>
+		 *
+		 * @param a the objectives of the first individual
+		 * @param b the objectives of the second individual
+		 *
+		 * @return 1 if the first individual dominates the second one, -1 if it is dominated, 0 otherwise
+		 */
+		public static int dominates(double[] a, double[] b) {
+			boolean better = false;
+			boolean worse = false;
+			for (int m = 0; m < a.length; m++)
+				if (a[m] > b[m])
+					better = true;
+				else if (a[m] < b[m])
+					worse = true;
+
+			return better == worse ? 0 : better ? 1 : -1;
+		}
+
+		/**
+		 * <p>
+		 *     Group the individuals by front.
+		 * </p>
+		 *
+		 * @param ranks the front of every individual
+		 *
+		 * @return the individuals of every front, from the Pareto front
+		 */
+		private static Integer[][] fronts(int[] ranks) {
+			int count = 0;
+			for (int rank : ranks)
+				count = Math.max(count, rank + 1);
+
+			int[] sizes = new int[count];
+			for (int rank : ranks)
+				sizes[rank]++;
+
+			Integer[][] fronts = new Integer[count][];
+			for (int rank = 0; rank < count; rank++)
+				fronts[rank] = new Integer[sizes[rank]];
+			int[] filled = new int[count];
+			for (int i = 0; i < ranks.length; i++)
+				fronts[ranks[i]][filled[ranks[i]]++] = i;
+			return fronts;
+		}
+
+		/**
+		 * <p>
+		 *     Add a value to a growing array.
+		 * </p>
+		 *
+		 * @param array the array, null if it is empty
+		 * @param size the number of values in the array
+		 * @param value the value to add
+		 *
+		 * @return the array containing the value, larger if it was full
+		 */
+		private static int[] add(int[] array, int size, int value) {
+			if (array == null)
+				array = new int[4];
+			else if (size == array.length)
+				array = Arrays.copyOf(array, 2 * size);
+			array[size] = value;
+			return array;
+		}
+
+}
@@ -8,7 +8,17 @@
 
 package model.genetic;
 
+import model.evaluation.BattleConfiguration;
+import model.evaluation.ConcurrencyController;
+import model.evaluation.Coordinator;
+import model.evaluation.EngineEvaluator;
+import model.evaluation.Evaluator;
+import model.evaluation.FitnessCache;
+import model.evaluation.ProcessEvaluator;
+import model.evaluation.WorkerPool;
+
 import java.io.File;
+import java.io.IOException;
 
 /**
  * This class launches the genetic algorithm.
@@ -35,11 +45,91 @@ public class NaturalSelection {
 
     private static final int NUMBER_GENERATION = 1;
 
-    public static void main(String[] args) {
-        GeneticAlgorithm ga = new GeneticAlgorithm();
-        ga.generate(NUMBER_GENERATION);
-        ga.savePopulation();
-        int numBest = ga.whoIsTheBest(true) + 1;
+    /**
+     * The battle configuration for test the individuals.
+     * Modify it if you want to change the opponent robot.
+     */
+    private static final String BATTLE_PATH = "data/test.battle";
+
+    /**
+     * The fitness backend, chosen with -Ddarwini.evaluator=engine|pool|process|remote.
+     * "engine" keeps Robocode in this JVM, "pool" keeps one warm Robocode JVM per thread,
+     * "process" launches a Robocode JVM for every battle
+     * (with "pool" and "process", one battle per thread at the same time, each one in its own sandbox),
+     * "remote" sends the battles to the RemoteWorkers connected on the port -Ddarwini.port (4815 by default).
+     * With -Ddarwini.islands=N (N &gt; 1), N populations evolve apart and exchange their best individuals (see IslandModel).
+     */
+    private static final String EVALUATOR = System.getProperty("darwini.evaluator", "engine");
+
+    /**
+     * The optimizer of the perceptron, chosen with -Ddarwini.optimizer=ga|cmaes|es.
+     * "ga" is the genetic algorithm, "cmaes" the evolution strategy CMA-ES, "es" the evolution strategy of OpenAI
+     * (see Optimizer to compare them).
+     */
+    private static final String OPTIMIZER = System.getProperty("darwini.optimizer", "ga");
+
+    /**
+     * The file where the scores of the tested individuals are kept, so an individual already tested
+     * does not fight again. Disable it with -Ddarwini.cache=false.
+     */
+    private static final String CACHE_PATH = "data/population/fitness.cache";
+
+    /**
+     * The adaptive concurrency, disabled with -Ddarwini.adaptive=false: the number of battles at the same time
+     * is chosen during the run from the evaluations per second, the load of the processors and the free memory,
+     * up to -Ddarwini.threads (see ConcurrencyController). The cached scores do not take a battle.
+     * Only the "process" and "pool" evaluators are controlled, the others are left as they are.
+     */
+    private static final boolean ADAPTIVE = ConcurrencyController.ENABLED;
+
+    public static void main(String[] args) throws IOException {
+        Evaluator evaluator;
+        if (EVALUATOR.equals("process"))
+            evaluator = new ProcessEvaluator(GeneticAlgorithm.NB_THREADS);
+        else if (EVALUATOR.equals("pool"))
+            evaluator = new WorkerPool(GeneticAlgorithm.NB_THREADS);
+        else if (EVALUATOR.equals("remote"))
+            evaluator = new Coordinator(Integer.getInteger("darwini.port", Coordinator.DEFAULT_PORT));
+        else
+            evaluator = new EngineEvaluator();
+        if (ADAPTIVE) {
+            String reason = ConcurrencyController.reasonToSkip(EVALUATOR);
+            if (reason == null)
+                evaluator = new ConcurrencyController(evaluator, GeneticAlgorithm.NB_THREADS);
+            else
+                System.out.println("No adaptive concurrency with the " + EVALUATOR + " evaluator: " + reason);
+        }
+        if (!System.getProperty("darwini.cache", "true").equals("false"))
+            evaluator = new FitnessCache(evaluator, new File(CACHE_PATH));
+
+        if (IslandModel.ISLANDS > 1) {
+            IslandModel islands = new IslandModel(evaluator, new BattleConfiguration(new File(BATTLE_PATH)));
+            islands.generate(NUMBER_GENERATION);
+            evaluator.close();
+            islands.savePopulation();
+            System.out.println("The best robot comes from the island n°" + islands.whoIsTheBest(true) + ", launch robocode and try Darwini* !");
+            return;
+        }
+
+        BattleConfiguration battle = new BattleConfiguration(new File(BATTLE_PATH));
+        Optimizer optimizer;
+        if (OPTIMIZER.equals("cmaes"))
+            optimizer = new CMAES(evaluator, battle);
+        else if (OPTIMIZER.equals("es"))
+            optimizer = new EvolutionStrategy(evaluator, battle);
+        else
+            optimizer = new GeneticAlgorithm(evaluator, battle);
+        optimizer.generate(NUMBER_GENERATION);
+        evaluator.close();
+        optimizer.savePopulation();
+        int numBest = optimizer.whoIsTheBest(true) + 1;
+        System.out.println(optimizer.getEvaluations() + " battles fought" + (Optimizer.TARGET == null ? ""
+                : optimizer.getEvaluationsToTarget() < 0 ? ", target of " + Optimizer.TARGET + " per round not reached"
+                : ", target of " + Optimizer.TARGET + " per round reached after " + optimizer.getEvaluationsToTarget()));
+        if (!(optimizer instanceof GeneticAlgorithm)) {
+            System.out.println("The best robot is \"" + OPTIMIZER + "/Best.xml\", launch robocode and try Darwini* !");
+            return;
+        }
         System.out.println("The best robot is \"Individual" + numBest + ".xml\", launch robocode and try Darwini* !");
         new File("data/population/Individual" + numBest + ".xml" ).renameTo(new File("out/production/Darwini/controller/Darwini.data/Perceptron.xml"));
     }
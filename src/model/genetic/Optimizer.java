@@ -0,0 +1,80 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class Optimizer.java
+ */
+
+package model.genetic;
+
+/**
+ * <p>
+ *     A search of the weighting coefficients of the Darwini's perceptron, chosen in NaturalSelection with
+ *     -Ddarwini.optimizer=ga|cmaes|es. The battles are the cost of the search: every optimizer counts the battles it has
+ *     fought, and the battles fought before its best individual reaches the score per round given with -Ddarwini.target,
+ *     so the optimizers can be compared on the same battle.
+ * </p>
+ *
+ * @see GeneticAlgorithm
+ * @see CMAES
+ * @see EvolutionStrategy
+ * @see NaturalSelection
+ *
+ * @version 1.2 - 18/10/26
+ */
+public interface Optimizer {
+
+	/**
+	 * <p>
+	 *     The weighted score per round to reach, given with -Ddarwini.target (null if it is not given).
+	 * </p>
+	 */
+	Double TARGET = System.getProperty("darwini.target") == null ? null : Double.valueOf(System.getProperty("darwini.target"));
+
+	/**
+	 * <p>
+	 *     Launch the generations.
+	 * </p>
+	 *
+	 * @param numberGeneration the number of generation to do
+	 *
+	 * @exception IllegalArgumentException if the number of generation specified is less than 1
+	 */
+	void generate(int numberGeneration) throws IllegalArgumentException;
+
+	/**
+	 * <p>
+	 *     Save the individuals, so the search can go on at the next launch.
+	 * </p>
+	 */
+	void savePopulation();
+
+	/**
+	 * <p>
+	 *     Return the best individual found.
+	 * </p>
+	 *
+	 * @param copy if true, copy the best individual into the Darwini's perceptron
+	 *
+	 * @return the index of the best individual
+	 */
+	int whoIsTheBest(boolean copy);
+
+	/**
+	 * @return the score of the best individual found
+	 */
+	Score getBestScore();
+
+	/**
+	 * @return the number of battles fought (a battle against every opponent of an individual, retries included,
+	 *         the scores found in the fitness cache excluded)
+	 */
+	int getEvaluations();
+
+	/**
+	 * @return the number of battles fought when the best individual reached {@link #TARGET}, -1 if it has not
+	 */
+	int getEvaluationsToTarget();
+
+}
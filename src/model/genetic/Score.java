@@ -10,7 +10,9 @@ package model.genetic;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
@@ -39,6 +41,59 @@ import java.util.stream.Stream;
  */
 public class Score implements Comparable<Score> {
 
+    /*	----- WEIGHTS -----	*/
+
+        /**
+         *  <p>
+         *      The weight of the accuracy in the weighted score of a round. The accuracy is measured on the whole battle,
+         *      its bonus is given in proportion to the rounds fought (300 for a battle of 10 rounds), so a battle
+         *      stopped early does not get a bigger bonus per round
+         *  </p>
+         */
+        public static final int ACCURACY_WEIGHT = 30;
+
+        /**
+         *  <p>
+         *      The number of objectives returned by {@link #getObjectives()}
+         *  </p>
+         */
+        public static final int OBJECTIVES = 4;
+
+        /**
+         *  <p>
+         *      The number of columns and rows of the grid dividing the battlefield in the position histogram
+         *  </p>
+         */
+        public static final int GRID = 3;
+
+        /**
+         *  <p>
+         *      The number of values of the behaviour returned by {@link #getBehaviour()}
+         *  </p>
+         */
+        public static final int BEHAVIOUR = GRID * GRID + 3;
+
+        /**
+         *  <p>
+         *      The distance to the nearest enemy giving 1 in the behaviour, about the diagonal of the battlefield (in pixels)
+         *  </p>
+         */
+        private static final double DISTANCE_SCALE = 1000;
+
+        /**
+         *  <p>
+         *      The fastest fire rate, one bullet of power 3 every 16 turns, giving 1 in the behaviour
+         *  </p>
+         */
+        private static final double FIRE_SCALE = 1.0 / 16;
+
+        /**
+         *  <p>
+         *      The largest speed of a robot, giving 1 in the behaviour (in pixels per turn)
+         *  </p>
+         */
+        private static final double SPEED_SCALE = 8;
+
     /*	----- ATTRIBUTES -----	*/
 
 		/**
@@ -134,20 +189,86 @@ public class Score implements Comparable<Score> {
          */
         private int hitByBullet;
 
+	/**
+         * <p>
+         *     The number of rounds fought, less than the rounds of the battle if it has been stopped by a race
+         * </p>
+         */
+        private int rounds;
+
+	/**
+         * <p>
+         *     The standard deviation of the weighted scores of the rounds (without the accuracy), 0 if it is unknown
+         * </p>
+         */
+        private int deviation;
+
+	/**
+         * <p>
+         *     The number of turns the robot was alive, where the behaviour has been measured
+         * </p>
+         */
+        private int turns;
+
+	/**
+         * <p>
+         *     The number of turns spent in every cell of the battlefield, row after row from the bottom left corner
+         * </p>
+         */
+        private int[] cells = new int[GRID * GRID];
+
+	/**
+         * <p>
+         *     The number of bullets fired by the robot
+         * </p>
+         */
+        private int fired;
+
+	/**
+         * <p>
+         *     The sum over the turns of the distance to the nearest enemy (in pixels)
+         * </p>
+         */
+        private int distance;
+
+	/**
+         * <p>
+         *     The sum over the turns of the speed of the robot (in pixels per turn)
+         * </p>
+         */
+        private int speed;
+
+	/**
+         * <p>
+         *     True if a battle of this score has failed and counts as a penalty: its rounds have not been fought
+         * </p>
+         */
+        private boolean failed;
+
 	/*	----- CONSTRUCTOR -----	*/
 
         /**
          * <p>
 		 *     The construction of this object is based on the file we get when the games are over.
          *     It represents the different criteria to compare two robots.
+         *     It is only used with a Robocode process: the Robocode engine builds the score in memory.
          * </p>
 		 *
          * @param fileName the filepath of the score file providing by Robocode
 		 * @param robotName the name of the robot to compare
+		 *
+		 * @throws IOException if the results or the counters cannot be read, or if they are malformed
          */
-        public Score(String fileName, String robotName) {
-            try (Stream<String> stream = Files.lines(Paths.get(fileName))) {
-                String[] results = stream.filter(line -> line.contains(robotName)).findFirst().get().split("\t");
+        public Score(String fileName, String robotName) throws IOException {
+            List<String> lines = Files.readAllLines(Paths.get(fileName));
+            try {
+                // The first line is "Results for N rounds"
+                Matcher r = Pattern.compile("(\\d+) rounds").matcher(lines.get(0));
+                if (!r.find())
+                    throw new IOException("The number of rounds is not found in " + fileName);
+                rounds = Integer.parseInt(r.group(1));
+
+                String[] results = lines.stream().filter(line -> line.contains(robotName)).findFirst().get().split("\t");
                 Matcher m = Pattern.compile("(\\d+)\\s\\((\\d+)").matcher(results[1]);
                 m.find();
                 totalScore = Integer.parseInt(m.group(1));
@@ -159,27 +280,83 @@ public class Score implements Comparable<Score> {
                 ramDamage = Integer.parseInt(results[6]);
                 ramBonus = Integer.parseInt(results[7]);
 
-                Stream<String> streamAcc = Files.lines(Paths.get("accuracy.txt"));
-                String[] acc = streamAcc.filter(line -> line.contains("accuracy")).findFirst().get().split("\t");
-                Matcher macc = Pattern.compile("(\\d+)\\s*(\\d+)").matcher(acc[1]);
-                macc.find();
-                hits = Integer.parseInt(macc.group(1));
-                missed = Integer.parseInt(macc.group(2));
+                readCounters(Paths.get(fileName).toAbsolutePath().getParent());
+            } catch (RuntimeException e) {
+                // An empty file, a missing robot or a truncated line
+                throw new IOException("The results of " + fileName + " are malformed: " + e, e);
+            }
+        }
 
-                Stream<String> streamDod = Files.lines(Paths.get("dodge.txt"));
-                String[] dod = streamDod.filter(line -> line.contains("dodge")).findFirst().get().split("\t");
-                Matcher mdod = Pattern.compile("(\\d+)\\s*(\\d+)").matcher(dod[1]);
-                mdod.find();
-                hitsWall = Integer.parseInt(mdod.group(1));
-                hitByBullet = Integer.parseInt(mdod.group(2));
 
-                System.out.println("Dodge:" +  (hitByBullet + hitsWall));
-                weightedScore = 6 * bulletDamage + 6 * survival  +  1 * ramDamage + 300 * (hits / (hits + missed));
-            } catch (IOException e) {
-                System.out.println("The results file is not found");
-            }
+        /**
+         * <p>
+         *     An empty score, given to an individual which could not be evaluated.
+         * </p>
+         */
+        public Score() {
         }
 
+        /**
+         * <p>
+         *     Rebuild a score from its components, for example when it is received from an evaluation worker.
+         * </p>
+         *
+         * @param components the components in the order of {@link #getComponents()}
+         */
+        public Score(int[] components) {
+            totalScore = components[0];
+            victory = components[1];
+            survival = components[2];
+            survivalBonus = components[3];
+            bulletDamage = components[4];
+            bulletBonus = components[5];
+            ramDamage = components[6];
+            ramBonus = components[7];
+            hits = components[8];
+            missed = components[9];
+            hitsWall = components[10];
+            hitByBullet = components[11];
+            rounds = components[12];
+            deviation = components[13];
+            turns = components[14];
+            System.arraycopy(components, 15, cells, 0, cells.length);
+            fired = components[15 + cells.length];
+            distance = components[16 + cells.length];
+            speed = components[17 + cells.length];
+            computeWeightedScore();
+        }
+
+        /**
+         * <p>
+         *     Rebuild a score from its components, telling whether one of its battles has failed,
+         *     for example when it is resumed from a checkpoint.
+         * </p>
+         *
+         * @param components the components in the order of {@link #getComponents()}
+         * @param failed true if a battle of this score has failed and counts as a penalty
+         */
+        public Score(int[] components, boolean failed) {
+            this(components);
+            this.failed = failed;
+        }
+
+        /**
+         * <p>
+         *     The score of an individual whose battles keep failing: nothing won on all the rounds of the battle,
+         *     so it is ranked with the worst individuals instead of stopping the generation.
+         * </p>
+         *
+         * @param rounds the number of rounds of the failed battle
+         *
+         * @return the penalty score
+         */
+        public static Score penalty(int rounds) {
+            int[] components = new int[new Score().getComponents().length];
+            components[12] = rounds;
+            Score penalty = new Score(components);
+            penalty.failed = true;
+            return penalty;
+        }
 
     /*	----- OTHER METHOD -----	*/
 
@@ -209,11 +386,246 @@ public class Score implements Comparable<Score> {
             return "Total robocode: " + this.totalScore+ "  //  Total pondéré: "+ this.weigthedScore;
         }*/
 
+        /**
+         * <p>
+         *     Read the counters written by the robot at the end of the battle (accuracy and dodge) and compute the weighted score.
+         * </p>
+         *
+         * @param directory the directory where the robot has written its counters (the current directory of the battle)
+         *
+         * @throws IOException if the counters files are not found
+         */
+        private void readCounters(Path directory) throws IOException {
+            try (Stream<String> streamAcc = Files.lines(directory.resolve("accuracy.txt"))) {
+                String[] acc = streamAcc.filter(line -> line.contains("accuracy")).findFirst().get().split("\t");
+                Matcher macc = Pattern.compile("(\\d+)\\s*(\\d+)").matcher(acc[1]);
+                macc.find();
+                hits = Integer.parseInt(macc.group(1));
+                missed = Integer.parseInt(macc.group(2));
+            }
+
+            try (Stream<String> streamDod = Files.lines(directory.resolve("dodge.txt"))) {
+                String[] dod = streamDod.filter(line -> line.contains("dodge")).findFirst().get().split("\t");
+                Matcher mdod = Pattern.compile("(\\d+)\\s*(\\d+)").matcher(dod[1]);
+                mdod.find();
+                hitsWall = Integer.parseInt(mdod.group(1));
+                hitByBullet = Integer.parseInt(mdod.group(2));
+            }
+
+            // The behaviour is written by the robots since the novelty search
+            Path behaviour = directory.resolve("behaviour.txt");
+            if (Files.exists(behaviour))
+                try (Stream<String> streamBeh = Files.lines(behaviour)) {
+                    String[] beh = streamBeh.filter(line -> line.contains("behaviour")).findFirst().get().split("\t")[1].trim().split(" ");
+                    turns = Integer.parseInt(beh[0]);
+                    for (int i = 0; i < cells.length; i++)
+                        cells[i] = Integer.parseInt(beh[1 + i]);
+                    fired = Integer.parseInt(beh[1 + cells.length]);
+                    distance = Integer.parseInt(beh[2 + cells.length]);
+                    speed = Integer.parseInt(beh[3 + cells.length]);
+                }
+
+            System.out.println("Dodge:" +  (hitByBullet + hitsWall));
+            computeWeightedScore();
+        }
+
+        /**
+         * <p>
+         *     Compute the total score taking the importance of every value.
+         * </p>
+         */
+        private void computeWeightedScore() {
+            weightedScore = (int) Math.round(weight(survival, bulletDamage, ramDamage) + ACCURACY_WEIGHT * getAccuracy() * rounds);
+        }
+
+        /**
+         * @return the part of the bullets fired which hit, between 0 and 1
+         */
+        public double getAccuracy() {
+            return hits + missed == 0 ? 0 : (double) hits / (hits + missed);
+        }
+
+        /**
+         * <p>
+         *     Return the objectives of the multi-objective selection, all to maximize: the survival, the bullet damage
+         *     and the ramming damage per round, and the accuracy. They are the terms of the weighted score, kept apart
+         *     so no weight has to be chosen between them.
+         * </p>
+         *
+         * @return the objectives of the score
+         *
+         * @see NSGA2
+         */
+        public double[] getObjectives() {
+            if (rounds == 0)
+                return new double[OBJECTIVES];
+
+            return new double[] {(double) survival / rounds, (double) bulletDamage / rounds, (double) ramDamage / rounds, getAccuracy()};
+        }
+
+        /**
+         * <p>
+         *     Return the behaviour of the robot during the battle, whatever its score: the part of the turns spent in
+         *     every cell of the battlefield, then the fire rate, the mean distance to the nearest enemy and the mean
+         *     speed. All the values are about between 0 and 1, so they weigh the same in the distance between two behaviours.
+         * </p>
+         *
+         * @return the behaviour descriptor, null if the behaviour has not been measured
+         *
+         * @see BehaviourArchive
+         */
+        public double[] getBehaviour() {
+            if (turns == 0)
+                return null;
+
+            double[] behaviour = new double[BEHAVIOUR];
+            for (int i = 0; i < cells.length; i++)
+                behaviour[i] = (double) cells[i] / turns;
+            behaviour[cells.length] = (double) fired / turns / FIRE_SCALE;
+            behaviour[cells.length + 1] = (double) distance / turns / DISTANCE_SCALE;
+            behaviour[cells.length + 2] = (double) speed / turns / SPEED_SCALE;
+            return behaviour;
+        }
+
+        /**
+         * <p>
+         *     The weighted score without the accuracy, which can be computed round by round.
+         * </p>
+         *
+         * @param survival the survival score
+         * @param bulletDamage the bullet damage score
+         * @param ramDamage the ramming damage score
+         *
+         * @return the weighted score of these values
+         */
+        public static double weight(double survival, double bulletDamage, double ramDamage) {
+            return 6 * bulletDamage + 6 * survival + 1 * ramDamage;
+        }
+
+        /**
+         * <p>
+         *     Return the weighted score per round, so scores of battles stopped early can be compared to the others.
+         * </p>
+         *
+         * @return the mean weighted score of a round
+         */
+        public double getRoundScore() {
+            return rounds == 0 ? 0 : (double) weightedScore / rounds;
+        }
+
+        /**
+         * @return the number of rounds fought
+         */
+        public int getRounds() {
+            return rounds;
+        }
+
+        /**
+         * @return true if a battle of this score has failed and counts as a penalty (kept by the checkpoints;
+         *         the fitness cache never receives the score of a failed battle)
+         */
+        public boolean isFailed() {
+            return failed;
+        }
+
+        /**
+         * <p>
+         *     Return the standard error of the weighted score per round: the fewer rounds, the less it can be trusted.
+         * </p>
+         *
+         * @return the standard error of {@link #getRoundScore()}, 0 if it is unknown
+         */
+        public double getStandardError() {
+            return rounds == 0 ? 0 : deviation / Math.sqrt(rounds);
+        }
+
+        /**
+         * <p>
+         *     Return a pessimistic weighted score per round, one standard error under the mean.
+         *     A score measured on a few lucky rounds is not preferred to a score measured on the whole battle.
+         * </p>
+         *
+         * @return the lower confidence bound of the weighted score per round
+         */
+        public double getLowerBound() {
+            return getRoundScore() - getStandardError();
+        }
+
+        /**
+         * <p>
+         *     Merge two scores of the same individual measured on different rounds, as if all the rounds had been
+         *     fought in one battle.
+         * </p>
+         *
+         * @param o the score of the other rounds
+         *
+         * @return the score of all the rounds
+         */
+        public Score merge(Score o) {
+            int[] a = getComponents();
+            int[] b = o.getComponents();
+            int[] components = new int[a.length];
+            for (int i = 0; i < a.length; i++)
+                components[i] = a[i] + b[i];
+
+            // The victory is a percentage and the deviation is computed again from the sums of squares of the rounds
+            components[1] = rounds + o.rounds == 0 ? 0 : (int) Math.round((double) (victory * rounds + o.victory * o.rounds) / (rounds + o.rounds));
+            components[13] = 0;
+            if (rounds + o.rounds > 1) {
+                double sum = weight(survival, bulletDamage, ramDamage) + weight(o.survival, o.bulletDamage, o.ramDamage);
+                double squares = sumOfSquares() + o.sumOfSquares();
+                int n = rounds + o.rounds;
+                components[13] = (int) Math.round(Math.sqrt(Math.max(0, (squares - sum * sum / n) / (n - 1))));
+            }
+
+            Score merged = new Score(components);
+            merged.failed = failed || o.failed;
+            return merged;
+        }
+
+        /**
+         * <p>
+         *     Return the sum of the squares of the weighted scores of the rounds, computed from their mean and deviation.
+         * </p>
+         *
+         * @return the sum of the squares of the round scores
+         */
+        private double sumOfSquares() {
+            if (rounds == 0)
+                return 0;
+
+            double mean = weight(survival, bulletDamage, ramDamage) / rounds;
+            return (rounds - 1) * (double) deviation * deviation + rounds * mean * mean;
+        }
+
+        /**
+         * <p>
+         *     Return all the components of the score, to send or save it.
+         *     The order is: total score, victory, survival, survival bonus, bullet damage, bullet bonus,
+         *     ramming damage, ramming bonus, hits, missed, walls hit, hit by bullet, rounds, deviation,
+         *     then the behaviour: turns, turns in every cell, bullets fired, sum of the distances, sum of the speeds.
+         *     All the components but the victory and the deviation are sums over the rounds.
+         * </p>
+         *
+         * @return the components of the score
+         */
+        public int[] getComponents() {
+            int[] components = new int[18 + cells.length];
+            int[] results = {totalScore, victory, survival, survivalBonus, bulletDamage, bulletBonus,
+                    ramDamage, ramBonus, hits, missed, hitsWall, hitByBullet, rounds, deviation, turns};
+            System.arraycopy(results, 0, components, 0, results.length);
+            System.arraycopy(cells, 0, components, results.length, cells.length);
+            components[15 + cells.length] = fired;
+            components[16 + cells.length] = distance;
+            components[17 + cells.length] = speed;
+            return components;
+        }
+
         @Override       // WEIGHTED TOTAL
         public int compareTo(Score o) {
-            if (weightedScore > o.weightedScore)
+            if (getRoundScore() > o.getRoundScore())
                 return 1;
-            else if (weightedScore == o.weightedScore)
+            else if (getRoundScore() == o.getRoundScore())
                 if (victory > o.victory)
                     return 1;
                 else if (victory == o.victory)
@@ -0,0 +1,349 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class Surrogate.java
+ */
+
+package model.genetic;
+
+import model.perceptron.NeuralNetwork;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * <p>
+ *     A linear model of the weighted score per round from the genome, used to choose the children which fight
+ *     in Robocode. A prediction costs a few microseconds where a battle costs seconds, so many more children are
+ *     bred than evaluated, and only the most promising or the most uncertain ones fight.
+ * </p>
+ * <p>
+ *     The model is trained by recursive least squares: every score received updates the weights and their covariance
+ *     at once, in O(d²) for a genome of d weights, without keeping the previous individuals. The covariance gives the
+ *     uncertainty of a prediction, which is large for a genome far from all the individuals already evaluated.
+ *     The weights of the genome are divided by the square root of their number, so the features of a genome have
+ *     about the length of the constant one, and the prior does not favour the genomes with the largest weights.
+ * </p>
+ * <p>
+ *     While the model has learnt fewer scores than it has features, its uncertainty mostly measures the length of the
+ *     genome: the exploration grows with the scores learnt, up to {@link #EXPLORATION} once there are as many scores as
+ *     features. Only the scores of whole battles are learnt, not the ones stopped by a race nor the failed ones.
+ * </p>
+ * <p>
+ *     Every prediction is compared to the real score of the child, the report tells how often the surrogate orders
+ *     two children as their battles do. A surrogate belongs to one genetic algorithm and is used from its thread only.
+ * </p>
+ *
+ * @see GeneticAlgorithm
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class Surrogate {
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     The prior variance of the weights, relative to the noise of the scores. The larger, the faster the first
+		 *     scores change the model.
+		 * </p>
+		 */
+		private static final double PRIOR = 10;
+
+		/**
+		 * <p>
+		 *     The number of standard deviations added to a prediction to rank the children, once the model has learnt
+		 *     as many scores as it has features: 0 keeps the most promising children, a larger value keeps more of
+		 *     the uncertain ones.
+		 * </p>
+		 */
+		private static final double EXPLORATION = 1;
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The number of features: the weights of the genome and a constant.
+		 * </p>
+		 */
+		private int dimension;
+
+		/**
+		 * <p>
+		 *     The factor of the weights of the genome in the features.
+		 * </p>
+		 */
+		private double scale;
+
+		/**
+		 * <p>
+		 *     The weights of the features.
+		 * </p>
+		 */
+		private double[] weights;
+
+		/**
+		 * <p>
+		 *     The covariance of the weights, relative to the noise, stored row after row.
+		 * </p>
+		 */
+		private double[] covariance;
+
+		/**
+		 * <p>
+		 *     The variance of the scores around the predictions.
+		 * </p>
+		 */
+		private double noise;
+
+		/**
+		 * <p>
+		 *     The number of scores learnt.
+		 * </p>
+		 */
+		private int samples;
+
+		/**
+		 * <p>
+		 *     The predictions and the real scores compared since the last report.
+		 * </p>
+		 */
+		private double[][] records;
+
+		/**
+		 * <p>
+		 *     The number of predictions compared since the last report.
+		 * </p>
+		 */
+		private int recorded;
+
+		/**
+		 * <p>
+		 *     The pairs of children ordered by the surrogate as by their battles, and all the pairs, since the start.
+		 * </p>
+		 */
+		private long concordantPairs, pairs;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * @param genomeSize the number of weights of a genome
+		 */
+		public Surrogate(int genomeSize) {
+			dimension = genomeSize + 1;
+			scale = 1 / Math.sqrt(genomeSize);
+			weights = new double[dimension];
+			covariance = new double[dimension * dimension];
+			for (int i = 0; i < dimension; i++)
+				covariance[i * dimension + i] = PRIOR;
+			records = new double[16][];
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Predict the weighted score per round of an individual.
+		 * </p>
+		 *
+		 * @param individual the individual
+		 *
+		 * @return the predicted score
+		 */
+		public double predict(NeuralNetwork individual) {
+			return dot(weights, features(individual));
+		}
+
+		/**
+		 * <p>
+		 *     Return the standard deviation of the prediction of an individual.
+		 * </p>
+		 *
+		 * @param individual the individual
+		 *
+		 * @return the uncertainty of the prediction
+		 */
+		public double uncertainty(NeuralNetwork individual) {
+			double[] x = features(individual);
+			return Math.sqrt(noise * dot(x, multiply(x)));
+		}
+
+		/**
+		 * <p>
+		 *     Return the score used to rank the children, an optimistic prediction.
+		 * </p>
+		 *
+		 * @param individual the individual
+		 *
+		 * @return the prediction plus up to {@link #EXPLORATION} standard deviations
+		 */
+		public double bound(NeuralNetwork individual) {
+			return predict(individual) + EXPLORATION * Math.min(1, (double) samples / dimension) * uncertainty(individual);
+		}
+
+		/**
+		 * <p>
+		 *     Learn the score of an individual.
+		 * </p>
+		 *
+		 * @param individual the individual evaluated
+		 * @param score its score
+		 */
+		public void learn(NeuralNetwork individual, Score score) {
+			double[] x = features(individual);
+			double[] px = multiply(x);
+			double denominator = 1 + dot(x, px);
+			double error = score.getRoundScore() - predict(individual);
+
+			// The noise is estimated from the errors made before learning, scaled by their own uncertainty
+			noise = (noise * samples + error * error / denominator) / (samples + 1);
+			samples++;
+
+			for (int i = 0; i < dimension; i++)
+				weights[i] += px[i] * error / denominator;
+			for (int i = 0; i < dimension; i++) {
+				double gain = px[i] / denominator;
+				int row = i * dimension;
+				for (int j = 0; j < dimension; j++)
+					covariance[row + j] -= gain * px[j];
+			}
+		}
+
+		/**
+		 * <p>
+		 *     Compare a prediction, made before the battles, to the real score of the child.
+		 * </p>
+		 *
+		 * @param prediction the predicted score
+		 * @param score the real score
+		 */
+		public void record(double prediction, Score score) {
+			if (recorded == records.length)
+				records = Arrays.copyOf(records, 2 * recorded);
+			records[recorded++] = new double[] {prediction, score.getRoundScore()};
+		}
+
+		/**
+		 * <p>
+		 *     Return how well the predictions recorded since the last report matched the battles,
+		 *     then start a new report.
+		 * </p>
+		 *
+		 * @return the mean error and the part of the pairs of children ordered as by their battles
+		 */
+		public String report() {
+			double error = 0;
+			long concordant = 0, compared = 0;
+			for (int i = 0; i < recorded; i++) {
+				error += Math.abs(records[i][0] - records[i][1]);
+				for (int j = i + 1; j < recorded; j++)
+					if (records[i][1] != records[j][1]) {
+						compared++;
+						if ((records[i][0] - records[j][0]) * (records[i][1] - records[j][1]) > 0)
+							concordant++;
+					}
+			}
+			concordantPairs += concordant;
+			pairs += compared;
+
+			String report = String.format(Locale.US, "Surrogate: %d predictions, mean error %.1f per round, %.0f%% of the pairs ordered as the battles (%.0f%% since the start, %d scores learnt)",
+					recorded, recorded == 0 ? 0 : error / recorded, compared == 0 ? 0 : 100.0 * concordant / compared,
+					pairs == 0 ? 0 : 100.0 * concordantPairs / pairs, samples);
+			recorded = 0;
+			return report;
+		}
+
+		/**
+		 * <p>
+		 *     Write the model in a checkpoint: the weights, the covariance, the noise and the number of scores learnt.
+		 * </p>
+		 *
+		 * @param out the checkpoint
+		 *
+		 * @throws IOException if the checkpoint cannot be written
+		 */
+		public void write(DataOutput out) throws IOException {
+			out.writeInt(dimension - 1);
+			for (double weight : weights)
+				out.writeDouble(weight);
+			for (double value : covariance)
+				out.writeDouble(value);
+			out.writeDouble(noise);
+			out.writeInt(samples);
+		}
+
+		/**
+		 * <p>
+		 *     Read a model written by {@link #write(DataOutput)}.
+		 * </p>
+		 *
+		 * @param in the checkpoint
+		 *
+		 * @return the model
+		 *
+		 * @throws IOException if the checkpoint cannot be read
+		 */
+		public static Surrogate read(DataInput in) throws IOException {
+			Surrogate surrogate = new Surrogate(in.readInt());
+			for (int i = 0; i < surrogate.weights.length; i++)
+				surrogate.weights[i] = in.readDouble();
+			for (int i = 0; i < surrogate.covariance.length; i++)
+				surrogate.covariance[i] = in.readDouble();
+			surrogate.noise = in.readDouble();
+			surrogate.samples = in.readInt();
+			return surrogate;
+		}
+
+		/**
+		 * @param individual the individual
+		 *
+		 * @return the features of the individual: its scaled genome and a constant
+		 */
+		private double[] features(NeuralNetwork individual) {
+			double[] genome = individual.getGenome();
+			double[] x = new double[dimension];
+			for (int i = 0; i < dimension - 1; i++)
+				x[i] = scale * genome[i];
+			x[dimension - 1] = 1;
+			return x;
+		}
+
+		/**
+		 * @param x the features
+		 *
+		 * @return the product of the covariance by the features
+		 */
+		private double[] multiply(double[] x) {
+			double[] product = new double[dimension];
+			for (int i = 0; i < dimension; i++) {
+				double sum = 0;
+				int row = i * dimension;
+				for (int j = 0; j < dimension; j++)
+					sum += covariance[row + j] * x[j];
+				product[i] = sum;
+			}
+			return product;
+		}
+
+		/**
+		 * @param a the first vector
+		 * @param b the second vector
+		 *
+		 * @return the dot product of the vectors
+		 */
+		private static double dot(double[] a, double[] b) {
+			double sum = 0;
+			for (int i = 0; i < a.length; i++)
+				sum += a[i] * b[i];
+			return sum;
+		}
+
+}
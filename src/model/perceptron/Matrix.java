@@ -31,21 +31,36 @@ import java.util.Locale;
 
 public class Matrix {
 	
-	/*	----- ATTRIBUTE -----	*/
+	/*	----- ATTRIBUTES -----	*/
 
 		/**
-		 * The matrix table
+		 * The matrix values
 		 * <p>
-		 * Principle Matrix's features which represent the matrix by a 2D table
+		 * The values of the matrix, row after row, in a flat array from the offset. The array can be shared by
+		 * several matrices, like the genome of a NeuralNetwork which holds all its weighting coefficients.
 		 * </p>
 		 *
-		 * @see Matrix#Matrix(int, int)
-		 *
+		 * @see Matrix#Matrix(double[], int, int, int)
 		 */
-		private double[][] matrix;
+		private double[] values;
 
+		/**
+		 * The index of the first value of the matrix in the array
+		 */
+		private int offset;
 
-	/*	----- CONSTRUCTOR -----	*/
+		/**
+		 * The number of rows
+		 */
+		private int numRows;
+
+		/**
+		 * The number of columns
+		 */
+		private int numColumns;
+
+
+	/*	----- CONSTRUCTORS -----	*/
 
 		/**
 		 * The matrix's constructor
@@ -56,7 +71,25 @@ public class Matrix {
 		 * @see Matrix
 		 */
 		public Matrix(int numRows, int numColumns) {
-			matrix = new double[numRows][numColumns];
+			this(new double[numRows * numColumns], 0, numRows, numColumns);
+		}
+
+		/**
+		 * The constructor of a view on a part of an array: changing the matrix changes the array
+		 *
+		 * @param values the array containing the values, row after row
+		 * @param offset the index of the first value of the matrix
+		 * @param numRows Matrix's number of rows
+		 * @param numColumns Matrix's number of columns
+		 */
+		public Matrix(double[] values, int offset, int numRows, int numColumns) {
+			if (offset < 0 || offset + numRows * numColumns > values.length)
+				throw new IllegalArgumentException("The matrix " + numRows + "x" + numColumns + " does not fit in the array");
+
+			this.values = values;
+			this.offset = offset;
+			this.numRows = numRows;
+			this.numColumns = numColumns;
 		}
 		
 	
@@ -70,7 +103,7 @@ public class Matrix {
 		 * @param value the value to set
 		 */
 		public void set(int numRows, int numColumns, double value) {
-			matrix[numRows][numColumns] = value;
+			values[offset + numRows * this.numColumns + numColumns] = value;
 		}
 		
 		/**
@@ -81,14 +114,15 @@ public class Matrix {
 		 * @return the matrix's multiplication's result
 		 */
 		public Matrix mult(Matrix m2) {
-			Matrix res = new Matrix(matrix.length, m2.matrix[0].length);
+			Matrix res = new Matrix(numRows, m2.numColumns);
 			
 			double value;
-			for (int k = 0; k < m2.matrix.length; k++) 
-				for (int i = 0; i < matrix.length; i++) {
-					value = matrix[i][k];
-					for (int j = 0; j < m2.matrix[0].length; j++)
-						  res.matrix[i][j] += value * m2.matrix[k][j];
+			for (int k = 0; k < m2.numRows; k++) 
+				for (int i = 0; i < numRows; i++) {
+					value = values[offset + i * numColumns + k];
+					int row = m2.offset + k * m2.numColumns;
+					for (int j = 0; j < m2.numColumns; j++)
+						  res.values[i * res.numColumns + j] += value * m2.values[row + j];
 				}
 	                	
 			return res;
@@ -106,7 +140,7 @@ public class Matrix {
 		 * @return the value contains in matrix[numRows][numColumns]
 		 */
 		public double get(int numRows, int numColumns) {
-			return matrix[numRows][numColumns];
+			return values[offset + numRows * this.numColumns + numColumns];
 		}
 		
 		/**
@@ -115,7 +149,7 @@ public class Matrix {
 		 * @return the rows' number of th matrix
 		 */
 		public int getRowCount() {
-			return matrix.length;
+			return numRows;
 		}
 		
 		/**
@@ -124,7 +158,34 @@ public class Matrix {
 		 * @return the columns' number of the matrix
 		 */
 		public int getColumnCount() {
-			return matrix[0].length;
+			return numColumns;
+		}
+
+		/**
+		 * Count the number of values
+		 *
+		 * @return the number of values of the matrix
+		 */
+		public int size() {
+			return numRows * numColumns;
+		}
+
+		/**
+		 * Accessor to the array containing the values, row after row from {@link #getOffset()}
+		 *
+		 * @return the array of the values, shared with the matrix
+		 */
+		public double[] getValues() {
+			return values;
+		}
+
+		/**
+		 * Accessor to the index of the first value of the matrix in its array
+		 *
+		 * @return the offset of the matrix
+		 */
+		public int getOffset() {
+			return offset;
 		}
 
 
@@ -136,10 +197,9 @@ public class Matrix {
 		 * @return the printed matrix
 		 */
 		public String toString() {
-			StringBuilder sb = new StringBuilder(matrix.length * matrix[0].length);
-			for (int i = 0; i < matrix.length; i++)
-				for (int j = 0; j < matrix[0].length; j++)
-					sb.append(String.format(Locale.US, "%.6f", matrix[i][j])).append(" ");
+			StringBuilder sb = new StringBuilder(size());
+			for (int i = offset; i < offset + size(); i++)
+				sb.append(String.format(Locale.US, "%.6f", values[i])).append(" ");
 
 			return sb.toString();
 		}
@@ -12,6 +12,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.SplittableRandom;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -64,6 +72,15 @@ public class NeuralNetwork {
 		 */
 		private static final int HIDDEN_NEURONS = 20;
 
+		/**
+		 * <p>
+		 *     All the weighting coefficients in one array: the input weights, then the output weights, then the bias.
+		 *     The three matrices below are views on this genome, so the genetic operators, the copies, the hash and
+		 *     the binary form work on one contiguous array.
+		 * </p>
+		 */
+		private double[] genome;
+
         /**
 		 * <p>
 		 *     The first matrix of weighting coefficient
@@ -97,12 +114,55 @@ public class NeuralNetwork {
 		 * </p>
 		 */
 		public NeuralNetwork() {
-			inputWeights = new Matrix(InputData.INPUT_NEURONS, HIDDEN_NEURONS);
-			randomizeIOMatrix(inputWeights);
-			outputWeights = new Matrix(HIDDEN_NEURONS, OutputData.OUTPUT_NEURONS);
-			randomizeIOMatrix(outputWeights);
-			bias = new Matrix(HIDDEN_NEURONS, 1);
-			randomizeBiasMatrix(bias);
+			this(new SplittableRandom());
+		}
+
+		/**
+		 * <p>
+		 *     The neural network constructor with random weighting coefficient from a given stream
+		 *     (used in the genetic algorithm process, to create the same individuals again from a seed)
+		 * </p>
+		 *
+		 * @param random the random numbers used by this neural network only
+		 */
+		public NeuralNetwork(SplittableRandom random) {
+			this(new double[size(InputData.INPUT_NEURONS, HIDDEN_NEURONS, OutputData.OUTPUT_NEURONS)]);
+			randomizeIOMatrix(inputWeights, random);
+			randomizeIOMatrix(outputWeights, random);
+			randomizeBiasMatrix(bias, random);
+		}
+
+		/**
+		 * <p>
+		 *     The neural network constructor with a genome, laid out like {@link #getGenome()}
+		 *     (used when the genome is built or changed without the matrices)
+		 * </p>
+		 *
+		 * @param genome the weighting coefficients, used without copy
+		 */
+		public NeuralNetwork(double[] genome) {
+			this(genome, InputData.INPUT_NEURONS, HIDDEN_NEURONS, OutputData.OUTPUT_NEURONS);
+		}
+
+		/**
+		 * <p>
+		 *     Build the matrices on a genome.
+		 * </p>
+		 *
+		 * @param genome the weighting coefficients, used without copy
+		 * @param inputs the number of input neurons
+		 * @param hidden the number of hidden neurons
+		 * @param outputs the number of output neurons
+		 */
+		private NeuralNetwork(double[] genome, int inputs, int hidden, int outputs) {
+			if (genome.length != size(inputs, hidden, outputs))
+				throw new IllegalArgumentException("A genome of " + inputs + "x" + hidden + "x" + outputs
+						+ " neurons has " + size(inputs, hidden, outputs) + " coefficients, not " + genome.length);
+
+			this.genome = genome;
+			inputWeights = new Matrix(genome, 0, inputs, hidden);
+			outputWeights = new Matrix(genome, inputWeights.size(), hidden, outputs);
+			bias = new Matrix(genome, inputWeights.size() + outputWeights.size(), hidden, 1);
 		}
 
 		/**
@@ -123,15 +183,16 @@ public class NeuralNetwork {
 					xmlReader.nextTag();
 
 				// Get matrix values from the other lines
-				inputWeights = initMatrix(xmlReader);
+				Matrix inputWeights = initMatrix(xmlReader);
 				// Skip the end of the inputWeights
 				xmlReader.nextTag();
 				xmlReader.nextTag();
-				outputWeights = initMatrix(xmlReader);
+				Matrix outputWeights = initMatrix(xmlReader);
 				// Skip the end of the outputWeights
 				xmlReader.nextTag();
 				xmlReader.nextTag();
-				bias = initMatrix(xmlReader);
+				Matrix bias = initMatrix(xmlReader);
+				setWeights(inputWeights, outputWeights, bias);
 
 				// Close the reader
 				xmlReader.close();
@@ -146,6 +207,20 @@ public class NeuralNetwork {
             }
 		}
 
+		/**
+		 * <p>
+		 *     The neural network constructor with existing weighting coefficients
+		 *     (used when a perceptron is received from another process)
+		 * </p>
+		 *
+		 * @param inputWeights the input weights matrix
+		 * @param outputWeights the output weights matrix
+		 * @param bias the bias vector
+		 */
+		public NeuralNetwork(Matrix inputWeights, Matrix outputWeights, Matrix bias) {
+			setWeights(inputWeights, outputWeights, bias);
+		}
+
 
     /*	----- MUTATORS -----	*/
 
@@ -170,6 +245,14 @@ public class NeuralNetwork {
             return bias;
         }
 
+        /**
+         * @return All the weighting coefficients, shared with the matrices: the input weights, the output weights
+         * then the bias, each one row after row
+         */
+        public double[] getGenome() {
+            return genome;
+        }
+
 		
 	/*	----- OTHER METHODS -----	*/
 		
@@ -201,17 +284,62 @@ public class NeuralNetwork {
 		}
 
 
+		/**
+		 * <p>
+		 *     Copy three matrices into a new genome, and use the views on this genome as matrices.
+		 * </p>
+		 *
+		 * @param inputWeights the input weights matrix
+		 * @param outputWeights the output weights matrix
+		 * @param bias the bias vector
+		 */
+		private void setWeights(Matrix inputWeights, Matrix outputWeights, Matrix bias) {
+			int inputs = inputWeights.getRowCount();
+			int hidden = inputWeights.getColumnCount();
+			int outputs = outputWeights.getColumnCount();
+			if (outputWeights.getRowCount() != hidden || bias.getRowCount() != hidden || bias.getColumnCount() != 1)
+				throw new IllegalArgumentException("The matrices do not make a perceptron");
+
+			NeuralNetwork network = new NeuralNetwork(new double[size(inputs, hidden, outputs)], inputs, hidden, outputs);
+			int position = 0;
+			for (Matrix matrix : new Matrix[] {inputWeights, outputWeights, bias}) {
+				System.arraycopy(matrix.getValues(), matrix.getOffset(), network.genome, position, matrix.size());
+				position += matrix.size();
+			}
+
+			genome = network.genome;
+			this.inputWeights = network.inputWeights;
+			this.outputWeights = network.outputWeights;
+			this.bias = network.bias;
+		}
+
+		/**
+		 * <p>
+		 *     Count the weighting coefficients of a perceptron.
+		 * </p>
+		 *
+		 * @param inputs the number of input neurons
+		 * @param hidden the number of hidden neurons
+		 * @param outputs the number of output neurons
+		 *
+		 * @return the size of the genome
+		 */
+		private static int size(int inputs, int hidden, int outputs) {
+			return inputs * hidden + hidden * outputs + hidden;
+		}
+
 		/**
 		 *	<p>
 		 *	   Change the value of a matrix in randomize values (multiplicated by 2 and minus one)
 		 *	</p>
 		 *
 		 * @param matrix The matrix we want to change
+		 * @param random the random numbers
 		 */
-		private void randomizeIOMatrix(Matrix matrix) {
-			for (int i = 0; i < matrix.getRowCount(); i++)
-				for (int j = 0; j < matrix.getColumnCount(); j++)
-					matrix.set(i, j, Math.random() * 2 - 1);
+		private void randomizeIOMatrix(Matrix matrix, SplittableRandom random) {
+			double[] values = matrix.getValues();
+			for (int i = matrix.getOffset(); i < matrix.getOffset() + matrix.size(); i++)
+				values[i] = random.nextDouble() * 2 - 1;
 		}
 
 		/**
@@ -220,11 +348,12 @@ public class NeuralNetwork {
 		 * </p>
 		 *
 		 * @param matrix The matrix we want to change
+		 * @param random the random numbers
 		 */
-		private void randomizeBiasMatrix(Matrix matrix) {
-			for (int i = 0; i < matrix.getRowCount(); i++)
-				for (int j = 0; j < matrix.getColumnCount(); j++)
-					matrix.set(i, j, Math.random());
+		private void randomizeBiasMatrix(Matrix matrix, SplittableRandom random) {
+			double[] values = matrix.getValues();
+			for (int i = matrix.getOffset(); i < matrix.getOffset() + matrix.size(); i++)
+				values[i] = random.nextDouble();
 		}
 		
 		/**
@@ -254,6 +383,25 @@ public class NeuralNetwork {
 			return new OutputData( vcouche.mult(outputWeights) );
 		}
 		
+		/**
+		 * <p>
+		 *     Compute a hash of the weighting coefficients, used to recognize a neural network which has already been tested.
+		 *     The coefficients are hashed with the precision of the XML files, so a network keeps its hash once saved and loaded.
+		 * </p>
+		 *
+		 * @return the SHA-1 hash of the coefficients, in hexadecimal
+		 */
+		public String getHash() {
+			try {
+				// The same text as the three matrices printed one after the other
+				MessageDigest digest = MessageDigest.getInstance("SHA-1");
+				digest.update(new Matrix(genome, 0, 1, genome.length).toString().getBytes(StandardCharsets.US_ASCII));
+				return String.format("%040x", new BigInteger(1, digest.digest()));
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-1 is not available", e);
+			}
+		}
+
 		/**
 		 * <p>
 		 *     This method is used to print a neural network in a XML file.
@@ -321,4 +469,104 @@ public class NeuralNetwork {
 		    xmlWriter.close();
 		}
 		
-}
\ No newline at end of file
+		/**
+		 * <p>
+		 *     Return a copy of the neural network, which can be changed without changing this one.
+		 * </p>
+		 *
+		 * @return the copy
+		 */
+		public NeuralNetwork copy() {
+			return copy(new double[genome.length]);
+		}
+
+		/**
+		 * <p>
+		 *     Return a copy of the neural network in a given array, like a recycled genome.
+		 * </p>
+		 *
+		 * @param buffer the array receiving the weighting coefficients, as long as the genome
+		 *
+		 * @return the copy, using the array as its genome
+		 */
+		public NeuralNetwork copy(double[] buffer) {
+			System.arraycopy(genome, 0, buffer, 0, genome.length);
+			return new NeuralNetwork(buffer, inputWeights.getRowCount(), inputWeights.getColumnCount(), outputWeights.getColumnCount());
+		}
+
+		/**
+		 * <p>
+		 *     Return the binary form of the neural network: for each matrix (input weights, output weights, bias),
+		 *     its number of rows, its number of columns and its values as raw doubles.
+		 *     Unlike the XML, it keeps the exact coefficients and is read without any parsing.
+		 * </p>
+		 *
+		 * @return the neural network as bytes
+		 *
+		 * @see NeuralNetwork#fromBinary(ByteBuffer)
+		 */
+		public byte[] toBinary() {
+			Matrix[] matrices = {inputWeights, outputWeights, bias};
+			ByteBuffer buffer = ByteBuffer.allocate(3 * 8 + 8 * genome.length);
+			for (Matrix matrix : matrices) {
+				buffer.putInt(matrix.getRowCount()).putInt(matrix.getColumnCount());
+				buffer.asDoubleBuffer().put(genome, matrix.getOffset(), matrix.size());
+				buffer.position(buffer.position() + 8 * matrix.size());
+			}
+			return buffer.array();
+		}
+
+		/**
+		 * <p>
+		 *     Read a neural network written by {@link #toBinary()}.
+		 * </p>
+		 *
+		 * @param buffer the bytes of the neural network
+		 *
+		 * @return the neural network
+		 */
+		public static NeuralNetwork fromBinary(ByteBuffer buffer) {
+			int inputs = buffer.getInt(buffer.position());
+			int hidden = buffer.getInt(buffer.position() + 4);
+			int outputs = buffer.getInt(buffer.position() + 8 + 8 * inputs * hidden + 4);
+
+			// The values of the three matrices are read straight into the genome
+			NeuralNetwork network = new NeuralNetwork(new double[size(inputs, hidden, outputs)], inputs, hidden, outputs);
+			for (Matrix matrix : new Matrix[] {network.inputWeights, network.outputWeights, network.bias}) {
+				if (buffer.getInt() != matrix.getRowCount() || buffer.getInt() != matrix.getColumnCount())
+					throw new IllegalArgumentException("The matrices do not make a perceptron");
+				buffer.asDoubleBuffer().get(network.genome, matrix.getOffset(), matrix.size());
+				buffer.position(buffer.position() + 8 * matrix.size());
+			}
+			return network;
+		}
+
+		/**
+		 * <p>
+		 *     Write the neural network in a binary file, given to the robot before a battle of the genetic algorithm.
+		 * </p>
+		 *
+		 * @param file The file where the neural network is written
+		 *
+		 * @throws IOException if the file cannot be written
+		 */
+		public void writeBinary(File file) throws IOException {
+			Files.write(file.toPath(), toBinary());
+		}
+
+		/**
+		 * <p>
+		 *     Read a neural network from a binary file written by {@link #writeBinary(File)}, in one read.
+		 * </p>
+		 *
+		 * @param file The file containing the neural network
+		 *
+		 * @return the neural network
+		 *
+		 * @throws IOException if the file cannot be read
+		 */
+		public static NeuralNetwork readBinary(File file) throws IOException {
+			return fromBinary(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+		}
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class NoiseTable.java
+ */
+
+package model.perceptron;
+
+import java.util.SplittableRandom;
+
+/**
+ * <p>
+ *     A large table of numbers of the standard normal distribution, computed once from a seed.
+ *     A perturbation of a genome is a slice of the table starting at an offset, so it is described by this offset
+ *     instead of its values: a process which has the same table (same seed and same size) finds the same perturbation.
+ * </p>
+ * <p>
+ *     The values are floats, so the default table of 2<sup>24</sup> values takes 64 MB.
+ * </p>
+ *
+ * @see Perturbation
+ * @see model.genetic.EvolutionStrategy
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class NoiseTable {
+
+	/*	----- SETTINGS -----	*/
+
+		/**
+		 * <p>
+		 *     The seed of the shared table, changed with -Ddarwini.noise.seed=N.
+		 * </p>
+		 */
+		private static final long SEED = Long.getLong("darwini.noise.seed", 4815162342L);
+
+		/**
+		 * <p>
+		 *     The number of values of the shared table, changed with -Ddarwini.noise.size=N.
+		 * </p>
+		 */
+		private static final int SIZE = Integer.getInteger("darwini.noise.size", 1 << 24);
+
+		/**
+		 * <p>
+		 *     The table shared by the optimizers of this process, created at its first use.
+		 * </p>
+		 */
+		private static NoiseTable shared;
+
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The seed of the table.
+		 * </p>
+		 */
+		private long seed;
+
+		/**
+		 * <p>
+		 *     The values of the table.
+		 * </p>
+		 */
+		private float[] noise;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * <p>
+		 *     Compute a table: the same seed and size always give the same values.
+		 * </p>
+		 *
+		 * @param seed the seed of the values
+		 * @param size the number of values
+		 */
+		public NoiseTable(long seed, int size) {
+			this.seed = seed;
+			noise = new float[size];
+			SplittableRandom random = new SplittableRandom(seed);
+			for (int i = 0; i < size; i++) {
+				// Polar method of Marsaglia
+				double u, v, s;
+				do {
+					u = random.nextDouble() * 2 - 1;
+					v = random.nextDouble() * 2 - 1;
+					s = u * u + v * v;
+				} while (s >= 1 || s == 0);
+				noise[i] = (float) (u * Math.sqrt(-2 * Math.log(s) / s));
+			}
+		}
+
+
+	/*	----- ACCESSORS -----	*/
+
+		/**
+		 * @return the table shared by this process, computed from -Ddarwini.noise.seed and -Ddarwini.noise.size
+		 */
+		public static synchronized NoiseTable getShared() {
+			if (shared == null)
+				shared = new NoiseTable(SEED, SIZE);
+			return shared;
+		}
+
+		/**
+		 * @return the seed of the table
+		 */
+		public long getSeed() {
+			return seed;
+		}
+
+		/**
+		 * @return the number of values of the table
+		 */
+		public int getSize() {
+			return noise.length;
+		}
+
+		/**
+		 * @param index the index of a value
+		 *
+		 * @return the value
+		 */
+		public double get(int index) {
+			return noise[index];
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Choose the offset of a new perturbation.
+		 * </p>
+		 *
+		 * @param random the random numbers of the optimizer
+		 * @param dimension the size of the genome
+		 *
+		 * @return an offset whose slice fits in the table
+		 */
+		public int sample(SplittableRandom random, int dimension) {
+			return random.nextInt(noise.length - dimension + 1);
+		}
+
+		/**
+		 * <p>
+		 *     Check if this table has been computed from a seed and a size.
+		 * </p>
+		 *
+		 * @param seed the seed
+		 * @param size the number of values
+		 *
+		 * @return true if the table has this seed and this size
+		 */
+		public boolean matches(long seed, int size) {
+			return this.seed == seed && noise.length == size;
+		}
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Projet Darwini - Étude Pratique
+ *
+ * Development of an IA based on genetic algorithms and neural networks.
+ *
+ * class Perturbation.java
+ */
+
+package model.perceptron;
+
+/**
+ * <p>
+ *     A neural network described by its distance to a center: the genome of the center plus a slice of a NoiseTable,
+ *     multiplied by a sign (the two antithetic perturbations of an offset) and a step size.
+ *     Only the version of the center, the offset, the sign and the step size change from a perturbation to another,
+ *     so an evaluation worker which already knows the center and the table rebuilds the genome itself.
+ * </p>
+ *
+ * @see NoiseTable
+ * @see model.genetic.EvolutionStrategy
+ *
+ * @version 1.2 - 18/10/26
+ */
+public class Perturbation {
+
+	/*	----- ATTRIBUTES -----	*/
+
+		/**
+		 * <p>
+		 *     The center of the perturbation.
+		 * </p>
+		 */
+		private NeuralNetwork center;
+
+		/**
+		 * <p>
+		 *     The version of the center, different for every center of a run.
+		 * </p>
+		 */
+		private long version;
+
+		/**
+		 * <p>
+		 *     The table of the perturbation.
+		 * </p>
+		 */
+		private NoiseTable table;
+
+		/**
+		 * <p>
+		 *     The index of the first value of the perturbation in the table.
+		 * </p>
+		 */
+		private int offset;
+
+		/**
+		 * <p>
+		 *     1 or -1.
+		 * </p>
+		 */
+		private int sign;
+
+		/**
+		 * <p>
+		 *     The step size.
+		 * </p>
+		 */
+		private double sigma;
+
+
+	/*	----- CONSTRUCTOR -----	*/
+
+		/**
+		 * @param center the center of the perturbation
+		 * @param version the version of the center
+		 * @param table the table of the perturbation
+		 * @param offset the index of the first value of the perturbation in the table
+		 * @param sign 1 or -1
+		 * @param sigma the step size
+		 */
+		public Perturbation(NeuralNetwork center, long version, NoiseTable table, int offset, int sign, double sigma) {
+			this.center = center;
+			this.version = version;
+			this.table = table;
+			this.offset = offset;
+			this.sign = sign;
+			this.sigma = sigma;
+		}
+
+
+	/*	----- ACCESSORS -----	*/
+
+		/**
+		 * @return the center of the perturbation
+		 */
+		public NeuralNetwork getCenter() {
+			return center;
+		}
+
+		/**
+		 * @return the version of the center
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return the table of the perturbation
+		 */
+		public NoiseTable getTable() {
+			return table;
+		}
+
+		/**
+		 * @return the index of the first value of the perturbation in the table
+		 */
+		public int getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return 1 or -1
+		 */
+		public int getSign() {
+			return sign;
+		}
+
+		/**
+		 * @return the step size
+		 */
+		public double getSigma() {
+			return sigma;
+		}
+
+
+	/*	----- OTHER METHODS -----	*/
+
+		/**
+		 * <p>
+		 *     Build the perturbed neural network: center + sign * sigma * table[offset...].
+		 * </p>
+		 *
+		 * @return the neural network
+		 */
+		public NeuralNetwork apply() {
+			NeuralNetwork network = center.copy();
+			double[] genome = network.getGenome();
+			double scale = sign * sigma;
+			for (int i = 0; i < genome.length; i++)
+				genome[i] += scale * table.get(offset + i);
+			return network;
+		}
+
+}